@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Investigation#writeToStream(OutputStream)} for the
+ * Investigations of the {@link Scenario}s, writing to a stream that discards
+ * everything.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvestigationBenchmark {
+
+	private Investigation investigation;
+
+	@Param({ Scenario.MINIMAL, Scenario.REDUCED, Scenario.REAL_WORLD })
+	private String scenario;
+
+	@Setup
+	public void setUp() throws IOException {
+		// The Investigation File does not depend on the lines, so a single one is enough
+		this.investigation = Scenario.create(this.scenario, 1).investigation;
+	}
+
+	@Benchmark
+	public void writeToStream() throws IOException {
+		this.investigation.writeToStream(OutputStream.nullOutputStream());
+	}
+
+}
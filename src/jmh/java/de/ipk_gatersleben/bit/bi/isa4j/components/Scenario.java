@@ -0,0 +1,288 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+import de.ipk_gatersleben.bit.bi.isa4j.performanceTests.PerformanceTester;
+
+/**
+ * The minimal, reduced and real world scenarios of the {@link PerformanceTester}
+ * as prebuilt lines, so that benchmarks measure writing and not building the
+ * objects. The objects are the same as in the PerformanceTester, including the
+ * Growth and Phenotyping parameters read from its CSV fixtures.
+ */
+final class Scenario {
+
+	/**
+	 * The scenario names as used in the result files of the PerformanceTester
+	 */
+	static final String MINIMAL = "minimal", REDUCED = "reduced", REAL_WORLD = "real_world";
+
+	/**
+	 * Builds the Investigation and nRows Study and Assay lines of a scenario
+	 *
+	 * @param name  one of {@link #MINIMAL}, {@link #REDUCED} and {@link #REAL_WORLD}
+	 * @param nRows number of lines per file
+	 * @return the scenario
+	 * @throws IOException if the fixtures cannot be read
+	 */
+	static Scenario create(String name, int nRows) throws IOException {
+		switch (name) {
+		case MINIMAL:
+			return minimal(nRows);
+		case REDUCED:
+			return reduced(nRows);
+		case REAL_WORLD:
+			return realWorld(nRows);
+		default:
+			throw new IllegalArgumentException("Unknown scenario: " + name);
+		}
+	}
+
+	private static Scenario minimal(int nRows) {
+		Scenario scenario = new Scenario(nRows);
+
+		Protocol protocol = new Protocol("sample collection");
+		scenario.study.addProtocol(protocol);
+		for (int i = 0; i < nRows; i++) {
+			Source source = new Source("source_material-" + i);
+			Sample sample = new Sample("sample_material-" + i);
+			Process process = new Process(protocol);
+
+			process.setInput(source);
+			process.setOutput(sample);
+			scenario.studyLines[i] = source;
+		}
+
+		Protocol sequencingProtocol = new Protocol("material sequencing");
+		for (int i = 0; i < nRows; i++) {
+			Sample sample = new Sample("sample_material-" + i);
+			DataFile dataFile = new DataFile("Raw Data File", "sequenced-data-" + i);
+			Process process = new Process(sequencingProtocol);
+
+			process.setInput(sample);
+			process.setOutput(dataFile);
+			scenario.assayLines[i] = sample;
+		}
+		return scenario;
+	}
+
+	private static Scenario reduced(int nRows) {
+		Scenario scenario = new Scenario(nRows);
+
+		Protocol protocol = new Protocol("sample collection");
+		scenario.study.addProtocol(protocol);
+
+		Ontology ncbitaxon = new Ontology("NCBITaxon", null, null, "NCBI Taxonomy");
+		Characteristic organism = new Characteristic("Organism", new OntologyAnnotation("Homo Sapiens",
+				"http://purl.bioontology.org/ontology/NCBITAXON/9606", ncbitaxon));
+		for (int i = 0; i < nRows; i++) {
+			Source source = new Source("source_material-" + i);
+			Sample sample = new Sample("sample_material-" + i);
+			sample.addCharacteristic(organism);
+			Process process = new Process(protocol);
+
+			process.setInput(source);
+			process.setOutput(sample);
+			scenario.studyLines[i] = source;
+		}
+
+		Protocol extractionProtocol = new Protocol("extraction");
+		Protocol sequencingProtocol = new Protocol("sequencing");
+		for (int i = 0; i < nRows; i++) {
+			Sample sample = new Sample("sample_material-" + i);
+			Material extract = new Material("Extract Name", "extract-" + i);
+			DataFile dataFile = new DataFile("Raw Data File", "sequenced-data-" + i);
+
+			Process extraction = new Process(extractionProtocol);
+			extraction.setInput(sample);
+			extraction.setOutput(extract);
+
+			Process sequencing = new Process(sequencingProtocol);
+			sequencing.setInput(extract);
+			sequencing.setOutput(dataFile);
+			scenario.assayLines[i] = sample;
+		}
+		return scenario;
+	}
+
+	private static Scenario realWorld(int nRows) throws IOException {
+		Scenario scenario = new Scenario(nRows);
+		Study study = scenario.study;
+
+		HashMap<String, Ontology> ontologies = new HashMap<String, Ontology>();
+		ontologies.put("NCBITaxon", new Ontology("NCBITaxon", new URL("http://purl.obolibrary.org/obo/ncbitaxon"), null,
+				"National Center for Biotechnology Information (NCBI) Organismal Classification"));
+		ontologies.put("AGRO", new Ontology("AGRO", new URL("http://purl.obolibrary.org/obo/agro/releases/2018-05-14/agro.owl"),
+				"2018-05-14", "Agronomy Ontology"));
+		ontologies.put("UO", new Ontology("UO", new URL("http://data.bioontology.org/ontologies/UO"), "38802",
+				"Units of Measurement Ontology"));
+		scenario.investigation.setOntologies(new ArrayList<>(ontologies.values()));
+
+		Factor faSoilCover = new Factor("Soil Cover");
+		Factor faPlantMovement = new Factor("Plant Movement");
+		study.setFactors(List.of(faSoilCover, faPlantMovement));
+
+		FactorValue favCovered = new FactorValue(faSoilCover, "covered");
+		FactorValue favUncovered = new FactorValue(faSoilCover, "uncovered");
+		FactorValue favRotating = new FactorValue(faPlantMovement, "rotating");
+		FactorValue favStationary = new FactorValue(faPlantMovement, "stationary");
+
+		Protocol phenotyping = new Protocol("Phenotyping");
+		Protocol growth = new Protocol("Growth");
+		Protocol watering = new Protocol("Watering");
+		study.addProtocol(phenotyping);
+		study.addProtocol(growth);
+		study.addProtocol(watering);
+
+		List<Characteristic> commonCharacteristics = List.of(
+				new Characteristic("Species", new OntologyAnnotation("thaliana")),
+				new Characteristic("Infraspecific Name", new OntologyAnnotation(" ")),
+				new Characteristic("Biological Material Latitude", new OntologyAnnotation("51.827721")),
+				new Characteristic("Biological Material Longitude", new OntologyAnnotation("11.27778")),
+				new Characteristic("Material Source ID", new OntologyAnnotation(
+						"http://eurisco.ipk-gatersleben.de/apex/f?p=103:16:::NO::P16_EURISCO_ACC_ID:1668187")),
+				new Characteristic("Seed Origin", new OntologyAnnotation("http://arabidopsis.info/StockInfo?NASC_id=22680")),
+				new Characteristic("Growth Facility", new OntologyAnnotation("small LemnaTec phytochamber")),
+				new Characteristic("Material Source Latitude", new OntologyAnnotation("51.827721")),
+				new Characteristic("Material Source Longitude", new OntologyAnnotation("11.27778")));
+		Characteristic sampleCharacteristic = new Characteristic("Observation Unit Type", new OntologyAnnotation("plant"));
+
+		// Name => [Value, Value REF, Value Accession, Unit, Unit REF, Unit Accession]
+		HashMap<String, String[]> growthParameters = new HashMap<String, String[]>();
+		readFixture("growth_parameters.csv", data -> {
+			growthParameters.put(data[0], Arrays.copyOfRange(data, 1, data.length));
+			growth.addParameter(new ProtocolParameter(data[0]));
+		});
+
+		ArrayList<ParameterValue> growthParameterValues = new ArrayList<ParameterValue>();
+		for (ProtocolParameter param : growth.getParameters()) {
+			String[] fieldValues = growthParameters.get(param.getName().getTerm());
+			OntologyAnnotation unit = null;
+			OntologyAnnotation value = null;
+			if (!fieldValues[3].isEmpty()) {
+				if (!fieldValues[4].isEmpty())
+					unit = new OntologyAnnotation(fieldValues[3], fieldValues[5], ontologies.get(fieldValues[4]));
+				else
+					unit = new OntologyAnnotation(fieldValues[3]);
+				value = new OntologyAnnotation(fieldValues[0]);
+			} else {
+				if (!fieldValues[1].isEmpty())
+					value = new OntologyAnnotation(fieldValues[0], fieldValues[2], ontologies.get(fieldValues[1]));
+				else
+					value = new OntologyAnnotation(fieldValues[0]);
+			}
+			growthParameterValues.add(new ParameterValue(param, value, unit));
+		}
+
+		for (int i = 0; i < nRows; i++) {
+			Source source = new Source("Plant_" + i);
+			Sample sample = new Sample("1135FA-" + i);
+
+			Process process = new Process(growth);
+			process.setInput(source);
+			process.setOutput(sample);
+
+			source.setCharacteristics(commonCharacteristics);
+			process.setParameterValues(growthParameterValues);
+			sample.addCharacteristic(sampleCharacteristic);
+
+			if (i % 2 == 0)
+				sample.setFactorValues(List.of(favCovered, favRotating));
+			else
+				sample.setFactorValues(List.of(favUncovered, favStationary));
+			scenario.studyLines[i] = source;
+		}
+
+		HashMap<String, ProtocolParameter> phenotypingParameters = new HashMap<String, ProtocolParameter>();
+		readFixture("phenotyping_parameters.csv", data -> {
+			ProtocolParameter param = new ProtocolParameter(data[0]);
+			phenotypingParameters.put(data[0], param);
+			phenotyping.addParameter(param);
+		});
+
+		HashMap<String, ProtocolParameter> wateringParameters = new HashMap<String, ProtocolParameter>();
+		wateringParameters.put("Irrigation Type", new ProtocolParameter("Irrigaiton Type"));
+		wateringParameters.put("Volume", new ProtocolParameter("Volume"));
+
+		Comment datafileComment = new Comment("Image analysis tool", "IAP");
+		for (int i = 0; i < nRows; i++) {
+			Sample sample = new Sample("1135FA-" + i);
+
+			Process procPhenotyping = new Process(phenotyping);
+			procPhenotyping.setInput(sample);
+
+			DataFile dataFile = new DataFile("Raw Data File",
+					"" + i + "FA_images/fluo/side/54/1135FA1001 side.fluo das_54 DEG_000 2011-10-12 11_09_36.png");
+			procPhenotyping.setOutput(dataFile);
+
+			procPhenotyping.setParameterValues(List.of(
+					new ParameterValue(phenotypingParameters.get("Imaging Time"), "28.09.2011 12:34:37"),
+					new ParameterValue(phenotypingParameters.get("Camera Configuration"), "A_Fluo_Side_Big_Plant"),
+					new ParameterValue(phenotypingParameters.get("Camera Sensor"), "FLUO"),
+					new ParameterValue(phenotypingParameters.get("Camera View"), "side"),
+					new ParameterValue(phenotypingParameters.get("Imaging Angle"), 90.0, new OntologyAnnotation("degree",
+							"http://purl.obolibrary.org/obo/UO_0000185", ontologies.get("UO")))));
+
+			// Linked exactly like in the PerformanceTester, which replaces the Raw Data File
+			// with the Derived Data File as output of the phenotyping
+			Process procWatering = new Process(watering);
+			procWatering.setInput(dataFile);
+			DataFile dataFile2 = new DataFile("Derived Data File", "derived_data_files/das_" + i + ".txt");
+			dataFile2.comments().add(datafileComment);
+			procPhenotyping.setOutput(dataFile2);
+
+			procWatering.setParameterValues(List.of(
+					new ParameterValue(wateringParameters.get("Irrigation Type"), "automated (LemnaTec target weight)"),
+					new ParameterValue(wateringParameters.get("Volume"), 80.4, new OntologyAnnotation("g",
+							"http://purl.obolibrary.org/obo/UO_0000021", ontologies.get("UO")))));
+			scenario.assayLines[i] = sample;
+		}
+		return scenario;
+	}
+
+	/**
+	 * Passes the cells of every line but the header of a fixture of the
+	 * PerformanceTester to consumer
+	 */
+	private static void readFixture(String name, Consumer<String[]> consumer) throws IOException {
+		try (BufferedReader csvReader = new BufferedReader(
+				new InputStreamReader(PerformanceTester.class.getResourceAsStream(name)))) {
+			String row = csvReader.readLine(); // Skip the first line (headers)
+			while ((row = csvReader.readLine()) != null)
+				consumer.accept(row.split(";", -1));
+		}
+	}
+
+	final Assay assay = new Assay("a_assay.txt");
+
+	final Sample[] assayLines;
+
+	final Investigation investigation = new Investigation("i1");
+
+	final Study study = new Study("s1", "s_study.txt");
+
+	final Source[] studyLines;
+
+	private Scenario(int nRows) {
+		this.studyLines = new Source[nRows];
+		this.assayLines = new Sample[nRows];
+		this.investigation.addStudy(this.study);
+		this.study.addAssay(this.assay);
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+
+/**
+ * Measures {@link StudyOrAssayTableObject#getFields()},
+ * {@link StudyOrAssayTableObject#getHeaders()} and
+ * {@link StudyOrAssayTableObject#visitFields(FieldVisitor)} for each type of
+ * object, taken from the real world {@link Scenario} (the Material from the
+ * reduced one, the only scenario containing one).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StudyOrAssayTableObjectBenchmark {
+
+	/**
+	 * Passes everything it receives to a {@link Blackhole}
+	 */
+	private static final class BlackholeVisitor implements FieldVisitor {
+
+		private final Blackhole blackhole;
+
+		BlackholeVisitor(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		public void cell(String value) {
+			this.blackhole.consume(value);
+		}
+
+		public void group(StudyAssayAttribute attribute, String name, int width) {
+			this.blackhole.consume(attribute);
+			this.blackhole.consume(name);
+			this.blackhole.consume(width);
+		}
+
+	}
+
+	private StudyOrAssayTableObject object;
+
+	@Param({ "Source", "Sample", "Material", "Process", "DataFile" })
+	private String type;
+
+	@Benchmark
+	public Map<String, String[]> getFields() {
+		return this.object.getFields();
+	}
+
+	@Benchmark
+	public LinkedHashMap<String, String[]> getHeaders() {
+		return this.object.getHeaders();
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+		Scenario realWorld = Scenario.create(Scenario.REAL_WORLD, 1);
+		// Source -> Process (Growth) -> Sample
+		Source source = realWorld.studyLines[0];
+		// Sample -> Process (Phenotyping) -> Derived Data File
+		Sample sample = realWorld.assayLines[0];
+		switch (this.type) {
+		case "Source":
+			this.object = source;
+			break;
+		case "Sample":
+			this.object = source.getNextStudyOrAssayTableObject().getNextStudyOrAssayTableObject();
+			break;
+		case "Material":
+			// Sample -> Process (extraction) -> Material
+			this.object = Scenario.create(Scenario.REDUCED, 1).assayLines[0].getNextStudyOrAssayTableObject()
+					.getNextStudyOrAssayTableObject();
+			break;
+		case "Process":
+			this.object = source.getNextStudyOrAssayTableObject();
+			break;
+		case "DataFile":
+			this.object = sample.getNextStudyOrAssayTableObject().getNextStudyOrAssayTableObject();
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown type: " + this.type);
+		}
+	}
+
+	@Benchmark
+	public void visitFields(Blackhole blackhole) throws IOException {
+		this.object.visitFields(new BlackholeVisitor(blackhole));
+	}
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link WideTableFile#writeLine(StudyOrAssayTableObject)},
+ * {@link WideTableFile#writeLine(LineTemplate)} and
+ * {@link WideTableFile#writeHeadersFromExample(StudyOrAssayTableObject)} for
+ * the Study and Assay Files of the {@link Scenario}s. The output is discarded,
+ * so the numbers show the cost of serializing and encoding without any I/O.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WideTableFileBenchmark {
+
+	/**
+	 * Number of prebuilt lines the benchmark cycles through, a power of two
+	 */
+	private static final int LINES = 1024;
+
+	@Param({ "study", "assay" })
+	private String file;
+
+	private StudyOrAssayTableObject[] lines;
+
+	/**
+	 * Values for the first column of the template
+	 */
+	private String[] names;
+
+	private int next = 0;
+
+	@Param({ Scenario.MINIMAL, Scenario.REDUCED, Scenario.REAL_WORLD })
+	private String scenario;
+
+	private WideTableFile table;
+
+	private LineTemplate template;
+
+	@Setup
+	public void setUp() throws IOException {
+		Scenario scenario = Scenario.create(this.scenario, LINES);
+		if (this.file.equals("study")) {
+			this.table = scenario.study;
+			this.lines = scenario.studyLines;
+		} else {
+			this.table = scenario.assay;
+			this.lines = scenario.assayLines;
+		}
+		this.table.setOutputStream(OutputStream.nullOutputStream());
+		this.table.writeHeadersFromExample(this.lines[0]);
+		this.template = this.table.createLineTemplate(this.lines[0], 0);
+		this.names = new String[LINES];
+		for (int i = 0; i < LINES; i++)
+			this.names[i] = "Line " + i;
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.table.releaseStream();
+	}
+
+	/**
+	 * Includes creating the file and the writer of its stream, because headers can
+	 * only be written once per file.
+	 */
+	@Benchmark
+	public WideTableFile writeHeadersFromExample() throws IOException {
+		WideTableFile headerTable = new Assay(this.table.getFileName());
+		headerTable.setOutputStream(OutputStream.nullOutputStream());
+		headerTable.writeHeadersFromExample(this.lines[0]);
+		return headerTable;
+	}
+
+	@Benchmark
+	public void writeLine() throws IOException {
+		this.table.writeLine(this.lines[this.next]);
+		this.next = (this.next + 1) & (LINES - 1);
+	}
+
+	/**
+	 * Writes the first line over and over with only its first cell changed
+	 */
+	@Benchmark
+	public void writeLineTemplate() throws IOException {
+		this.template.setValue(0, this.names[this.next]);
+		this.table.writeLine(this.template);
+		this.next = (this.next + 1) & (LINES - 1);
+	}
+
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+/**
+ * Compares {@link StringUtil#sanitize(String)} with the regex based version it
+ * replaced, for a typical value without anything to replace and for values
+ * containing a tab or line break.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringUtilBenchmark {
+
+	/**
+	 * The implementation of sanitize before it scanned the chars itself
+	 */
+	static String regexSanitize(String input) {
+		if (input == null) {
+			return null;
+		} else {
+			return input.replaceAll(Symbol.TAB.toString(), Symbol.SPACE.toString()).replaceAll(Symbol.ENTER.toString(),
+					Symbol.SPACE.toString());
+		}
+	}
+
+	@Param({ "clean", "tab", "lineBreak" })
+	private String kind;
+
+	private String input;
+
+	@Benchmark
+	public String charScan() {
+		return StringUtil.sanitize(this.input);
+	}
+
+	@Benchmark
+	public String regex() {
+		return regexSanitize(this.input);
+	}
+
+	@Setup
+	public void setUp() {
+		switch (this.kind) {
+		case "clean":
+			this.input = "Arabidopsis thaliana Col-0, plant 1745AJ/42 in pot 17";
+			break;
+		case "tab":
+			this.input = "Arabidopsis thaliana Col-0,\tplant 1745AJ/42 in pot 17";
+			break;
+		default:
+			this.input = "Arabidopsis thaliana Col-0," + Symbol.ENTER + "plant 1745AJ/42 in pot 17";
+		}
+	}
+
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes lines of a Study or Assay File in a background thread. Lines are put
+ * into a bounded queue, either with {@link #submit(StudyOrAssayTableObject)} or
+ * with {@link WideTableFile#writeLine(StudyOrAssayTableObject)} while the
+ * writer is open, and the background thread serializes and writes them in the
+ * order they were submitted. If the headers were not written yet, the
+ * background thread writes them from the first line it takes from the queue,
+ * so lines can be submitted from several threads.
+ *
+ * When the queue is full, submitting a line either waits for the background
+ * thread to catch up or fails right away, see {@link Backpressure}. The
+ * objects of a submitted line must not be changed until the writer is closed.
+ * If a line cannot be written, no further lines are written and the error is
+ * rethrown by the next submit and by {@link #close()}.
+ *
+ * <pre>
+ * study.openFile();
+ * study.openAsyncLineWriter(10_000, AsyncLineWriter.Backpressure.BLOCK);
+ * for (Source line : lines)
+ *     study.writeLine(line);
+ * Future&lt;Void&gt; closed = study.closeFileAsync();
+ * </pre>
+ */
+public final class AsyncLineWriter implements AutoCloseable {
+
+	/**
+	 * What submitting a line does when the queue is full
+	 */
+	public enum Backpressure {
+		/**
+		 * Wait until there is room in the queue
+		 */
+		BLOCK,
+		/**
+		 * Throw an {@link IllegalStateException}, the line is not written
+		 */
+		FAIL
+	}
+
+	/**
+	 * Put into the queue after the last line
+	 */
+	private static final Object END = new Object();
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncLineWriter.class);
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	/**
+	 * Number of chars collected before they are written
+	 */
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final Backpressure backpressure;
+
+	private volatile boolean closeFile = false;
+
+	private volatile boolean closed = false;
+
+	/**
+	 * Completed by the background thread once all lines are written
+	 */
+	private final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+	private volatile Throwable failure = null;
+
+	private final WideTableFile file;
+
+	private final ArrayBlockingQueue<Object> queue;
+
+	AsyncLineWriter(WideTableFile file, int capacity, Backpressure backpressure) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be at least 1, was: " + capacity);
+		this.file = file;
+		this.queue = new ArrayBlockingQueue<Object>(capacity);
+		this.backpressure = Objects.requireNonNull(backpressure, "Backpressure cannot be null");
+		Thread thread = new Thread(this::run, "isa4j-async-writer-" + threadCount.incrementAndGet());
+		thread.setDaemon(true);
+		thread.start();
+		logger.debug("{}: Writing lines in the background, queue capacity: {}", file, capacity);
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable failure = this.failure;
+		if (failure == null)
+			return;
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		throw new IOException(failure);
+	}
+
+	/**
+	 * Waits until all submitted lines are written and stops the background
+	 * thread. The file itself stays open.
+	 *
+	 * @throws IOException if a line could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		CompletableFuture<Void> done = this.finish(false);
+		try {
+			done.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for lines to be written");
+		} catch (ExecutionException e) {
+			// Rethrown below
+		}
+		this.checkFailure();
+	}
+
+	/**
+	 * Lets the background thread stop after the lines submitted so far and close
+	 * the file if closeFile is true.
+	 *
+	 * @return completed when the background thread is done
+	 */
+	CompletableFuture<Void> finish(boolean closeFile) throws InterruptedIOException {
+		if (this.closed)
+			return this.done;
+		this.closed = true;
+		this.closeFile = closeFile;
+		try {
+			this.queue.put(END);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to finish writing");
+		}
+		return this.done;
+	}
+
+	private void run() {
+		LineSerializer serializer = null;
+		StringBuilder chunk = new StringBuilder(CHUNK_SIZE);
+		try {
+			Object item = this.queue.take();
+			while (item != END) {
+				if (this.failure == null) {
+					try {
+						if (serializer == null) {
+							if (!this.file.hasWrittenHeaders())
+								this.file.writeHeadersFromExample((StudyOrAssayTableObject) item);
+							serializer = new LineSerializer(this.file.getRowPlan());
+						}
+						serializer.appendLine((StudyOrAssayTableObject) item, chunk);
+						// Write when the chunk is full or nothing else is waiting
+						if (chunk.length() >= CHUNK_SIZE || this.queue.isEmpty()) {
+							this.file.writeBuffer(chunk);
+							chunk.setLength(0);
+						}
+					} catch (Throwable t) {
+						logger.debug("{}: Writing lines failed", this.file, t);
+						this.failure = t;
+					}
+				}
+				// After a failure the queue is still drained, so that no submit waits forever
+				item = this.queue.take();
+			}
+			if (this.failure == null && chunk.length() > 0)
+				this.file.writeBuffer(chunk);
+		} catch (IOException e) {
+			this.failure = e;
+		} catch (InterruptedException e) {
+			this.failure = new InterruptedIOException("Background writer was interrupted");
+		}
+
+		this.file.asyncLineWriterClosed(this);
+		if (this.closeFile) {
+			try {
+				this.file.closeFile();
+			} catch (Throwable t) {
+				if (this.failure == null)
+					this.failure = t;
+			}
+		}
+		if (this.failure == null)
+			this.done.complete(null);
+		else
+			this.done.completeExceptionally(this.failure);
+	}
+
+	/**
+	 * Submits a line, given by its first object, to be written in the background.
+	 *
+	 * @param initiator the first object of the line
+	 * @throws IOException if writing the headers or a previous line failed
+	 */
+	public void submit(StudyOrAssayTableObject initiator) throws IOException {
+		Objects.requireNonNull(initiator, "Line cannot be null");
+		if (this.closed)
+			throw new IllegalStateException("Writer is already closed");
+		this.checkFailure();
+		if (this.backpressure == Backpressure.FAIL) {
+			if (!this.queue.offer(initiator))
+				throw new IllegalStateException("Queue of the background writer is full");
+			return;
+		}
+		try {
+			this.queue.put(initiator);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to submit a line");
+		}
+	}
+
+}
@@ -15,12 +15,26 @@ public class Characteristic {
 	
 	private String category;
 	private OntologyAnnotation value;
+
+	/**
+	 * The lists indexing this Characteristic by its category, see {@link KeyedList}
+	 */
+	private IndexingLists indexingLists = null;
 	
 	public Characteristic(String category, OntologyAnnotation value) {
 		this.category = category;
 		this.value = value;
 	}
 
+	/**
+	 * @return the lists indexing this Characteristic, created if necessary
+	 */
+	IndexingLists indexingLists() {
+		if (this.indexingLists == null)
+			this.indexingLists = new IndexingLists();
+		return this.indexingLists;
+	}
+
 	/**
 	 * @return the category
 	 */
@@ -41,7 +55,8 @@ public class Characteristic {
 	 * @param category the category to set
 	 */
 	public void setCategory(String category) {
-		this.category = StringUtil.sanitize(Objects.requireNonNull(category, "Characteristic category cannot be null"));
+		this.category = IndexingLists.changeKey(this.indexingLists, this.category,
+				StringUtil.sanitize(Objects.requireNonNull(category, "Characteristic category cannot be null")));
 	}
 
 	/**
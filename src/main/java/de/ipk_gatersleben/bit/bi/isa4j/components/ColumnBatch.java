@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.util.ArrayList;
+import java.util.Objects;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
+
+/**
+ * A number of lines of a Study or Assay File given column by column, for data
+ * that is already held in arrays, e.g. the result of a database query. No
+ * {@link Source}s, {@link Process}es etc. are needed to write it with
+ * {@link WideTableFile#writeColumns(ColumnBatch)}.
+ *
+ * Columns are numbered from 0 in the order of the header line, which is
+ * declared once with {@link WideTableFile#writeHeaders(java.util.List)} or
+ * {@link WideTableFile#writeHeadersFromExample(StudyOrAssayTableObject)}. See
+ * {@link WideTableFile#getColumnIndex(int, String)} to find the column of a
+ * header group. Every column of the file must be set and the arrays must hold
+ * at least as many items as the batch has lines. The arrays are not copied, so
+ * they must not be changed until the batch is written; a batch can be reused
+ * for the next lines by setting new arrays.
+ *
+ * <pre>
+ * ColumnBatch batch = new ColumnBatch(names.length)
+ *     .setColumn(0, names)
+ *     .setColumn(1, "Watering")
+ *     .setColumn(2, volumes)
+ *     .setColumn(3, unitCodes, new String[] { "litre", "millilitre" })
+ *     .setColumn(4, sampleNames);
+ * study.writeColumns(batch);
+ * </pre>
+ */
+public final class ColumnBatch {
+
+	/**
+	 * Appends the cell of a line to a buffer
+	 */
+	private interface Column {
+		void append(StringBuilder sb, int line);
+	}
+
+	private final ArrayList<Column> columns = new ArrayList<Column>();
+
+	private final int size;
+
+	/**
+	 * @param size the number of lines in the batch
+	 */
+	public ColumnBatch(int size) {
+		if (size < 0)
+			throw new IllegalArgumentException("Number of lines cannot be negative: " + size);
+		this.size = size;
+	}
+
+	/**
+	 * Appends the cells of a line to sb, separated by tabs, without line break.
+	 *
+	 * @param sb   the buffer to append to
+	 * @param line the line within the batch
+	 */
+	void appendLine(StringBuilder sb, int line) {
+		for (int column = 0; column < this.columns.size(); column++) {
+			if (column > 0)
+				sb.append(Symbol.TAB.toString());
+			this.columns.get(column).append(sb, line);
+		}
+	}
+
+	private void checkLength(int length) {
+		if (length < this.size)
+			throw new IllegalArgumentException("Column has " + length + " values for " + this.size + " lines");
+	}
+
+	/**
+	 * @return the number of columns up to the last one that was set
+	 */
+	int getColumnCount() {
+		return this.columns.size();
+	}
+
+	/**
+	 * @return the number of lines in the batch
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * @return the index of the first column that was not set, -1 if all are set
+	 */
+	int missingColumn() {
+		return this.columns.indexOf(null);
+	}
+
+	private ColumnBatch put(int column, Column values) {
+		if (column < 0)
+			throw new IndexOutOfBoundsException("Column cannot be negative: " + column);
+		while (this.columns.size() <= column)
+			this.columns.add(null);
+		this.columns.set(column, values);
+		return this;
+	}
+
+	/**
+	 * Sets a column of numbers, formatted like {@link String#valueOf(double)}.
+	 *
+	 * @param column the index of the column
+	 * @param values the values by line
+	 * @return this batch
+	 */
+	public ColumnBatch setColumn(int column, double[] values) {
+		Objects.requireNonNull(values, "Values cannot be null");
+		this.checkLength(values.length);
+		return this.put(column, (sb, line) -> StringUtil.appendNumber(sb, values[line]));
+	}
+
+	/**
+	 * Sets a column of dictionary encoded text, e.g. a handful of genotypes
+	 * repeated over thousands of lines.
+	 *
+	 * @param column     the index of the column
+	 * @param codes      the indexes into dictionary by line
+	 * @param dictionary the distinct values, null for empty cells
+	 * @return this batch
+	 */
+	public ColumnBatch setColumn(int column, int[] codes, String[] dictionary) {
+		Objects.requireNonNull(codes, "Codes cannot be null");
+		Objects.requireNonNull(dictionary, "Dictionary cannot be null");
+		this.checkLength(codes.length);
+		String[] sanitized = new String[dictionary.length];
+		for (int i = 0; i < dictionary.length; i++)
+			sanitized[i] = dictionary[i] == null ? Symbol.EMPTY.toString() : StringUtil.sanitize(dictionary[i]);
+		return this.put(column, (sb, line) -> sb.append(sanitized[codes[line]]));
+	}
+
+	/**
+	 * Sets a column of whole numbers.
+	 *
+	 * @param column the index of the column
+	 * @param values the values by line
+	 * @return this batch
+	 */
+	public ColumnBatch setColumn(int column, long[] values) {
+		Objects.requireNonNull(values, "Values cannot be null");
+		this.checkLength(values.length);
+		return this.put(column, (sb, line) -> sb.append(values[line]));
+	}
+
+	/**
+	 * Sets a column that holds the same value in every line, e.g. the name of a
+	 * Protocol.
+	 *
+	 * @param column the index of the column
+	 * @param value  the value of all lines, null for empty cells
+	 * @return this batch
+	 */
+	public ColumnBatch setColumn(int column, String value) {
+		String sanitized = value == null ? Symbol.EMPTY.toString() : StringUtil.sanitize(value);
+		return this.put(column, (sb, line) -> sb.append(sanitized));
+	}
+
+	/**
+	 * Sets a column of text. Tabs and line breaks are replaced like in
+	 * {@link StringUtil#sanitize(String)}.
+	 *
+	 * @param column the index of the column
+	 * @param values the values by line, null for empty cells
+	 * @return this batch
+	 */
+	public ColumnBatch setColumn(int column, String[] values) {
+		Objects.requireNonNull(values, "Values cannot be null");
+		this.checkLength(values.length);
+		return this.put(column, (sb, line) -> {
+			String value = values[line];
+			if (value != null)
+				sb.append(StringUtil.sanitize(value));
+		});
+	}
+
+}
@@ -30,6 +30,11 @@ public class Comment {
 	 */
 	private String value;
 
+	/**
+	 * The lists indexing this Comment by its name, see {@link KeyedList}
+	 */
+	private IndexingLists indexingLists = null;
+
 	/**
 	 * Constructor.
 	 */
@@ -51,13 +56,23 @@ public class Comment {
 		return name;
 	}
 
+	/**
+	 * @return the lists indexing this Comment, created if necessary
+	 */
+	IndexingLists indexingLists() {
+		if (this.indexingLists == null)
+			this.indexingLists = new IndexingLists();
+		return this.indexingLists;
+	}
+
 	/**
 	 * Set the name of the {@link Comment}
 	 *
 	 * @param name name of the {@link Comment}. Cannot be null
 	 */
 	public void setName(String name) {
-		this.name = StringUtil.sanitize(Objects.requireNonNull(name, "Comment name cannot be null"));
+		this.name = IndexingLists.changeKey(this.indexingLists, this.name,
+				StringUtil.sanitize(Objects.requireNonNull(name, "Comment name cannot be null")));
 	}
 
 	/**
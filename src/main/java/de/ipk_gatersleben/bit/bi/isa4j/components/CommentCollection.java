@@ -7,9 +7,9 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 
 import de.ipk_gatersleben.bit.bi.isa4j.exceptions.RedundantItemException;
 
@@ -22,7 +22,27 @@ import de.ipk_gatersleben.bit.bi.isa4j.exceptions.RedundantItemException;
 
 public class CommentCollection {
 
-	private List<Comment> comments = new ArrayList<Comment>();
+	/**
+	 * An empty collection that cannot be modified, for components which are shared
+	 * and must not be changed, see {@link OntologyAnnotationPool}, and for
+	 * components which have no comments, see {@link Commentable#commentsOrEmpty()}
+	 */
+	public static final CommentCollection EMPTY = new CommentCollection(true);
+
+	private static final Function<Comment, String> NAME = Comment::getName;
+
+	private final List<Comment> comments;
+
+	private final boolean readOnly;
+
+	public CommentCollection() {
+		this(false);
+	}
+
+	private CommentCollection(boolean readOnly) {
+		this.readOnly = readOnly;
+		this.comments = readOnly ? List.of() : new KeyedList<Comment>(List.of(NAME), Comment::indexingLists);
+	}
 
 	/**
 	 * Adds a new Comment to the collection.
@@ -31,11 +51,17 @@ public class CommentCollection {
 	 *                {@link RedundantItemException} will be thrown.
 	 */
 	public void add(Comment comment) {
-		if (this.comments.stream().map(Comment::getName).anyMatch(comment.getName()::equals))
+		this.checkNotReadOnly();
+		if (KeyedList.find(this.comments, NAME, comment.getName()) != null)
 			throw new RedundantItemException("Comment name not unique: " + comment.getName());
 		this.comments.add(comment);
 	}
 
+	private void checkNotReadOnly() {
+		if (this.readOnly)
+			throw new UnsupportedOperationException("This CommentCollection cannot be modified");
+	}
+
 	/**
 	 * Return the list of {@link Comment}s
 	 * 
@@ -53,7 +79,14 @@ public class CommentCollection {
 	 *         no one with the given name was found.
 	 */
 	public Optional<Comment> getByName(String name) {
-		return this.comments.stream().filter(c -> c.getName().equals(name)).findFirst();
+		return Optional.ofNullable(KeyedList.find(this.comments, NAME, name));
+	}
+
+	/**
+	 * @return true if the collection holds no {@link Comment}s
+	 */
+	public boolean isEmpty() {
+		return this.comments.isEmpty();
 	}
 
 	/**
@@ -63,6 +96,7 @@ public class CommentCollection {
 	 * @param comments the {@link List} of {@link Comment}s to set
 	 */
 	public void set(List<Comment> comments) {
+		this.checkNotReadOnly();
 		this.comments.clear();
 		comments.stream().forEach(this::add);
 	}
@@ -16,6 +16,20 @@ package de.ipk_gatersleben.bit.bi.isa4j.components;
  */
 interface Commentable {
 
+	/**
+	 * The collection is created when it is first requested, so components without
+	 * comments do not hold one.
+	 * 
+	 * @return the comments, which can be modified
+	 */
 	public CommentCollection comments();
 
+	/**
+	 * For reading the comments without creating a collection, e.g. when writing
+	 * files.
+	 * 
+	 * @return the comments or {@link CommentCollection#EMPTY} if there are none
+	 */
+	public CommentCollection commentsOrEmpty();
+
 }
@@ -7,16 +7,14 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.IOException;
 import java.util.Objects;
 
 import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
 
 public class DataFile extends StudyOrAssayTableObject implements Commentable { 
 	
-	private CommentCollection comments = new CommentCollection();
+	private CommentCollection comments = null;
 	
 	private String path;
 	
@@ -33,31 +31,21 @@ public class DataFile extends StudyOrAssayTableObject implements Commentable {
 	}
 	
 	public CommentCollection comments() {
+		if (this.comments == null)
+			this.comments = new CommentCollection();
 		return this.comments;
 	}
 
-	/**
-	 * Please refer to documentation on StudyOrAssayTableObject.getFields
-	 */
-	Map<String, String[]> getFields() {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-		
-		fields.put(this.type, new String[]{this.path});
-		fields.putAll(this.getFieldsForComments(this.comments));
-
-		return fields;
+	public CommentCollection commentsOrEmpty() {
+		return this.comments == null ? CommentCollection.EMPTY : this.comments;
 	}
-	
+
 	/**
 	 * Please refer to documentation on StudyOrAssayTableObject.getHeaders
 	 */
-	LinkedHashMap<String, String[]> getHeaders() {
-		LinkedHashMap<String, String[]> headers = new LinkedHashMap<String, String[]>();
-		
-		headers.put(this.type, new String[]{this.type});
-		headers.putAll(this.getHeadersForComments(this.comments));
-		
-		return headers;
+	void addGroups(HeaderStructure structure) {
+		structure.group(null, this.type);
+		this.addCommentGroups(structure, this.commentsOrEmpty());
 	}
 	/**
 	 * @return the path
@@ -91,5 +79,14 @@ public class DataFile extends StudyOrAssayTableObject implements Commentable {
 	public String toString() {
 		return "<Datafile> '" + this.path + "'";
 	}
+	
+	/**
+	 * Please refer to documentation on StudyOrAssayTableObject.visitFields
+	 */
+	void visitFields(FieldVisitor visitor) throws IOException {
+		visitor.group(null, this.type, 1);
+		visitor.cell(this.path);
+		this.visitComments(this.commentsOrEmpty(), visitor);
+	}
 
 }
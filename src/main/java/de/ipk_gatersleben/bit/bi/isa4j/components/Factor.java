@@ -18,7 +18,7 @@ import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
 
 public class Factor implements Commentable {
 	
-	private CommentCollection comments = new CommentCollection();
+	private CommentCollection comments = null;
 	
 	private String name;
 
@@ -37,9 +37,15 @@ public class Factor implements Commentable {
 	}
 	
 	public CommentCollection comments() {
+		if (this.comments == null)
+			this.comments = new CommentCollection();
 		return this.comments;
 	}
 
+	public CommentCollection commentsOrEmpty() {
+		return this.comments == null ? CommentCollection.EMPTY : this.comments;
+	}
+
 	/**
 	 * @return the name
 	 */
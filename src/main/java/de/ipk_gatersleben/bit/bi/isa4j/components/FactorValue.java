@@ -31,7 +31,7 @@ public class FactorValue extends Value<Factor> {
 	
 	@Override
 	public String toString() {
-		return "<FactorValue> '" + (this.hasUnit() ? this.getValue().getTerm() + " " + this.getUnit().getTerm() : this.getValue().getTerm())
+		return "<FactorValue> '" + (this.hasUnit() ? this.getValueTerm() + " " + this.getUnit().getTerm() : this.getValueTerm())
 				+ " (" + this.getCategory().toString() + ")";
 	}
 }
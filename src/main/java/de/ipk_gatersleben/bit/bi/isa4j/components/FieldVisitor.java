@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
+
+/**
+ * Receives the fields of a {@link StudyOrAssayTableObject} one cell at a time,
+ * in the same order as the object's headers. For a Source this could look like:
+ *
+ * group(SOURCE_NAME, null, 1), cell("Plant 1"),
+ * group(CHARACTERISTICS, "Organism", 3), cell("Arabidopsis thaliana"), cell("NCBITaxon"), cell("http://purl.obolibrary.org/obo/NCBITaxon_3702"),
+ * group(CHARACTERISTICS, "Genotype", 1), cell("Col0")
+ *
+ * Each call to group is followed by exactly width calls to cell. Nothing is
+ * collected by the object itself, so a visitor writing into an
+ * {@link Appendable} serializes a line without intermediate collections.
+ */
+interface FieldVisitor {
+
+	/**
+	 * A new header group starts. Its key is built from attribute and name the same
+	 * way as in {@link StudyOrAssayTableObject#getHeaders()}, see
+	 * {@link StudyOrAssayTableObject#groupKey(StudyAssayAttribute, String)}.
+	 *
+	 * @param attribute the attribute of the group, null for free types like "Extract Name" or "Raw Data File"
+	 * @param name      the name put into the attribute (or the free type), null for fixed attributes like "Source Name"
+	 * @param width     the number of cells that follow
+	 * @throws IOException if the visitor fails to process the group
+	 */
+	void group(StudyAssayAttribute attribute, String name, int width) throws IOException;
+
+	/**
+	 * The next cell of the current group.
+	 *
+	 * @param value the content of the cell
+	 * @throws IOException if the visitor fails to process the cell
+	 */
+	void cell(String value) throws IOException;
+
+	/**
+	 * The next cell of the current group holds a number. Visitors that write text
+	 * can override this to format the number in place.
+	 *
+	 * @param value the content of the cell
+	 * @throws IOException if the visitor fails to process the cell
+	 */
+	default void cell(double value) throws IOException {
+		this.cell(StringUtil.formatNumber(value));
+	}
+
+	/**
+	 * Like {@link #cell(double)}, for whole numbers
+	 *
+	 * @param value the content of the cell
+	 * @throws IOException if the visitor fails to process the cell
+	 */
+	default void cell(long value) throws IOException {
+		this.cell(String.valueOf(value));
+	}
+
+}
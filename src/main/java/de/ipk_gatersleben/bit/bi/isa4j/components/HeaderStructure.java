@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+
+/**
+ * The structure of the headers of a {@link StudyOrAssayTableObject}: the
+ * attribute and name of each header group and which of Term Source REF, Term
+ * Accession Number and Unit follow its first column. An object describes its
+ * structure in {@link StudyOrAssayTableObject#getHeaders()}, which is cheap
+ * compared to building the headers, and gets back the headers of the first
+ * object with the same structure. Objects are usually changed by adding
+ * Characteristics, Comments etc., so the structure is described anew each time
+ * instead of invalidating a copy kept by the object.
+ *
+ * The headers are shared between all objects with the same structure and
+ * between threads, so they must not be modified, and public methods hand out
+ * copies of them (see {@link #copy(List)}). At most
+ * {@link #MAXIMUM_SIZE} structures are kept; headers of further ones are built
+ * every time.
+ */
+final class HeaderStructure {
+
+	/**
+	 * Number of structures whose headers are kept
+	 */
+	static final int MAXIMUM_SIZE = 10_000;
+
+	private static final ConcurrentHashMap<HeaderStructure, LinkedHashMap<String, String[]>> cache = new ConcurrentHashMap<HeaderStructure, LinkedHashMap<String, String[]>>();
+
+	/**
+	 * The columns that can follow the first column of a group, by their code in
+	 * {@link #extensions}
+	 */
+	private static final StudyAssayAttribute[] EXTENSION_COLUMNS = { null, StudyAssayAttribute.TERM_SOURCE_REF,
+			StudyAssayAttribute.TERM_ACCESSION_NUMBER, StudyAssayAttribute.UNIT };
+
+	private static final int EXTENSION_BITS = 2;
+
+	/**
+	 * Copies the headers of the objects in a line, including the column arrays.
+	 * Headers that may be shared are copied before they are handed out through a
+	 * public method, so that changing them does not change the headers of other
+	 * objects.
+	 *
+	 * @param headers the headers to copy
+	 * @return the copies
+	 */
+	static List<LinkedHashMap<String, String[]>> copy(List<? extends Map<String, String[]>> headers) {
+		List<LinkedHashMap<String, String[]>> copies = new ArrayList<LinkedHashMap<String, String[]>>(headers.size());
+		for (Map<String, String[]> objectHeaders : headers) {
+			LinkedHashMap<String, String[]> copy = new LinkedHashMap<String, String[]>();
+			for (Map.Entry<String, String[]> group : objectHeaders.entrySet())
+				copy.put(group.getKey(), group.getValue().clone());
+			copies.add(copy);
+		}
+		return copies;
+	}
+
+	private StudyAssayAttribute[] attributes = new StudyAssayAttribute[8];
+
+	private String[] names = new String[8];
+
+	/**
+	 * extensions[group] = codes of the columns after the first one, 2 bits each,
+	 * the first column in the lowest bits
+	 */
+	private int[] extensions = new int[8];
+
+	/**
+	 * extensionCounts[group] = number of columns after the first one
+	 */
+	private int[] extensionCounts = new int[8];
+
+	private int size = 0;
+
+	private int hash = 1;
+
+	/**
+	 * Adds Term Source REF and Term Accession Number to the current group if the
+	 * annotation has them, like they are written for it.
+	 *
+	 * @param annotation the annotation of the group
+	 */
+	void annotationColumns(OntologyAnnotation annotation) {
+		if (annotation.getSourceREF() != null)
+			this.column(StudyAssayAttribute.TERM_SOURCE_REF);
+		if (annotation.getTermAccession() != null)
+			this.column(StudyAssayAttribute.TERM_ACCESSION_NUMBER);
+	}
+
+	/**
+	 * Adds a column after the first one to the current group.
+	 *
+	 * @param column Term Source REF, Term Accession Number or Unit
+	 */
+	void column(StudyAssayAttribute column) {
+		int code = 1;
+		while (EXTENSION_COLUMNS[code] != column)
+			code++;
+		int group = this.size - 1;
+		this.extensions[group] |= code << (EXTENSION_BITS * this.extensionCounts[group]);
+		this.extensionCounts[group]++;
+		this.hash = 31 * this.hash + code;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof HeaderStructure))
+			return false;
+		HeaderStructure other = (HeaderStructure) obj;
+		if (this.hash != other.hash || this.size != other.size)
+			return false;
+		for (int group = 0; group < this.size; group++) {
+			if (this.attributes[group] != other.attributes[group]
+					|| this.extensions[group] != other.extensions[group]
+					|| this.extensionCounts[group] != other.extensionCounts[group]
+					|| !(this.names[group] == null ? other.names[group] == null
+							: this.names[group].equals(other.names[group])))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Starts a new header group. Its first column is its key, see
+	 * {@link StudyOrAssayTableObject#groupKey(StudyAssayAttribute, String)}.
+	 *
+	 * @param attribute the attribute of the group, null for free types like "Extract Name"
+	 * @param name      the name put into the attribute (or the free type), null for fixed attributes like "Source Name"
+	 */
+	void group(StudyAssayAttribute attribute, String name) {
+		if (this.size == this.attributes.length) {
+			this.attributes = Arrays.copyOf(this.attributes, this.size * 2);
+			this.names = Arrays.copyOf(this.names, this.size * 2);
+			this.extensions = Arrays.copyOf(this.extensions, this.size * 2);
+			this.extensionCounts = Arrays.copyOf(this.extensionCounts, this.size * 2);
+		}
+		this.attributes[this.size] = attribute;
+		this.names[this.size] = name;
+		this.size++;
+		this.hash = 31 * (31 * this.hash + (attribute == null ? 0 : attribute.ordinal() + 1))
+				+ (name == null ? 0 : name.hashCode());
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+	/**
+	 * Returns the headers of this structure, built only if no structure like it
+	 * was seen before. The structure must not be changed afterwards.
+	 *
+	 * @return the headers, which must not be modified
+	 */
+	LinkedHashMap<String, String[]> headers() {
+		LinkedHashMap<String, String[]> headers = cache.get(this);
+		if (headers != null)
+			return headers;
+		headers = new LinkedHashMap<String, String[]>();
+		for (int group = 0; group < this.size; group++) {
+			String key = StudyOrAssayTableObject.groupKey(this.attributes[group], this.names[group]);
+			String[] columns = new String[1 + this.extensionCounts[group]];
+			columns[0] = key;
+			for (int column = 1; column < columns.length; column++)
+				columns[column] = EXTENSION_COLUMNS[(this.extensions[group] >>> (EXTENSION_BITS * (column - 1)))
+						& ((1 << EXTENSION_BITS) - 1)].toString();
+			headers.put(key, columns);
+		}
+		if (cache.size() >= MAXIMUM_SIZE)
+			return headers;
+		LinkedHashMap<String, String[]> existing = cache.putIfAbsent(this, headers);
+		return existing == null ? headers : existing;
+	}
+
+}
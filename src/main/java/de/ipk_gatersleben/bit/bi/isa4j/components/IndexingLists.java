@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.util.Arrays;
+
+/**
+ * The {@link KeyedList}s whose indexes contain an item, so that the item can
+ * tell exactly these lists when one of its keys changes. An item is usually
+ * indexed by a single list, e.g. a Characteristic by its Source.
+ *
+ * Lists are added when they index the item and are not removed when the item
+ * is removed from them, which at most makes such a list rebuild its indexes
+ * once more.
+ */
+final class IndexingLists {
+
+	/**
+	 * Has to be used by the setters of keys. Changing the key of an item, e.g.
+	 * renaming a Comment, makes the lists indexing the item rebuild their indexes
+	 * with their next lookup, otherwise the item would not be found by its new
+	 * key.
+	 *
+	 * @param <K>    type of the key
+	 * @param lists  the lists indexing the item, null if there are none
+	 * @param oldKey the current key of the item, null if it has none yet
+	 * @param newKey the key to set
+	 * @return newKey
+	 */
+	static <K> K changeKey(IndexingLists lists, Object oldKey, K newKey) {
+		if (lists != null && oldKey != null && !oldKey.equals(newKey))
+			lists.keyChanged();
+		return newKey;
+	}
+
+	private KeyedList<?> first = null;
+
+	/**
+	 * Further lists, null if the item is indexed by at most one
+	 */
+	private KeyedList<?>[] more = null;
+
+	void add(KeyedList<?> list) {
+		if (this.first == null || this.first == list) {
+			this.first = list;
+			return;
+		}
+		if (this.more == null) {
+			this.more = new KeyedList<?>[] { list };
+			return;
+		}
+		for (KeyedList<?> other : this.more)
+			if (other == list)
+				return;
+		this.more = Arrays.copyOf(this.more, this.more.length + 1);
+		this.more[this.more.length - 1] = list;
+	}
+
+	private void keyChanged() {
+		if (this.first != null)
+			this.first.dropIndexes();
+		if (this.more != null)
+			for (KeyedList<?> list : this.more)
+				list.dropIndexes();
+	}
+
+}
@@ -7,17 +7,28 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
+import java.io.BufferedWriter;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +37,7 @@ import de.ipk_gatersleben.bit.bi.isa4j.constants.InvestigationAttribute;
 import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
 import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
 import de.ipk_gatersleben.bit.bi.isa4j.exceptions.RedundantItemException;
+import de.ipk_gatersleben.bit.bi.isa4j.util.CompressionCodec;
 import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
 
 /**
@@ -33,10 +45,35 @@ import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
  * overall information about the goals and means of the experiment.
  */
 public class Investigation implements Commentable {
-	
+
+	/**
+	 * Appends a cell of a line of the Investigation File for an item
+	 */
+	@FunctionalInterface
+	private interface CellAppender<T> {
+		void append(Appendable out, T item) throws IOException;
+	}
+
+	/**
+	 * Appends one or more complete lines of the Investigation File
+	 */
+	@FunctionalInterface
+	private interface LineAppender {
+		void append(Appendable out) throws IOException;
+	}
+
+	private static final Function<Study, String> STUDY_IDENTIFIER = Study::getIdentifier;
+
+	private static final Function<Study, String> STUDY_FILE_NAME = Study::getFileName;
+
 	/**
-	 * Pass a list of Commentables (Person, Publication...) and get back a String containing all comment lines
-	 * formatted in ISATab format.
+	 * Number of chars copied at once from a study buffer to the Investigation File
+	 */
+	private static final int COPY_CHUNK_SIZE = 8 * 1024;
+
+	/**
+	 * Pass a list of Commentables (Person, Publication...) and get all comment lines
+	 * formatted in ISATab format appended to out.
 	 * 
 	 * Person person1 = new Person(...);
 	 * person1.comments().add(new Comment("Shared Comment", "value1"));
@@ -47,7 +84,7 @@ public class Investigation implements Commentable {
 	 * person2.comments().add(new Comment("Another Comment", "bye bye!"));
 	 *
 	 * List<Person> people = new ArrayList<>(List.of(person1, person2));
-	 * Investigation.formatComments(people);
+	 * Investigation.appendComments(out, people);
 	 * 
 	 * -- Result --
 	 * Comment[Shared Comment]	value1	value2
@@ -55,77 +92,59 @@ public class Investigation implements Commentable {
 	 * Comment[Another Comment]			bye bye!
 	 * 
 	 * @param <T> type of commentable (Person, Publication...)
+	 * @param out where the lines are appended
 	 * @param commentables 
-	 * @return Formatted lines containing the comments
 	 */
-	static <T extends Commentable> String formatComments(List<T> commentables) {
-		
-		// Turn the commentables into a list of lists of comments
-		List<List<Comment>> commentBuckets = commentables.stream()
-				.map(c -> c.comments().getAll())
-				.collect(Collectors.toList());
-		
-		// Get a List of all Comment types present in any of the buckets
-		List<String> commentLevels = commentBuckets.stream()
-				.flatMap(bucket -> bucket.stream()) // flatten
-				.map(comment -> comment.getName())
-				.distinct() // remove duplicates
-				.collect(Collectors.toList());
-		
+	static <T extends Commentable> void appendComments(Appendable out, List<T> commentables) throws IOException {
+		// Get all Comment types present in any of the commentables, in the order they first appear
+		Set<String> commentTypes = new LinkedHashSet<String>();
+		for (T commentable : commentables)
+			for (Comment comment : commentable.commentsOrEmpty().getAll())
+				commentTypes.add(comment.getName());
+
 		// Now loop through all comment types and create a line for each
-		StringBuilder sb = new StringBuilder();
-		for(String commentType : commentLevels) {
-			sb.append(StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, commentType) + Symbol.TAB);
-			// Now loop through all the buckets and see if that comment type is present
-			String commentLine = commentBuckets.stream()
-				// For each bucket -> go through each comment
-				.map(bucket -> bucket.stream()
-					// Filter out only comments of the current type
-					.filter(comment -> comment.getName().equals(commentType))
-					// Get the contents of these comments
-					.map(comment -> comment.getValue())
-					// Join them all together by semicolons (it could be the case that a person has two comments with the same type)
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-				// Join all the buckets by TABs
-				.collect(Collectors.joining(Symbol.TAB.toString()));
-			sb.append(commentLine);
-			sb.append(Symbol.ENTER.toString());
+		for (String commentType : commentTypes) {
+			out.append(StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, commentType));
+			for (T commentable : commentables) {
+				out.append(Symbol.TAB.toString());
+				// Join the values by semicolons (it could be the case that a person has two comments with the same type)
+				boolean first = true;
+				for (Comment comment : commentable.commentsOrEmpty().getAll()) {
+					if (!comment.getName().equals(commentType))
+						continue;
+					if (!first)
+						out.append(Symbol.SEMICOLON.toString());
+					out.append(comment.getValue());
+					first = false;
+				}
+			}
+			out.append(Symbol.ENTER.toString());
 		}
-		return sb.toString();
 	}
-	
+
 	/**
-	 * Format a simple single-column attribute like Investigation Title.
-	 * 
-	 * formatSimpleAttribute(InvestigationAttributes.INVESTIGATION_TITLE, "Title #1");
-	 * 
-	 * -- Result --
-	 * Investigation Title	Title #1
-	 * 
-	 * @param lineName
-	 * @param value (can be null)
-	 * @return Line formatted in ISATab (contains line break)
+	 * Appends the values of items joined by semicolons, e.g. the roles of a
+	 * person within one cell. Null values are appended as "null".
 	 */
-	static String formatSimpleAttribute(InvestigationAttribute lineName, String value) {
-		return lineName.toString() + Symbol.TAB
-			+ (value == null ? Symbol.EMPTY.toString() : value)
-			+ Symbol.ENTER.toString();
+	private static <E> void appendJoined(Appendable out, List<E> items, Function<E, String> lambda) throws IOException {
+		for (int i = 0; i < items.size(); i++) {
+			if (i > 0)
+				out.append(Symbol.SEMICOLON.toString());
+			out.append(lambda.apply(items.get(i)));
+		}
 	}
 
 	/**
-	 * Format comments that don't have multiple columns (e.g. study comments or investigation comments)
-	 * They will be sorted by their name
-	 * @param comments
-	 * @return comment lines formatted in ISA-Tab
+	 * Appends a line of the investigation file with a cell for each object in
+	 * list, see {@link #appendLineFromList(Appendable, Object, List, Function)}.
 	 */
-	static String formatSimpleComments(List<Comment> comments) {
-		StringBuilder sb = new StringBuilder();
-		Collections.sort(comments, (c1, c2) -> c1.getName().compareTo(c2.getName()));
-		for (Comment c : comments) {
-			sb.append(StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, c.getName()) + Symbol.TAB);
-			sb.append(c.getValue()).append(Symbol.ENTER);
+	private static <C, T> void appendLine(Appendable out, C lineName, List<T> list, CellAppender<T> cell) throws IOException {
+		out.append(lineName.toString());
+		for (T item : list) {
+			out.append(Symbol.TAB.toString());
+			cell.append(out, item);
 		}
-		return sb.toString();
+		out.append(Symbol.ENTER.toString());
 	}
 
 	/**
@@ -134,36 +153,28 @@ public class Investigation implements Commentable {
 	 * to extract the content from that object that should go into the line. So, for example, if you want to create a line
 	 * containing all the names of the ontologies, your ontologies would be the list that's passed, and the function to get the
 	 * name of each ontology would be { ontology -> return ontology.getName(); }
-	 * That function is then executed for each ontology in the list and the results are joined with TABs (one column for each ontology).
+	 * That function is then executed for each ontology in the list and the results are separated by TABs (one column for each ontology).
 	 * In the beginning, the name of the line is printed and finally the line is finished with an ENTER.
 	 * @param <C> Type of Line Name (InvestigationAttribute, String...)
 	 * @param <T> Type of objects to iterate over (Ontology, Person, Publication...)
+	 * @param out where the line is appended
 	 * @param lineName Name of the line
 	 * @param list List of objects to iterate over
-	 * @param lambda Function to execute on each object in the list
-	 * @return The complete line
+	 * @param lambda Function to execute on each object in the list, null results become empty cells
 	 */
-	static <C, T> String lineFromList(C lineName, List<T> list, Function<T, String> lambda) {
-		if(list.size() == 0)
-			return lineName.toString() + Symbol.ENTER;
-	
-		StringBuilder sb = new StringBuilder();
-		sb.append(lineName.toString() + Symbol.TAB); // Append the Line name
-		sb.append(list.stream()
-				.map(obj -> { // on each object in the list:
-					String result = lambda.apply(obj); // execute the function that was passed
-					return result == null ? Symbol.EMPTY.toString() : result; // if the result was null, replace with an empty string
-				})
-				.collect(Collectors.joining(Symbol.TAB.toString()))); // join all the strings together by TABs
-		sb.append(Symbol.ENTER.toString()); // Close the line with ENTER
-		return sb.toString();
+	static <C, T> void appendLineFromList(Appendable out, C lineName, List<T> list, Function<T, String> lambda) throws IOException {
+		appendLine(out, lineName, list, (o, item) -> {
+			String result = lambda.apply(item);
+			if (result != null)
+				o.append(result);
+		});
 	}
 
 	/**
-	 * Built on lineFromList, pass a name, a list of things, and a lambda to extract an OntologyAnnotation from these things
-	 * and get a block of 3 ISATab formatted lines back describing the things.
+	 * Built on appendLineFromList, pass a name, a list of things, and a lambda to extract an OntologyAnnotation from these things
+	 * and get a block of 3 ISATab formatted lines appended describing the things. The lambda is called once per thing.
 	 * 
-	 * ontologyLinesFromList(InvestigationAttribute.INVESTIGATION_PUBLICATION_STATUS, this.publications, p -> p.getStatusOntology())
+	 * appendOntologyLinesFromList(out, InvestigationAttribute.INVESTIGATION_PUBLICATION_STATUS, this.publications, p -> p.getStatus())
 	 * 
 	 * -- Result --
 	 * Investigation Publication Status								Published	Other	Unpublished
@@ -172,21 +183,101 @@ public class Investigation implements Commentable {
 	 * 
 	 * @param <C>
 	 * @param <T>
+	 * @param out where the lines are appended
 	 * @param lineName
 	 * @param list
 	 * @param lambda
-	 * @return 3 lines describing an ontology objects term, accession, and source reference
+	 */
+	static <C, T> void appendOntologyLinesFromList(Appendable out, C lineName, List<T> list,
+			Function<T, OntologyAnnotation> lambda) throws IOException {
+		List<OntologyAnnotation> annotations = new ArrayList<OntologyAnnotation>(list.size());
+		for (T item : list)
+			annotations.add(lambda.apply(item));
+		appendLineFromList(out, lineName, annotations, a -> a == null ? null : a.getTerm());
+		appendLineFromList(out, lineName.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER, annotations,
+				a -> a == null ? null : a.getTermAccession());
+		appendLineFromList(out, lineName.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF, annotations,
+				a -> a == null || a.getSourceREF() == null ? null : a.getSourceREF().getName());
+	}
+
+	/**
+	 * Append a simple single-column attribute like Investigation Title.
+	 * 
+	 * appendSimpleAttribute(out, InvestigationAttributes.INVESTIGATION_TITLE, "Title #1");
+	 * 
+	 * -- Result --
+	 * Investigation Title	Title #1
+	 * 
+	 * @param out where the line is appended
+	 * @param lineName
+	 * @param value (can be null)
+	 */
+	static void appendSimpleAttribute(Appendable out, InvestigationAttribute lineName, String value) throws IOException {
+		out.append(lineName.toString()).append(Symbol.TAB.toString());
+		if (value != null)
+			out.append(value);
+		out.append(Symbol.ENTER.toString());
+	}
+
+	/**
+	 * Append comments that don't have multiple columns (e.g. study comments or investigation comments)
+	 * They will be sorted by their name
+	 * @param out where the lines are appended
+	 * @param comments
+	 */
+	static void appendSimpleComments(Appendable out, List<Comment> comments) throws IOException {
+		if (comments.isEmpty())
+			return;
+		Collections.sort(comments, (c1, c2) -> c1.getName().compareTo(c2.getName()));
+		for (Comment c : comments) {
+			out.append(StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, c.getName())).append(Symbol.TAB.toString());
+			out.append(c.getValue()).append(Symbol.ENTER.toString());
+		}
+	}
+
+	/**
+	 * @return the lines appended by lines as String
+	 */
+	private static String format(LineAppender lines) {
+		StringBuilder sb = new StringBuilder();
+		try {
+			lines.append(sb);
+		} catch (IOException e) {
+			// Not thrown by a StringBuilder
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the lines of {@link #appendComments(Appendable, List)} as String
+	 */
+	static <T extends Commentable> String formatComments(List<T> commentables) {
+		return format(out -> appendComments(out, commentables));
+	}
+
+	/**
+	 * @return the lines of {@link #appendSimpleComments(Appendable, List)} as String
+	 */
+	static String formatSimpleComments(List<Comment> comments) {
+		return format(out -> appendSimpleComments(out, comments));
+	}
+
+	/**
+	 * @return the line of {@link #appendLineFromList(Appendable, Object, List, Function)} as String
+	 */
+	static <C, T> String lineFromList(C lineName, List<T> list, Function<T, String> lambda) {
+		return format(out -> appendLineFromList(out, lineName, list, lambda));
+	}
+
+	/**
+	 * @return the lines of {@link #appendOntologyLinesFromList(Appendable, Object, List, Function)} as String
 	 */
 	static <C, T> String ontologyLinesFromList(C lineName, List<T> list, Function<T, OntologyAnnotation> lambda) {
-		return lineFromList(lineName, list,
-				a ->lambda.apply(a) == null ? Symbol.EMPTY.toString() : lambda.apply(a).getTerm())
-		+ lineFromList(lineName.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER, list,
-				a ->lambda.apply(a) == null ? Symbol.EMPTY.toString() : lambda.apply(a).getTermAccession())
-		+ lineFromList(lineName.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF, list,
-				a ->lambda.apply(a) == null || lambda.apply(a).getSourceREF() == null ? Symbol.EMPTY.toString() : lambda.apply(a).getSourceREF().getName());
+		return format(out -> appendOntologyLinesFromList(out, lineName, list, lambda));
 	}
 
-	private CommentCollection comments = new CommentCollection();
+	private CommentCollection comments = null;
 
 	
 	/**
@@ -224,7 +315,8 @@ public class Investigation implements Commentable {
 	/**
 	 * Studies of investigations {@link Study}
 	 */
-	private List<Study> studies = new ArrayList<>();
+	private List<Study> studies = new KeyedList<Study>(List.of(STUDY_IDENTIFIER, STUDY_FILE_NAME),
+			Study::indexingLists);
 
 	/**
 	 * The date the {@link Investigation} was submitted
@@ -278,197 +370,196 @@ public class Investigation implements Commentable {
 	 * @param study the study of investigation, which will be add
 	 */
 	public void addStudy(Study study) {
-		if(this.studies.stream().map(Study::getIdentifier).anyMatch(study.getIdentifier()::equals))
+		if(KeyedList.find(this.studies, STUDY_IDENTIFIER, study.getIdentifier()) != null)
 			throw new RedundantItemException("Study ID not unique: " + study.getIdentifier());
-		if(this.studies.stream().map(Study::getFileName).anyMatch(study.getFileName()::equals))
+		if(KeyedList.find(this.studies, STUDY_FILE_NAME, study.getFileName()) != null)
 			throw new RedundantItemException("Study Filename not unique: " + study.getFileName());
 
 		study.setInvestigation(this);
 		this.studies.add(study);
 	}
 
-	public CommentCollection comments() {
-		return this.comments;
-	}
-
-	private String formatInvestigationContacts() {
-		return InvestigationAttribute.INVESTIGATION_CONTACTS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_LAST_NAME, this.contacts, (o) -> o.getLastName())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_FIRST_NAME, this.contacts,(o) -> o.getFirstName())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_MID_INITIALS, this.contacts,(o) -> o.getMidInitials())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_EMAIL, this.contacts,(o) -> o.getEmail())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_PHONE, this.contacts,(o) -> o.getPhone())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_FAX, this.contacts,(o) -> o.getFax())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_ADDRESS, this.contacts,(o) -> o.getAddress())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_AFFILIATION, this.contacts,(o) -> o.getAffiliation())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_ROLES, this.contacts,
-				(o) -> o.getRoles().stream().map(c -> c.getTerm()).collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_ROLES.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER,
-				this.contacts,
-				obj -> { return obj.getRoles().stream().map(
-							r -> r.getTermAccession() == null ? Symbol.EMPTY.toString() : r.getTermAccession()
-						).collect(Collectors.joining(Symbol.SEMICOLON.toString())) ; }
-				)
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PERSON_ROLES.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF,
-				this.contacts,
-				obj -> {
-					return obj.getRoles().stream().map(
-							// If there is no role or if there is but it doesn't have an Ontology connected: return empty string
-							// Otherwise return the Ontology's name
-							r -> r == null || r.getSourceREF() == null ? Symbol.EMPTY.toString() : r.getSourceREF().getName()
-						).collect(Collectors.joining(Symbol.SEMICOLON.toString())); }
-				)
-			+ formatComments(this.contacts);
-	}
-
-	private String formatInvestigationHeaders() {		
-		return InvestigationAttribute.INVESTIGATION.toString() + Symbol.ENTER
-			+  formatSimpleAttribute(InvestigationAttribute.INVESTIGATION_IDENTIFIER, this.identifier)
-			+  formatSimpleAttribute(InvestigationAttribute.INVESTIGATION_TITLE, this.title)
-			+  formatSimpleAttribute(InvestigationAttribute.INVESTIGATION_DESCRIPTION, this.description)
-			+  formatSimpleAttribute(InvestigationAttribute.INVESTIGATION_SUBMISSION_DATE, 
-				this.submissionDate == null ? null : this.submissionDate.toString())
-			+  formatSimpleAttribute(InvestigationAttribute.INVESTIGATION_PUBLIC_RELEASE_DATE, 
-				this.publicReleaseDate == null ? null : this.publicReleaseDate.toString())
-				
-			+  formatSimpleComments(this.comments().getAll());	
-	}
-
-	private String formatInvestigationPublications() {	
-		return InvestigationAttribute.INVESTIGATION_PUBLICATIONS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PUBMED_ID, this.publications, (o) -> o.getPubmedID())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PUBLICATION_DOI, this.publications, (o) -> o.getDOI())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PUBLICATION_AUTHOR_LIST, this.publications,(o) -> o.getAuthors())
-			+ lineFromList(InvestigationAttribute.INVESTIGATION_PUBLICATION_TITLE, this.publications, (o) -> o.getTitle())
-			+ ontologyLinesFromList(InvestigationAttribute.INVESTIGATION_PUBLICATION_STATUS, this.publications, p -> p.getStatus())
-		
-			+ formatComments(this.publications);
-		
+	private void appendInvestigationContacts(Appendable out) throws IOException {
+		out.append(InvestigationAttribute.INVESTIGATION_CONTACTS.toString()).append(Symbol.ENTER.toString());
+		appendLineFromList(out, InvestigationAttribute.INVESTIGATION_PERSON_LAST_NAME, this.contacts, (o) -> o.getLastName());
+		appendLineFromList(out, InvestigationAttribute.INVESTIGATION_PERSON_FIRST_NAME, this.contacts,(o) -> o.getFirstName());
+		appendLineFromList(out, InvestigationAttribute.INVESTIGATION_PERSON_MID_INITIALS, this.contacts,(o) -> o.getMidInitials());
+		appendLineFromList(out, InvestigationAttribute.INVESTIGATION_PERSON_EMAIL, this.contacts,(o) -> o.getEmail());
+		appendLineFromList(out, InvestigationAttribute.INVESTIGATION_PERSON_PHONE, this.contacts,(o) -> o.getPhone());
+		appendLineFromList(out, InvestigationAttribute.INVESTIGATION_PERSON_FAX, this.contacts,(o) -> o.getFax());
+		appendLineFromList(out, InvestigationAttribute.INVESTIGATION_PERSON_ADDRESS, this.contacts,(o) -> o.getAddress());
+		appendLineFromList(out, InvestigationAttribute.INVESTIGATION_PERSON_AFFILIATION, this.contacts,(o) -> o.getAffiliation());
+		appendRoles(out, InvestigationAttribute.INVESTIGATION_PERSON_ROLES, this.contacts);
+		appendComments(out, this.contacts);
 	}
-
-	private String formatOntologies() {	
-		return InvestigationAttribute.ONTOLOGY_SOURCE_REFERENCE.toString() + Symbol.ENTER
-			+  lineFromList(InvestigationAttribute.TERM_SOURCE_NAME, this.ontologies, o -> o.getName())
-			+  lineFromList(InvestigationAttribute.TERM_SOURCE_FILE, this.ontologies, o -> o.getURL().toString())
-			+  lineFromList(InvestigationAttribute.TERM_SOURCE_VERSION, this.ontologies, o -> o.getVersion())
-			+  lineFromList(InvestigationAttribute.TERM_SOURCE_DESCRIPTION, this.ontologies, o -> o.getDescription());
-	}
-
-	private String formatStudyAssays(Study study) {
-		return InvestigationAttribute.STUDY_ASSAYS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.STUDY_ASSAY_FILE_NAME, study.getAssays(), a -> a.getFileName())
-			+ ontologyLinesFromList(InvestigationAttribute.STUDY_ASSAY_MEASUREMENT_TYPE, study.getAssays(), a -> a.getMeasurementType())
-			+ ontologyLinesFromList(InvestigationAttribute.STUDY_ASSAY_TECHNOLOGY_TYPE, study.getAssays(), a -> a.getTechnologyType())
-			+ lineFromList(InvestigationAttribute.STUDY_ASSAY_TECHNOLOGY_PLATFORM, study.getAssays(), a -> a.getTechnologyPlatform())
-			+ formatComments(study.getAssays());
-	}
-
-	private String formatStudyContacts(Study study) {
-		return InvestigationAttribute.STUDY_CONTACTS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_LAST_NAME, study.getContacts(), (o) -> o.getLastName())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_FIRST_NAME, study.getContacts(),(o) -> o.getFirstName())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_MID_INITIALS, study.getContacts(),(o) -> o.getMidInitials())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_EMAIL, study.getContacts(),(o) -> o.getEmail())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_PHONE, study.getContacts(),(o) -> o.getPhone())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_FAX, study.getContacts(),(o) -> o.getFax())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_ADDRESS, study.getContacts(),(o) -> o.getAddress())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_AFFILIATION, study.getContacts(),(o) -> o.getAffiliation())
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_ROLES, study.getContacts(),
-				(o) -> o.getRoles().stream().map(c -> c.getTerm()).collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_ROLES.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER,
-				study.getContacts(),
-				obj -> { return obj.getRoles().stream().map(
-							r -> r.getTermAccession() == null ? Symbol.EMPTY.toString() : r.getTermAccession()
-						).collect(Collectors.joining(Symbol.SEMICOLON.toString())) ; }
-				)
-			+ lineFromList(InvestigationAttribute.STUDY_PERSON_ROLES.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF,
-				study.getContacts(),
-				obj -> {
-					return obj.getRoles().stream().map(
-							// If there is no role or if there is but it doesn't have an Ontology connected: return empty string
-							// Otherwise return the Ontology's name
-							r -> r == null || r.getSourceREF() == null ? Symbol.EMPTY.toString() : r.getSourceREF().getName()
-						).collect(Collectors.joining(Symbol.SEMICOLON.toString())); }
-				)
-			+ formatComments(study.getContacts());
-	}
-
-	private String formatStudyFactors(Study study) {
-		return InvestigationAttribute.STUDY_FACTORS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.STUDY_FACTOR_NAME, study.getFactors(), o -> o.getName())
-			+ ontologyLinesFromList(InvestigationAttribute.STUDY_FACTOR_TYPE, study.getFactors(), f -> f.getType())
-			+ formatComments(study.getFactors());
-	}
-
-	private String formatStudyHeaders(Study study) {
-		return InvestigationAttribute.STUDY.toString() + Symbol.ENTER
-			+ formatSimpleAttribute(InvestigationAttribute.STUDY_IDENTIFIER, study.getIdentifier())
-			+ formatSimpleAttribute(InvestigationAttribute.STUDY_TITLE, study.getTitle())
-			+ formatSimpleAttribute(InvestigationAttribute.STUDY_DESCRIPTION, study.getDescription())
-			+ formatSimpleAttribute(InvestigationAttribute.STUDY_SUBMISSION_DATE, 
-				study.getSubmissionDate() == null ? null : study.getSubmissionDate().toString())
-			+ formatSimpleAttribute(InvestigationAttribute.STUDY_PUBLIC_RELEASE_DATE, 
-				study.getPublicReleaseDate() == null ? null : study.getPublicReleaseDate().toString())
-			+ formatSimpleAttribute(InvestigationAttribute.STUDY_FILE_NAME, study.getFileName())
-			+ formatSimpleComments(study.comments().getAll())
+
+	private void appendInvestigationHeaders(Appendable out) throws IOException {
+		out.append(InvestigationAttribute.INVESTIGATION.toString()).append(Symbol.ENTER.toString());
+		appendSimpleAttribute(out, InvestigationAttribute.INVESTIGATION_IDENTIFIER, this.identifier);
+		appendSimpleAttribute(out, InvestigationAttribute.INVESTIGATION_TITLE, this.title);
+		appendSimpleAttribute(out, InvestigationAttribute.INVESTIGATION_DESCRIPTION, this.description);
+		appendSimpleAttribute(out, InvestigationAttribute.INVESTIGATION_SUBMISSION_DATE, 
+			this.submissionDate == null ? null : this.submissionDate.toString());
+		appendSimpleAttribute(out, InvestigationAttribute.INVESTIGATION_PUBLIC_RELEASE_DATE, 
+			this.publicReleaseDate == null ? null : this.publicReleaseDate.toString());
+		appendSimpleComments(out, this.commentsOrEmpty().getAll());
+	}
+
+	private void appendInvestigationPublications(Appendable out) throws IOException {
+		out.append(InvestigationAttribute.INVESTIGATION_PUBLICATIONS.toString()).append(Symbol.ENTER.toString());
+		appendLineFromList(out, InvestigationAttribute.INVESTIGATION_PUBMED_ID, this.publications, (o) -> o.getPubmedID());
+		appendLineFromList(out, InvestigationAttribute.INVESTIGATION_PUBLICATION_DOI, this.publications, (o) -> o.getDOI());
+		appendLineFromList(out, InvestigationAttribute.INVESTIGATION_PUBLICATION_AUTHOR_LIST, this.publications,(o) -> o.getAuthors());
+		appendLineFromList(out, InvestigationAttribute.INVESTIGATION_PUBLICATION_TITLE, this.publications, (o) -> o.getTitle());
+		appendOntologyLinesFromList(out, InvestigationAttribute.INVESTIGATION_PUBLICATION_STATUS, this.publications, p -> p.getStatus());
+		appendComments(out, this.publications);
+	}
+
+	/**
+	 * Appends the sections of the Investigation File that come before the studies
+	 */
+	private void appendInvestigationSections(Appendable out) throws IOException {
+		this.appendOntologies(out);
+		this.appendInvestigationHeaders(out);
+		this.appendInvestigationPublications(out);
+		this.appendInvestigationContacts(out);
+	}
+
+	private void appendOntologies(Appendable out) throws IOException {
+		out.append(InvestigationAttribute.ONTOLOGY_SOURCE_REFERENCE.toString()).append(Symbol.ENTER.toString());
+		appendLineFromList(out, InvestigationAttribute.TERM_SOURCE_NAME, this.ontologies, o -> o.getName());
+		appendLineFromList(out, InvestigationAttribute.TERM_SOURCE_FILE, this.ontologies,
+				o -> o.getURL() == null ? null : o.getURL().toString());
+		appendLineFromList(out, InvestigationAttribute.TERM_SOURCE_VERSION, this.ontologies, o -> o.getVersion());
+		appendLineFromList(out, InvestigationAttribute.TERM_SOURCE_DESCRIPTION, this.ontologies, o -> o.getDescription());
+	}
+
+	/**
+	 * Appends the three lines with the roles of contacts, the roles of a contact are joined by semicolons
+	 */
+	private static void appendRoles(Appendable out, InvestigationAttribute lineName, List<Person> contacts) throws IOException {
+		appendLine(out, lineName, contacts, (o, person) -> appendJoined(o, person.getRoles(), r -> r.getTerm()));
+		appendLine(out, lineName.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER, contacts,
+			(o, person) -> appendJoined(o, person.getRoles(),
+					r -> r.getTermAccession() == null ? Symbol.EMPTY.toString() : r.getTermAccession()));
+		appendLine(out, lineName.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF, contacts,
+			(o, person) -> appendJoined(o, person.getRoles(),
+					// If there is no role or if there is but it doesn't have an Ontology connected: return empty string
+					// Otherwise return the Ontology's name
+					r -> r == null || r.getSourceREF() == null ? Symbol.EMPTY.toString() : r.getSourceREF().getName()));
+	}
+
+	/**
+	 * Appends all sections of the Investigation File that describe a study
+	 */
+	private void appendStudy(Appendable out, Study study) throws IOException {
+		this.appendStudyHeaders(out, study);
+		this.appendStudyPublications(out, study);
+		this.appendStudyFactors(out, study);
+		this.appendStudyAssays(out, study);
+		this.appendStudyProtocols(out, study);
+		this.appendStudyContacts(out, study);
+	}
+
+	private void appendStudyAssays(Appendable out, Study study) throws IOException {
+		out.append(InvestigationAttribute.STUDY_ASSAYS.toString()).append(Symbol.ENTER.toString());
+		appendLineFromList(out, InvestigationAttribute.STUDY_ASSAY_FILE_NAME, study.getAssays(), a -> a.getFileName());
+		appendOntologyLinesFromList(out, InvestigationAttribute.STUDY_ASSAY_MEASUREMENT_TYPE, study.getAssays(), a -> a.getMeasurementType());
+		appendOntologyLinesFromList(out, InvestigationAttribute.STUDY_ASSAY_TECHNOLOGY_TYPE, study.getAssays(), a -> a.getTechnologyType());
+		appendLineFromList(out, InvestigationAttribute.STUDY_ASSAY_TECHNOLOGY_PLATFORM, study.getAssays(), a -> a.getTechnologyPlatform());
+		appendComments(out, study.getAssays());
+	}
+
+	private void appendStudyContacts(Appendable out, Study study) throws IOException {
+		out.append(InvestigationAttribute.STUDY_CONTACTS.toString()).append(Symbol.ENTER.toString());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PERSON_LAST_NAME, study.getContacts(), (o) -> o.getLastName());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PERSON_FIRST_NAME, study.getContacts(),(o) -> o.getFirstName());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PERSON_MID_INITIALS, study.getContacts(),(o) -> o.getMidInitials());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PERSON_EMAIL, study.getContacts(),(o) -> o.getEmail());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PERSON_PHONE, study.getContacts(),(o) -> o.getPhone());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PERSON_FAX, study.getContacts(),(o) -> o.getFax());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PERSON_ADDRESS, study.getContacts(),(o) -> o.getAddress());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PERSON_AFFILIATION, study.getContacts(),(o) -> o.getAffiliation());
+		appendRoles(out, InvestigationAttribute.STUDY_PERSON_ROLES, study.getContacts());
+		appendComments(out, study.getContacts());
+	}
+
+	private void appendStudyFactors(Appendable out, Study study) throws IOException {
+		out.append(InvestigationAttribute.STUDY_FACTORS.toString()).append(Symbol.ENTER.toString());
+		appendLineFromList(out, InvestigationAttribute.STUDY_FACTOR_NAME, study.getFactors(), o -> o.getName());
+		appendOntologyLinesFromList(out, InvestigationAttribute.STUDY_FACTOR_TYPE, study.getFactors(), f -> f.getType());
+		appendComments(out, study.getFactors());
+	}
+
+	private void appendStudyHeaders(Appendable out, Study study) throws IOException {
+		out.append(InvestigationAttribute.STUDY.toString()).append(Symbol.ENTER.toString());
+		appendSimpleAttribute(out, InvestigationAttribute.STUDY_IDENTIFIER, study.getIdentifier());
+		appendSimpleAttribute(out, InvestigationAttribute.STUDY_TITLE, study.getTitle());
+		appendSimpleAttribute(out, InvestigationAttribute.STUDY_DESCRIPTION, study.getDescription());
+		appendSimpleAttribute(out, InvestigationAttribute.STUDY_SUBMISSION_DATE, 
+			study.getSubmissionDate() == null ? null : study.getSubmissionDate().toString());
+		appendSimpleAttribute(out, InvestigationAttribute.STUDY_PUBLIC_RELEASE_DATE, 
+			study.getPublicReleaseDate() == null ? null : study.getPublicReleaseDate().toString());
+		appendSimpleAttribute(out, InvestigationAttribute.STUDY_FILE_NAME, study.getFileName());
+		appendSimpleComments(out, study.commentsOrEmpty().getAll());
 		// STUDY DESIGN DESCRIPTORS
-			+ InvestigationAttribute.STUDY_DESIGN_DESCRIPTORS.toString() + Symbol.ENTER
-			+ ontologyLinesFromList(InvestigationAttribute.STUDY_DESIGN_TYPE, study.getDesignDescriptors(), o -> o)
-			+ formatComments(study.getDesignDescriptors());
-		
+		out.append(InvestigationAttribute.STUDY_DESIGN_DESCRIPTORS.toString()).append(Symbol.ENTER.toString());
+		appendOntologyLinesFromList(out, InvestigationAttribute.STUDY_DESIGN_TYPE, study.getDesignDescriptors(), o -> o);
+		appendComments(out, study.getDesignDescriptors());
+	}
+
+	private void appendStudyProtocols(Appendable out, Study study) throws IOException {
+		out.append(InvestigationAttribute.STUDY_PROTOCOLS.toString()).append(Symbol.ENTER.toString());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PROTOCOL_NAME, study.getProtocols(), p -> p.getName());
+		appendOntologyLinesFromList(out, InvestigationAttribute.STUDY_PROTOCOL_TYPE, study.getProtocols(), p -> p.getType());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PROTOCOL_DESCRIPTION, study.getProtocols(), p -> p.getDescription());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PROTOCOL_URI, study.getProtocols(), p -> p.getURI());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PROTOCOL_VERSION, study.getProtocols(), p -> p.getVersion());
+
+		// Protocol Parameters
+		appendLine(out, InvestigationAttribute.STUDY_PROTOCOL_PARAMETERS_NAME, study.getProtocols(),
+				(o, p) -> appendJoined(o, p.getParameters(), param -> param.getName().getTerm()));
+		appendLine(out, InvestigationAttribute.STUDY_PROTOCOL_PARAMETERS_NAME.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER, study.getProtocols(),
+				(o, p) -> appendJoined(o, p.getParameters(),
+						param -> param.getName() == null || param.getName().getTermAccession() == null ? Symbol.EMPTY.toString() : param.getName().getTermAccession()));
+		appendLine(out, InvestigationAttribute.STUDY_PROTOCOL_PARAMETERS_NAME.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF, study.getProtocols(),
+				(o, p) -> appendJoined(o, p.getParameters(),
+						param -> param.getName() == null || param.getName().getSourceREF() == null ? Symbol.EMPTY.toString() : param.getName().getSourceREF().getName()));
+
+		// Protocol Components
+		appendLine(out, InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_NAME, study.getProtocols(),
+				(o, p) -> appendJoined(o, p.getComponents(), component -> component.getName()));
+		appendLine(out, InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_TYPE, study.getProtocols(),
+				(o, p) -> appendJoined(o, p.getComponents(),
+						component -> component.getType() == null ? Symbol.EMPTY.toString() : component.getType().getTerm()));
+		appendLine(out, InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_TYPE.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER, study.getProtocols(),
+				(o, p) -> appendJoined(o, p.getComponents(),
+						component -> component.getType() == null || component.getType().getTermAccession() == null ? Symbol.EMPTY.toString() : component.getType().getTermAccession()));
+		appendLine(out, InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_TYPE.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF, study.getProtocols(),
+				(o, p) -> appendJoined(o, p.getComponents(),
+						component -> component.getType() == null || component.getType().getSourceREF() == null ? Symbol.EMPTY.toString() : component.getType().getSourceREF().getName()));
+
+		appendComments(out, study.getProtocols());
+	}
+
+	private void appendStudyPublications(Appendable out, Study study) throws IOException {
+		out.append(InvestigationAttribute.STUDY_PUBLICATIONS.toString()).append(Symbol.ENTER.toString());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PUBMED_ID, study.getPublications(), o -> o.getPubmedID());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PUBLICATION_DOI, study.getPublications(), o -> o.getDOI());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PUBLICATION_AUTHOR_LIST, study.getPublications(), o -> o.getAuthors());
+		appendLineFromList(out, InvestigationAttribute.STUDY_PUBLICATION_TITLE, study.getPublications(), o -> o.getTitle());
+		appendOntologyLinesFromList(out, InvestigationAttribute.STUDY_PUBLICATION_STATUS, study.getPublications(), p -> p.getStatus());
+		appendComments(out, study.getPublications());
 	}
 
-	private String formatStudyProtocols(Study study) {
-		return InvestigationAttribute.STUDY_PROTOCOLS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_NAME, study.getProtocols(), p -> p.getName())
-			+ ontologyLinesFromList(InvestigationAttribute.STUDY_PROTOCOL_TYPE, study.getProtocols(), p -> p.getType())
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_DESCRIPTION, study.getProtocols(), p -> p.getDescription())
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_URI, study.getProtocols(), p -> p.getURI())
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_VERSION, study.getProtocols(), p -> p.getVersion())
-			
-			// Protocol Parameters
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_PARAMETERS_NAME, study.getProtocols(),
-					p -> p.getParameters().stream()
-					.map(param -> param.getName().getTerm())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_PARAMETERS_NAME.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER, study.getProtocols(),
-					p -> p.getParameters().stream()
-					.map(param -> param.getName() == null || param.getName().getTermAccession() == null ? Symbol.EMPTY.toString() : param.getName().getTermAccession())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_PARAMETERS_NAME.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF, study.getProtocols(),
-					p -> p.getParameters().stream()
-					.map(param -> param.getName() == null || param.getName().getSourceREF() == null ? Symbol.EMPTY.toString() : param.getName().getSourceREF().getName())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			
-			// Protocol Components
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_NAME, study.getProtocols(),
-					p -> p.getComponents().stream()
-					.map(component -> component.getName())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_TYPE, study.getProtocols(),
-					p -> p.getComponents().stream()
-					.map(component -> component.getType() == null ? Symbol.EMPTY.toString() : component.getType().getTerm())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_TYPE.toString() + Symbol.SPACE + InvestigationAttribute.TERM_ACCESSION_NUMBER, study.getProtocols(),
-					p -> p.getComponents().stream()
-					.map(component -> component.getType() == null || component.getType().getTermAccession() == null ? Symbol.EMPTY.toString() : component.getType().getTermAccession())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			+ lineFromList(InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_TYPE.toString() + Symbol.SPACE + InvestigationAttribute.TERM_SOURCE_REF, study.getProtocols(),
-					p -> p.getComponents().stream()
-					.map(component -> component.getType() == null || component.getType().getSourceREF() == null ? Symbol.EMPTY.toString() : component.getType().getSourceREF().getName())
-					.collect(Collectors.joining(Symbol.SEMICOLON.toString())))
-			
-			+ formatComments(study.getProtocols());
+	public CommentCollection comments() {
+		if (this.comments == null)
+			this.comments = new CommentCollection();
+		return this.comments;
 	}
 
-	private String formatStudyPublications(Study study) {
-		return InvestigationAttribute.STUDY_PUBLICATIONS.toString() + Symbol.ENTER
-			+ lineFromList(InvestigationAttribute.STUDY_PUBMED_ID, study.getPublications(), o -> o.getPubmedID())
-			+ lineFromList(InvestigationAttribute.STUDY_PUBLICATION_DOI, study.getPublications(), o -> o.getDOI())
-			+ lineFromList(InvestigationAttribute.STUDY_PUBLICATION_AUTHOR_LIST, study.getPublications(), o -> o.getAuthors())
-			+ lineFromList(InvestigationAttribute.STUDY_PUBLICATION_TITLE, study.getPublications(), o -> o.getTitle())
-			+ ontologyLinesFromList(InvestigationAttribute.STUDY_PUBLICATION_STATUS, study.getPublications(), p -> p.getStatus())
-			+ formatComments(study.getPublications());
+	public CommentCollection commentsOrEmpty() {
+		return this.comments == null ? CommentCollection.EMPTY : this.comments;
 	}
 
 	/**
@@ -645,6 +736,128 @@ public class Investigation implements Commentable {
 		return "<Investigation> '" + this.identifier + "'";
 	}
 	
+	/**
+	 * Writes the Investigation File together with the files of all its studies
+	 * and assays, using a pool with one thread per processor. See
+	 * {@link #writeArchive(String, TableWriter, ForkJoinPool)}.
+	 * 
+	 * @param filepath    path of the Investigation File
+	 * @param tableWriter writes the lines of each Study and Assay File
+	 * @throws IOException if one of the files cannot be written
+	 */
+	public void writeArchive(String filepath, TableWriter tableWriter) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		try {
+			this.writeArchive(filepath, tableWriter, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Writes the Investigation File together with the files of all its studies
+	 * and assays. The files of studies and assays are put into the directory of
+	 * the Investigation File under their file names and written concurrently by
+	 * tableWriter, while the sections of the studies are formatted concurrently
+	 * for the Investigation File. The Investigation File is the same as the one
+	 * written by {@link #writeToStream(OutputStream)}.
+	 * 
+	 * If a file cannot be written, the others are still completed before the
+	 * first error is thrown.
+	 * 
+	 * @param filepath    path of the Investigation File
+	 * @param tableWriter writes the lines of each Study and Assay File
+	 * @param pool        the pool to write with, it is not shut down
+	 * @throws IOException if one of the files cannot be written
+	 */
+	public void writeArchive(String filepath, TableWriter tableWriter, ForkJoinPool pool) throws IOException {
+		Objects.requireNonNull(tableWriter, "Table writer cannot be null");
+		Path directory = Paths.get(filepath).toAbsolutePath().getParent();
+		logger.debug("{}: Writing archive to '{}'", this, directory);
+
+		List<CompletableFuture<Void>> tables = new ArrayList<CompletableFuture<Void>>();
+		List<CompletableFuture<StringBuilder>> studySections = new ArrayList<CompletableFuture<StringBuilder>>(this.studies.size());
+		for (Study study : this.studies) {
+			studySections.add(CompletableFuture.supplyAsync(() -> {
+				StringBuilder section = new StringBuilder();
+				try {
+					this.appendStudy(section, study);
+				} catch (IOException e) {
+					// Not thrown by a StringBuilder
+					throw new UncheckedIOException(e);
+				}
+				return section;
+			}, pool));
+			tables.add(CompletableFuture.runAsync(() -> writeTable(directory, study, tableWriter), pool));
+			for (Assay assay : study.getAssays())
+				tables.add(CompletableFuture.runAsync(() -> writeTable(directory, assay, tableWriter), pool));
+		}
+
+		Throwable failure = null;
+		try (OutputStream os = new FileOutputStream(filepath)) {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(os, Props.DEFAULT_CHARSET));
+			this.appendInvestigationSections(writer);
+			// Joined in order, so the file does not depend on which study is formatted first
+			char[] chunk = new char[COPY_CHUNK_SIZE];
+			for (CompletableFuture<StringBuilder> studySection : studySections) {
+				StringBuilder section = studySection.join();
+				for (int start = 0; start < section.length(); start += chunk.length) {
+					int end = Math.min(start + chunk.length, section.length());
+					section.getChars(start, end, chunk, 0);
+					writer.write(chunk, 0, end - start);
+				}
+			}
+			writer.flush();
+		} catch (IOException | RuntimeException e) {
+			failure = e;
+		}
+		for (CompletableFuture<Void> table : tables) {
+			try {
+				table.join();
+			} catch (CompletionException e) {
+				if (failure == null)
+					failure = e.getCause();
+			}
+		}
+
+		if (failure instanceof CompletionException && failure.getCause() != null)
+			failure = failure.getCause();
+		if (failure instanceof UncheckedIOException)
+			throw ((UncheckedIOException) failure).getCause();
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		logger.debug("{}: Finished writing archive.", this);
+	}
+
+	private static void writeTable(Path directory, WideTableFile table, TableWriter tableWriter) {
+		try {
+			FileChannel channel = FileChannel.open(directory.resolve(table.getFileName()),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				table.setOutputChannel(channel);
+			} catch (RuntimeException e) {
+				// The table did not take the channel, e.g. because it already has an output
+				try {
+					channel.close();
+				} catch (IOException closeFailure) {
+					e.addSuppressed(closeFailure);
+				}
+				throw e;
+			}
+			try {
+				tableWriter.writeLines(table);
+			} finally {
+				table.closeFile();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	public void writeToFile(String filepath) throws IOException {
 		logger.debug("{}: Directing output to file '{}'", this, filepath);
 		OutputStream os = new FileOutputStream(filepath);
@@ -652,22 +865,38 @@ public class Investigation implements Commentable {
 		os.close();
 	}
 	
+	/**
+	 * Writes the Investigation File compressed. The suffix of the codec (e.g.
+	 * ".gz") is appended to the path unless it already ends with it.
+	 * 
+	 * @param filepath path of the file to write
+	 * @param codec    the compression to use, e.g. {@link de.ipk_gatersleben.bit.bi.isa4j.util.GzipCodec}
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeToFile(String filepath, CompressionCodec codec) throws IOException {
+		Objects.requireNonNull(codec, "Compression codec cannot be null");
+		if (!filepath.endsWith(codec.getFileSuffix()))
+			filepath += codec.getFileSuffix();
+		logger.debug("{}: Directing output to file '{}' compressed with {}", this, filepath, codec);
+		try (OutputStream os = WideTableFile.openCompressed(filepath, codec)) {
+			this.writeToStream(os);
+		}
+	}
+	
+	/**
+	 * Writes the Investigation File to os in a single pass, the lines are
+	 * appended to a buffered writer without building the sections first.
+	 * 
+	 * @param os the stream to write to, it is flushed but not closed
+	 * @throws IOException if the stream cannot be written
+	 */
 	public void writeToStream(OutputStream os) throws IOException {
 		logger.debug("{}: Start writing output.", this);
-		OutputStreamWriter writer = new OutputStreamWriter(os, Props.DEFAULT_CHARSET);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(os, Props.DEFAULT_CHARSET));
 		
-		writer.write(formatOntologies());
-		writer.write(formatInvestigationHeaders());
-		writer.write(formatInvestigationPublications());
-		writer.write(formatInvestigationContacts());
-			
+		this.appendInvestigationSections(writer);
 		for(Study study: this.studies) {
-			writer.write(formatStudyHeaders(study));
-			writer.write(formatStudyPublications(study));
-			writer.write(formatStudyFactors(study));
-			writer.write(formatStudyAssays(study));
-			writer.write(formatStudyProtocols(study));
-			writer.write(formatStudyContacts(study));
+			this.appendStudy(writer, study);
 		}
 			
 		writer.flush();
@@ -0,0 +1,533 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.InvestigationAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+/**
+ * Reads an Investigation File and rebuilds the {@link Investigation} with its
+ * {@link Ontology}s, {@link Publication}s, contacts and {@link Study}s
+ * including their design descriptors, {@link Factor}s, {@link Assay}s and
+ * {@link Protocol}s. The line names of {@link InvestigationAttribute} make up
+ * the grammar: the section names (e.g. "STUDY PROTOCOLS") start a new section,
+ * all other lines of a section are collected by name and turned into objects
+ * when the section ends, so the file is read in a single pass. Term Source REFs
+ * are resolved by name to the Ontologies of the ONTOLOGY SOURCE REFERENCE
+ * section.
+ *
+ * Empty cells become null, except for comments, which keep their (empty)
+ * value so that every comment line of the file is written again.
+ */
+public class InvestigationFileReader {
+
+	private static final Logger logger = LoggerFactory.getLogger(InvestigationFileReader.class);
+
+	/**
+	 * All attributes by their line name
+	 */
+	private static final Map<String, InvestigationAttribute> ATTRIBUTES = new HashMap<String, InvestigationAttribute>();
+
+	static {
+		for (InvestigationAttribute attribute : InvestigationAttribute.values())
+			ATTRIBUTES.put(attribute.toString(), attribute);
+	}
+
+	private static final Set<InvestigationAttribute> SECTIONS = EnumSet.of(
+			InvestigationAttribute.ONTOLOGY_SOURCE_REFERENCE, InvestigationAttribute.INVESTIGATION,
+			InvestigationAttribute.INVESTIGATION_PUBLICATIONS, InvestigationAttribute.INVESTIGATION_CONTACTS,
+			InvestigationAttribute.STUDY, InvestigationAttribute.STUDY_DESIGN_DESCRIPTORS,
+			InvestigationAttribute.STUDY_PUBLICATIONS, InvestigationAttribute.STUDY_FACTORS,
+			InvestigationAttribute.STUDY_ASSAYS, InvestigationAttribute.STUDY_PROTOCOLS,
+			InvestigationAttribute.STUDY_CONTACTS);
+
+	private static final String ACCESSION_SUFFIX = Symbol.SPACE.toString()
+			+ InvestigationAttribute.TERM_ACCESSION_NUMBER;
+
+	private static final String SOURCE_REF_SUFFIX = Symbol.SPACE.toString() + InvestigationAttribute.TERM_SOURCE_REF;
+
+	/**
+	 * Reads an Investigation File.
+	 *
+	 * @param file the file to read
+	 * @return the Investigation described in the file
+	 * @throws IOException if the file cannot be read
+	 */
+	public static Investigation read(Path file) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, Props.DEFAULT_CHARSET)) {
+			return new InvestigationFileReader(reader, file.toString()).read();
+		}
+	}
+
+	/**
+	 * Reads an Investigation File from a stream. The stream is not closed.
+	 *
+	 * @param is the stream to read from
+	 * @return the Investigation described in the stream
+	 * @throws IOException if the stream cannot be read
+	 */
+	public static Investigation read(InputStream is) throws IOException {
+		return new InvestigationFileReader(new BufferedReader(new InputStreamReader(is, Props.DEFAULT_CHARSET)),
+				"stream").read();
+	}
+
+	private final BufferedReader reader;
+
+	private final String source;
+
+	private final Investigation investigation = new Investigation(null);
+
+	/**
+	 * The Study the study sections belong to, the one of the last STUDY section
+	 */
+	private Study study = null;
+
+	/**
+	 * Ontologies by name. Term Source REFs to Ontologies that are not defined
+	 * (yet) are added as well and completed if the definition follows.
+	 */
+	private final Map<String, Ontology> ontologies = new HashMap<String, Ontology>();
+
+	private long lineNumber = 0;
+
+	private InvestigationFileReader(BufferedReader reader, String source) {
+		this.reader = reader;
+		this.source = source;
+	}
+
+	/**
+	 * Builds the OntologyAnnotation from the column of the line attribute and its
+	 * Term Accession Number and Term Source REF lines.
+	 *
+	 * @return the annotation, null if all three cells are empty
+	 */
+	private OntologyAnnotation annotation(Map<String, String[]> lines, InvestigationAttribute attribute, int column) {
+		return this.annotation(this.cell(lines, attribute.toString(), column),
+				this.cell(lines, attribute + ACCESSION_SUFFIX, column),
+				this.cell(lines, attribute + SOURCE_REF_SUFFIX, column));
+	}
+
+	private OntologyAnnotation annotation(String term, String accession, String sourceREF) {
+		if (term == null && accession == null && sourceREF == null)
+			return null;
+		return new OntologyAnnotation(term, accession, sourceREF == null ? null : this.ontology(sourceREF));
+	}
+
+	/**
+	 * Like {@link #annotation(Map, InvestigationAttribute, int)} for cells
+	 * containing several annotations separated by semicolons.
+	 *
+	 * @return the annotations, null for positions where all three parts are empty
+	 */
+	private List<OntologyAnnotation> annotations(Map<String, String[]> lines, InvestigationAttribute attribute,
+			int column) {
+		String[] terms = this.parts(this.cell(lines, attribute.toString(), column));
+		String[] accessions = this.parts(this.cell(lines, attribute + ACCESSION_SUFFIX, column));
+		String[] sourceREFs = this.parts(this.cell(lines, attribute + SOURCE_REF_SUFFIX, column));
+		int count = Math.max(terms.length, Math.max(accessions.length, sourceREFs.length));
+		List<OntologyAnnotation> annotations = new ArrayList<OntologyAnnotation>(count);
+		for (int i = 0; i < count; i++)
+			annotations.add(this.annotation(this.part(terms, i), this.part(accessions, i), this.part(sourceREFs, i)));
+		return annotations;
+	}
+
+	/**
+	 * Turns the lines of a finished section into objects.
+	 */
+	private void build(InvestigationAttribute section, Map<String, String[]> lines) {
+		if (section.name().startsWith("STUDY_") && this.study == null)
+			throw new IllegalStateException(
+					"Section " + section + " before the first STUDY section in " + this.source);
+		int columns = this.columns(lines);
+		switch (section) {
+		case ONTOLOGY_SOURCE_REFERENCE:
+			for (int i = 0; i < columns; i++) {
+				String name = this.cell(lines, InvestigationAttribute.TERM_SOURCE_NAME.toString(), i);
+				if (name == null)
+					continue;
+				Ontology ontology = this.ontology(name);
+				ontology.setURL(this.url(this.cell(lines, InvestigationAttribute.TERM_SOURCE_FILE.toString(), i)));
+				ontology.setVersion(this.cell(lines, InvestigationAttribute.TERM_SOURCE_VERSION.toString(), i));
+				ontology.setDescription(
+						this.cell(lines, InvestigationAttribute.TERM_SOURCE_DESCRIPTION.toString(), i));
+				this.investigation.addOntology(ontology);
+			}
+			break;
+		case INVESTIGATION:
+			this.investigation.setIdentifier(this.cell(lines, InvestigationAttribute.INVESTIGATION_IDENTIFIER.toString(), 0));
+			this.investigation.setTitle(this.cell(lines, InvestigationAttribute.INVESTIGATION_TITLE.toString(), 0));
+			this.investigation.setDescription(
+					this.cell(lines, InvestigationAttribute.INVESTIGATION_DESCRIPTION.toString(), 0));
+			this.investigation.setSubmissionDate(this.localDate(
+					this.cell(lines, InvestigationAttribute.INVESTIGATION_SUBMISSION_DATE.toString(), 0)));
+			this.investigation.setPublicReleaseDate(this.localDate(
+					this.cell(lines, InvestigationAttribute.INVESTIGATION_PUBLIC_RELEASE_DATE.toString(), 0)));
+			this.comments(lines, List.of(this.investigation));
+			break;
+		case INVESTIGATION_PUBLICATIONS:
+			this.publications(lines, columns, InvestigationAttribute.INVESTIGATION_PUBMED_ID,
+					InvestigationAttribute.INVESTIGATION_PUBLICATION_DOI,
+					InvestigationAttribute.INVESTIGATION_PUBLICATION_AUTHOR_LIST,
+					InvestigationAttribute.INVESTIGATION_PUBLICATION_TITLE,
+					InvestigationAttribute.INVESTIGATION_PUBLICATION_STATUS)
+					.forEach(this.investigation::addPublication);
+			break;
+		case INVESTIGATION_CONTACTS:
+			this.contacts(lines, columns, InvestigationAttribute.INVESTIGATION_PERSON_LAST_NAME,
+					InvestigationAttribute.INVESTIGATION_PERSON_FIRST_NAME,
+					InvestigationAttribute.INVESTIGATION_PERSON_MID_INITIALS,
+					InvestigationAttribute.INVESTIGATION_PERSON_EMAIL,
+					InvestigationAttribute.INVESTIGATION_PERSON_PHONE,
+					InvestigationAttribute.INVESTIGATION_PERSON_FAX,
+					InvestigationAttribute.INVESTIGATION_PERSON_ADDRESS,
+					InvestigationAttribute.INVESTIGATION_PERSON_AFFILIATION,
+					InvestigationAttribute.INVESTIGATION_PERSON_ROLES)
+					.forEach(this.investigation::addContact);
+			break;
+		case STUDY:
+			this.buildStudy(lines);
+			break;
+		case STUDY_DESIGN_DESCRIPTORS:
+			List<OntologyAnnotation> designDescriptors = new ArrayList<OntologyAnnotation>(columns);
+			for (int i = 0; i < columns; i++)
+				designDescriptors.add(this.annotation(lines, InvestigationAttribute.STUDY_DESIGN_TYPE, i));
+			this.comments(lines, designDescriptors);
+			designDescriptors.stream().filter(d -> d != null).forEach(this.study::addDesignDescriptor);
+			break;
+		case STUDY_PUBLICATIONS:
+			this.publications(lines, columns, InvestigationAttribute.STUDY_PUBMED_ID,
+					InvestigationAttribute.STUDY_PUBLICATION_DOI, InvestigationAttribute.STUDY_PUBLICATION_AUTHOR_LIST,
+					InvestigationAttribute.STUDY_PUBLICATION_TITLE, InvestigationAttribute.STUDY_PUBLICATION_STATUS)
+					.forEach(this.study::addPublication);
+			break;
+		case STUDY_FACTORS:
+			List<Factor> factors = new ArrayList<Factor>(columns);
+			for (int i = 0; i < columns; i++) {
+				String name = this.cell(lines, InvestigationAttribute.STUDY_FACTOR_NAME.toString(), i);
+				factors.add(name == null ? null
+						: new Factor(name, this.annotation(lines, InvestigationAttribute.STUDY_FACTOR_TYPE, i)));
+			}
+			this.comments(lines, factors);
+			factors.stream().filter(f -> f != null).forEach(this.study::addFactor);
+			break;
+		case STUDY_ASSAYS:
+			List<Assay> assays = new ArrayList<Assay>(columns);
+			for (int i = 0; i < columns; i++) {
+				String fileName = this.cell(lines, InvestigationAttribute.STUDY_ASSAY_FILE_NAME.toString(), i);
+				if (fileName == null) {
+					assays.add(null);
+					continue;
+				}
+				Assay assay = new Assay(fileName);
+				assay.setMeasurementType(this.annotation(lines, InvestigationAttribute.STUDY_ASSAY_MEASUREMENT_TYPE, i));
+				assay.setTechnologyType(this.annotation(lines, InvestigationAttribute.STUDY_ASSAY_TECHNOLOGY_TYPE, i));
+				assay.setTechnologyPlatform(
+						this.cell(lines, InvestigationAttribute.STUDY_ASSAY_TECHNOLOGY_PLATFORM.toString(), i));
+				assays.add(assay);
+			}
+			this.comments(lines, assays);
+			assays.stream().filter(a -> a != null).forEach(this.study::addAssay);
+			break;
+		case STUDY_PROTOCOLS:
+			this.protocols(lines, columns).forEach(this.study::addProtocol);
+			break;
+		case STUDY_CONTACTS:
+			this.contacts(lines, columns, InvestigationAttribute.STUDY_PERSON_LAST_NAME,
+					InvestigationAttribute.STUDY_PERSON_FIRST_NAME, InvestigationAttribute.STUDY_PERSON_MID_INITIALS,
+					InvestigationAttribute.STUDY_PERSON_EMAIL, InvestigationAttribute.STUDY_PERSON_PHONE,
+					InvestigationAttribute.STUDY_PERSON_FAX, InvestigationAttribute.STUDY_PERSON_ADDRESS,
+					InvestigationAttribute.STUDY_PERSON_AFFILIATION, InvestigationAttribute.STUDY_PERSON_ROLES)
+					.forEach(this.study::addContact);
+			break;
+		default:
+			throw new IllegalStateException("Unknown section " + section);
+		}
+		this.checkLineNames(section, lines);
+	}
+
+	private void buildStudy(Map<String, String[]> lines) {
+		String identifier = this.cell(lines, InvestigationAttribute.STUDY_IDENTIFIER.toString(), 0);
+		if (identifier == null)
+			throw new IllegalStateException("Study without " + InvestigationAttribute.STUDY_IDENTIFIER + " before line "
+					+ this.lineNumber + " of " + this.source);
+		String fileName = this.cell(lines, InvestigationAttribute.STUDY_FILE_NAME.toString(), 0);
+		this.study = fileName == null ? new Study(identifier) : new Study(identifier, fileName);
+		this.study.setTitle(this.cell(lines, InvestigationAttribute.STUDY_TITLE.toString(), 0));
+		this.study.setDescription(this.cell(lines, InvestigationAttribute.STUDY_DESCRIPTION.toString(), 0));
+		this.study.setSubmissionDate(
+				this.date(this.cell(lines, InvestigationAttribute.STUDY_SUBMISSION_DATE.toString(), 0)));
+		this.study.setPublicReleaseDate(
+				this.date(this.cell(lines, InvestigationAttribute.STUDY_PUBLIC_RELEASE_DATE.toString(), 0)));
+		this.comments(lines, List.of(this.study));
+		this.investigation.addStudy(this.study);
+	}
+
+	/**
+	 * @return the cell in the given column of the line, null if it is empty or missing
+	 */
+	private String cell(Map<String, String[]> lines, String lineName, int column) {
+		String[] values = lines.get(lineName);
+		if (values == null || column >= values.length || values[column].isEmpty())
+			return null;
+		return values[column];
+	}
+
+	/**
+	 * Warns about lines that are no part of the grammar.
+	 */
+	private void checkLineNames(InvestigationAttribute section, Map<String, String[]> lines) {
+		for (String name : lines.keySet()) {
+			if (this.isComment(name))
+				continue;
+			String baseName = name;
+			if (name.endsWith(ACCESSION_SUFFIX))
+				baseName = name.substring(0, name.length() - ACCESSION_SUFFIX.length());
+			else if (name.endsWith(SOURCE_REF_SUFFIX))
+				baseName = name.substring(0, name.length() - SOURCE_REF_SUFFIX.length());
+			if (!ATTRIBUTES.containsKey(baseName))
+				logger.warn("{}: Ignored unknown line '{}' in section {} of {}", this.investigation, name, section,
+						this.source);
+		}
+	}
+
+	/**
+	 * @return the number of objects in a section, i.e. the longest line (comments not counted)
+	 */
+	private int columns(Map<String, String[]> lines) {
+		int columns = 0;
+		for (Map.Entry<String, String[]> line : lines.entrySet())
+			if (!this.isComment(line.getKey()))
+				columns = Math.max(columns, line.getValue().length);
+		return columns;
+	}
+
+	/**
+	 * Adds the comments of a section to the objects of its columns. Columns
+	 * without an object are null.
+	 */
+	private void comments(Map<String, String[]> lines, List<? extends Commentable> commentables) {
+		for (Map.Entry<String, String[]> line : lines.entrySet()) {
+			if (!this.isComment(line.getKey()))
+				continue;
+			String name = line.getKey().substring(line.getKey().indexOf('[') + 1, line.getKey().length() - 1);
+			String[] values = line.getValue();
+			if (values.length > commentables.size())
+				logger.warn("{}: Line '{}' of {} has more values than there are objects, they were ignored",
+						this.investigation, line.getKey(), this.source);
+			for (int i = 0; i < commentables.size(); i++) {
+				if (commentables.get(i) != null)
+					commentables.get(i).comments()
+							.add(new Comment(name, i < values.length ? values[i] : Symbol.EMPTY.toString()));
+			}
+		}
+	}
+
+	private List<Person> contacts(Map<String, String[]> lines, int columns, InvestigationAttribute lastName,
+			InvestigationAttribute firstName, InvestigationAttribute midInitials, InvestigationAttribute email,
+			InvestigationAttribute phone, InvestigationAttribute fax, InvestigationAttribute address,
+			InvestigationAttribute affiliation, InvestigationAttribute roles) {
+		List<Person> contacts = new ArrayList<Person>(columns);
+		for (int i = 0; i < columns; i++) {
+			Person person = new Person(this.cell(lines, lastName.toString(), i),
+					this.cell(lines, firstName.toString(), i), this.cell(lines, email.toString(), i),
+					this.cell(lines, affiliation.toString(), i), this.cell(lines, address.toString(), i));
+			person.setMidInitials(this.cell(lines, midInitials.toString(), i));
+			person.setPhone(this.cell(lines, phone.toString(), i));
+			person.setFax(this.cell(lines, fax.toString(), i));
+			this.annotations(lines, roles, i).stream().filter(r -> r != null).forEach(person::addRole);
+			contacts.add(person);
+		}
+		this.comments(lines, contacts);
+		return contacts;
+	}
+
+	/**
+	 * Parses dates of Studies, which are written with {@link Date#toString()} but
+	 * mostly given as yyyy-MM-dd in files from other sources.
+	 */
+	private Date date(String value) {
+		if (value == null)
+			return null;
+		try {
+			return Date.from(LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant());
+		} catch (DateTimeParseException e) {
+			try {
+				return new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US).parse(value);
+			} catch (ParseException e2) {
+				logger.warn("{}: Ignored date '{}' in {}, it is not in the format yyyy-MM-dd", this.investigation,
+						value, this.source);
+				return null;
+			}
+		}
+	}
+
+	private boolean isComment(String lineName) {
+		String template = InvestigationAttribute.COMMENT.toString();
+		int wildcard = template.indexOf(Symbol.WILDCARD.toString());
+		return lineName.startsWith(template.substring(0, wildcard))
+				&& lineName.endsWith(template.substring(wildcard + 1));
+	}
+
+	private LocalDate localDate(String value) {
+		if (value == null)
+			return null;
+		try {
+			return LocalDate.parse(value);
+		} catch (DateTimeParseException e) {
+			logger.warn("{}: Ignored date '{}' in {}, it is not in the format yyyy-MM-dd", this.investigation, value,
+					this.source);
+			return null;
+		}
+	}
+
+	private Ontology ontology(String name) {
+		return this.ontologies.computeIfAbsent(name, n -> new Ontology(n, null, null, null));
+	}
+
+	private String part(String[] parts, int index) {
+		return index < parts.length && !parts[index].isEmpty() ? parts[index] : null;
+	}
+
+	/**
+	 * Splits a cell at semicolons, keeping empty parts.
+	 */
+	private String[] parts(String cell) {
+		return cell == null ? new String[0] : cell.split(Symbol.SEMICOLON.toString(), -1);
+	}
+
+	private List<Protocol> protocols(Map<String, String[]> lines, int columns) {
+		List<Protocol> protocols = new ArrayList<Protocol>(columns);
+		for (int i = 0; i < columns; i++) {
+			Protocol protocol = new Protocol(this.cell(lines, InvestigationAttribute.STUDY_PROTOCOL_NAME.toString(), i),
+					this.annotation(lines, InvestigationAttribute.STUDY_PROTOCOL_TYPE, i));
+			protocol.setDescription(
+					this.cell(lines, InvestigationAttribute.STUDY_PROTOCOL_DESCRIPTION.toString(), i));
+			protocol.setURI(this.cell(lines, InvestigationAttribute.STUDY_PROTOCOL_URI.toString(), i));
+			protocol.setVersion(this.cell(lines, InvestigationAttribute.STUDY_PROTOCOL_VERSION.toString(), i));
+			for (OntologyAnnotation parameter : this.annotations(lines,
+					InvestigationAttribute.STUDY_PROTOCOL_PARAMETERS_NAME, i))
+				if (parameter != null)
+					protocol.addParameter(new ProtocolParameter(parameter));
+			String[] componentNames = this.parts(
+					this.cell(lines, InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_NAME.toString(), i));
+			List<OntologyAnnotation> componentTypes = this.annotations(lines,
+					InvestigationAttribute.STUDY_PROTOCOL_COMPONENTS_TYPE, i);
+			for (int c = 0; c < Math.max(componentNames.length, componentTypes.size()); c++) {
+				OntologyAnnotation type = c < componentTypes.size() ? componentTypes.get(c) : null;
+				String name = this.part(componentNames, c);
+				if (name != null || type != null)
+					protocol.addComponent(new ProtocolComponent(name, type));
+			}
+			protocols.add(protocol);
+		}
+		this.comments(lines, protocols);
+		return protocols;
+	}
+
+	private List<Publication> publications(Map<String, String[]> lines, int columns, InvestigationAttribute pubmedID,
+			InvestigationAttribute doi, InvestigationAttribute authors, InvestigationAttribute title,
+			InvestigationAttribute status) {
+		List<Publication> publications = new ArrayList<Publication>(columns);
+		for (int i = 0; i < columns; i++)
+			publications.add(new Publication(this.cell(lines, title.toString(), i),
+					this.cell(lines, authors.toString(), i), this.cell(lines, doi.toString(), i),
+					this.cell(lines, pubmedID.toString(), i), this.annotation(lines, status, i)));
+		this.comments(lines, publications);
+		return publications;
+	}
+
+	private Investigation read() throws IOException {
+		InvestigationAttribute section = null;
+		Map<String, String[]> lines = new LinkedHashMap<String, String[]>();
+		String line;
+		while ((line = this.reader.readLine()) != null) {
+			this.lineNumber++;
+			if (line.isBlank())
+				continue;
+			int tab = line.indexOf(Symbol.TAB.toString());
+			String name = WideTableFileReader.unquote(line, 0, tab < 0 ? line.length() : tab);
+			InvestigationAttribute attribute = ATTRIBUTES.get(name);
+			if (attribute != null && SECTIONS.contains(attribute)) {
+				if (section != null)
+					this.build(section, lines);
+				section = attribute;
+				lines = new LinkedHashMap<String, String[]>();
+				continue;
+			}
+			if (section == null)
+				throw new IllegalStateException(
+						"Line " + this.lineNumber + " of " + this.source + " is not part of a section: " + name);
+			if (lines.put(name, this.values(line, tab)) != null)
+				throw new IllegalStateException("Line " + this.lineNumber + " of " + this.source + ": " + name
+						+ " occurs twice in section " + section);
+		}
+		if (section != null)
+			this.build(section, lines);
+		logger.debug("{}: Read {} lines from {}", this.investigation, this.lineNumber, this.source);
+		return this.investigation;
+	}
+
+	private URL url(String value) {
+		if (value == null)
+			return null;
+		try {
+			return new URL(value);
+		} catch (MalformedURLException e) {
+			logger.warn("{}: Ignored Term Source File '{}' in {}, it is not a valid URL", this.investigation, value,
+					this.source);
+			return null;
+		}
+	}
+
+	/**
+	 * @return the cells of a line after its name
+	 */
+	private String[] values(String line, int tab) {
+		if (tab < 0)
+			return new String[0];
+		List<String> values = new ArrayList<String>();
+		int start = tab + 1;
+		while (true) {
+			int end = line.indexOf(Symbol.TAB.toString(), start);
+			if (end < 0) {
+				values.add(WideTableFileReader.unquote(line, start, line.length()));
+				return values.toArray(new String[0]);
+			}
+			values.add(WideTableFileReader.unquote(line, start, end));
+			start = end + 1;
+		}
+	}
+
+}
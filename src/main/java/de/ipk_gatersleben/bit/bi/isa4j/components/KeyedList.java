@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * An {@link ArrayList} that finds its items by key (e.g. the category of a
+ * Characteristic or the name of a Comment) through hash indexes instead of
+ * scanning the list, so that checking for duplicates before adding an item
+ * takes constant time. Iteration order is not affected by the indexes.
+ *
+ * The indexes are only built for lists of at least {@link #MIN_INDEXED_SIZE}
+ * items and are kept up to date when items are appended with
+ * {@link #add(Object)}. Any other modification through the list or its
+ * iterators makes them rebuilt with the next lookup. Keys are taken when items
+ * are indexed, so every item has to know the lists indexing it
+ * ({@link IndexingLists}) and the setters of its keys have to report a changed
+ * key through {@link IndexingLists#changeKey(IndexingLists, Object, Object)}.
+ * Only these lists then rebuild their indexes.
+ *
+ * @param <T> type of the items
+ */
+final class KeyedList<T> extends ArrayList<T> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Below this size lookups scan the list, which is as fast and saves the memory
+	 * of the indexes
+	 */
+	static final int MIN_INDEXED_SIZE = 16;
+
+	/**
+	 * Finds the first item with the given key in a list. Uses the index of a
+	 * KeyedList with that key function, so the function should be a constant that
+	 * is also passed to the constructor.
+	 *
+	 * @param <T>         type of the items
+	 * @param list        the list to search
+	 * @param keyFunction returns the key of an item
+	 * @param key         the key to look for
+	 * @return the item or null if there is none with this key
+	 */
+	static <T> T find(List<T> list, Function<? super T, ?> keyFunction, Object key) {
+		if (list instanceof KeyedList) {
+			KeyedList<T> keyedList = (KeyedList<T>) list;
+			for (int keyNumber = 0; keyNumber < keyedList.keyFunctions.size(); keyNumber++)
+				if (keyedList.keyFunctions.get(keyNumber) == keyFunction)
+					return keyedList.find(keyNumber, key);
+		}
+		return findByScan(list, keyFunction, key);
+	}
+
+	private static <T> T findByScan(List<T> list, Function<? super T, ?> keyFunction, Object key) {
+		for (T item : list)
+			if (Objects.equals(key, keyFunction.apply(item)))
+				return item;
+		return null;
+	}
+
+	private final List<Function<? super T, ?>> keyFunctions;
+
+	/**
+	 * Returns the lists indexing an item, creating them if necessary
+	 */
+	private final Function<? super T, IndexingLists> indexingLists;
+
+	/**
+	 * indexes.get(keyNumber) maps keys to the first item with that key, null if
+	 * not built
+	 */
+	private transient List<HashMap<Object, T>> indexes = null;
+
+	/**
+	 * {@link #modCount} when the indexes were last up to date
+	 */
+	private transient int indexedModCount;
+
+	/**
+	 * @param keyFunctions  functions returning the keys items are looked up by
+	 * @param indexingLists returns the lists indexing an item, creating them if
+	 *                      necessary
+	 */
+	KeyedList(List<Function<? super T, ?>> keyFunctions, Function<? super T, IndexingLists> indexingLists) {
+		this.keyFunctions = List.copyOf(keyFunctions);
+		this.indexingLists = indexingLists;
+	}
+
+	/**
+	 * @param initialCapacity the initial capacity of the list
+	 * @param keyFunctions    functions returning the keys items are looked up by
+	 * @param indexingLists   returns the lists indexing an item, creating them if
+	 *                        necessary
+	 */
+	KeyedList(int initialCapacity, List<Function<? super T, ?>> keyFunctions,
+			Function<? super T, IndexingLists> indexingLists) {
+		super(initialCapacity);
+		this.keyFunctions = List.copyOf(keyFunctions);
+		this.indexingLists = indexingLists;
+	}
+
+	@Override
+	public boolean add(T item) {
+		boolean upToDate = this.indexes != null && this.modCount == this.indexedModCount;
+		super.add(item);
+		if (upToDate) {
+			this.index(item);
+			this.indexedModCount = this.modCount;
+		}
+		return true;
+	}
+
+	private T find(int keyNumber, Object key) {
+		Function<? super T, ?> keyFunction = this.keyFunctions.get(keyNumber);
+		if (this.size() < MIN_INDEXED_SIZE)
+			return findByScan(this, keyFunction, key);
+		if (this.indexes == null || this.modCount != this.indexedModCount)
+			this.rebuildIndexes();
+		return this.indexes.get(keyNumber).get(key);
+	}
+
+	private void index(T item) {
+		for (int keyNumber = 0; keyNumber < this.keyFunctions.size(); keyNumber++)
+			this.indexes.get(keyNumber).putIfAbsent(this.keyFunctions.get(keyNumber).apply(item), item);
+		this.indexingLists.apply(item).add(this);
+	}
+
+	/**
+	 * Called when the key of an item changed, the indexes are rebuilt with the
+	 * next lookup
+	 */
+	void dropIndexes() {
+		this.indexes = null;
+	}
+
+	private void rebuildIndexes() {
+		this.indexes = new ArrayList<HashMap<Object, T>>(this.keyFunctions.size());
+		for (int keyNumber = 0; keyNumber < this.keyFunctions.size(); keyNumber++)
+			this.indexes.add(new HashMap<Object, T>(this.size() * 2));
+		for (T item : this)
+			this.index(item);
+		this.indexedModCount = this.modCount;
+	}
+
+	/**
+	 * Replacing an item does not count as a modification for {@link #modCount}, so
+	 * the indexes are dropped here
+	 */
+	@Override
+	public T set(int index, T item) {
+		this.indexes = null;
+		return super.set(index, item);
+	}
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
+
+/**
+ * Serializes lines of a Study or Assay File along a {@link RowPlan}. The
+ * objects of the line push their cells through
+ * {@link StudyOrAssayTableObject#visitFields(FieldVisitor)} straight into the
+ * line buffer while every announced header group is checked against the plan.
+ * As soon as a group does not match (different order, different width, missing
+ * or surplus groups), the line is discarded and written again through
+ * {@link RowPlan#appendLineBySlots(StudyOrAssayTableObject, StringBuilder)},
+ * which either copes with the deviation or reports it in detail.
+ *
+ * A serializer keeps state while a line is written, so every thread needs its
+ * own instance. The plan can be shared.
+ */
+final class LineSerializer implements FieldVisitor {
+
+	private final RowPlan plan;
+
+	private StringBuilder sb;
+
+	private int position;
+
+	private int group;
+
+	private boolean firstCell;
+
+	private boolean mismatch;
+
+	LineSerializer(RowPlan plan) {
+		this.plan = plan;
+	}
+
+	/**
+	 * Appends the cells of the line starting with initiator to sb, including the
+	 * closing line break.
+	 *
+	 * @param initiator first object of the line
+	 * @param sb        the buffer to append to
+	 * @throws IOException if an object fails to pass its fields
+	 */
+	void appendLine(StudyOrAssayTableObject initiator, StringBuilder sb) throws IOException {
+		int lineStart = sb.length();
+		this.sb = sb;
+		this.firstCell = true;
+		this.mismatch = false;
+
+		StudyOrAssayTableObject currentObject = initiator;
+		for (this.position = 0; this.position < this.plan.size() && !this.mismatch; this.position++) {
+			if (currentObject == null) {
+				this.mismatch = true;
+				break;
+			}
+			this.group = 0;
+			currentObject.visitFields(this);
+			if (this.group != this.plan.groupCount(this.position))
+				this.mismatch = true;
+			currentObject = currentObject.getNextStudyOrAssayTableObject();
+		}
+		this.sb = null;
+
+		if (this.mismatch) {
+			sb.setLength(lineStart);
+			this.plan.appendLineBySlots(initiator, sb);
+		} else {
+			sb.append(Symbol.ENTER.toString());
+		}
+	}
+
+	public void cell(double value) {
+		if (this.nextCell())
+			StringUtil.appendNumber(this.sb, value);
+	}
+
+	public void cell(long value) {
+		if (this.nextCell())
+			this.sb.append(value);
+	}
+
+	public void cell(String value) {
+		if (this.nextCell())
+			this.sb.append(value);
+	}
+
+	/**
+	 * Separates the next cell from the previous one
+	 *
+	 * @return false if the line is discarded and the cell is to be skipped
+	 */
+	private boolean nextCell() {
+		if (this.mismatch)
+			return false;
+		if (!this.firstCell)
+			this.sb.append(Symbol.TAB.toString());
+		this.firstCell = false;
+		return true;
+	}
+
+	public void group(StudyAssayAttribute attribute, String name, int width) {
+		if (this.mismatch)
+			return;
+		if (this.group >= this.plan.groupCount(this.position)
+				|| !this.plan.matches(this.position, this.group, attribute, name, width)) {
+			this.mismatch = true;
+			return;
+		}
+		this.group++;
+	}
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
+
+/**
+ * A line of a Study or Assay File that is serialized once from a prototype
+ * chain of objects and then written again and again with only a few cells
+ * changed, e.g. the names of Source and Sample, while Protocols, Parameter
+ * Values etc. stay the same. The cells in between the variable cells (slots)
+ * are kept as ready-made text, so writing a line only copies them and appends
+ * the slot values.
+ *
+ * Slots are numbered from 0 in the order of the columns passed to
+ * {@link WideTableFile#createLineTemplate(StudyOrAssayTableObject, int...)}
+ * and hold the cells of the prototype until they are set. A value stays set
+ * for all following lines until it is set again. Templates keep state between
+ * lines, so they must not be shared between threads.
+ *
+ * <pre>
+ * study.writeHeadersFromExample(prototype);
+ * LineTemplate template = study.createLineTemplate(prototype,
+ *     study.getColumnIndex(0, "Source Name"), study.getColumnIndex(4, "Sample Name"));
+ * for (int i = 0; i &lt; plants; i++) {
+ *     template.setValue(0, "Plant " + i);
+ *     template.setValue(1, "Plant " + i + " Leaf");
+ *     study.writeLine(template);
+ * }
+ * </pre>
+ */
+public final class LineTemplate {
+
+	private final RowPlan plan;
+
+	/**
+	 * segments[slot] = the text before the slot, segments[slots] = the text after
+	 * the last slot including the line break
+	 */
+	private final char[][] segments;
+
+	/**
+	 * The values of the slots, null if the slot holds a number
+	 */
+	private final String[] texts;
+
+	/**
+	 * The numbers of the slots, doubles as raw long bits
+	 */
+	private final long[] numbers;
+
+	/**
+	 * true if the number of a slot is a whole number
+	 */
+	private final boolean[] whole;
+
+	/**
+	 * @param plan    the plan of the file the template is written to
+	 * @param line    the serialized prototype, including the line break
+	 * @param columns the ascending indexes of the columns that become slots
+	 */
+	LineTemplate(RowPlan plan, String line, int[] columns) {
+		this.plan = plan;
+		String[] cells = line.substring(0, line.length() - Symbol.ENTER.toString().length())
+				.split(Symbol.TAB.toString(), -1);
+		if (cells.length != plan.columnCount())
+			throw new IllegalStateException(
+					"Prototype has " + cells.length + " cells, but the header has " + plan.columnCount() + " columns");
+
+		this.segments = new char[columns.length + 1][];
+		this.texts = new String[columns.length];
+		this.numbers = new long[columns.length];
+		this.whole = new boolean[columns.length];
+		StringBuilder segment = new StringBuilder();
+		int column = 0;
+		for (int slot = 0; slot < columns.length; slot++) {
+			if (columns[slot] < column || columns[slot] >= cells.length)
+				throw new IllegalArgumentException("Columns must be ascending and less than " + cells.length + ": "
+						+ columns[slot]);
+			for (; column < columns[slot]; column++)
+				segment.append(cells[column]).append(Symbol.TAB.toString());
+			this.segments[slot] = segment.toString().toCharArray();
+			this.texts[slot] = cells[column];
+			segment.setLength(0);
+			if (++column < cells.length)
+				segment.append(Symbol.TAB.toString());
+		}
+		for (; column < cells.length; column++) {
+			segment.append(cells[column]);
+			if (column < cells.length - 1)
+				segment.append(Symbol.TAB.toString());
+		}
+		segment.append(Symbol.ENTER.toString());
+		this.segments[columns.length] = segment.toString().toCharArray();
+	}
+
+	/**
+	 * Appends the line with the current slot values to sb, including the line
+	 * break.
+	 */
+	void appendLine(StringBuilder sb) {
+		for (int slot = 0; slot < this.texts.length; slot++) {
+			sb.append(this.segments[slot]);
+			if (this.texts[slot] != null)
+				sb.append(this.texts[slot]);
+			else if (this.whole[slot])
+				sb.append(this.numbers[slot]);
+			else
+				StringUtil.appendNumber(sb, Double.longBitsToDouble(this.numbers[slot]));
+		}
+		sb.append(this.segments[this.texts.length]);
+	}
+
+	/**
+	 * @return the plan of the file the template was created for
+	 */
+	RowPlan getPlan() {
+		return this.plan;
+	}
+
+	/**
+	 * @return the number of slots
+	 */
+	public int getSlotCount() {
+		return this.texts.length;
+	}
+
+	/**
+	 * Sets a slot to a number, formatted like {@link String#valueOf(double)}.
+	 *
+	 * @param slot  the number of the slot
+	 * @param value the value
+	 */
+	public void setValue(int slot, double value) {
+		this.numbers[slot] = Double.doubleToRawLongBits(value);
+		this.whole[slot] = false;
+		this.texts[slot] = null;
+	}
+
+	/**
+	 * Sets a slot to a whole number.
+	 *
+	 * @param slot  the number of the slot
+	 * @param value the value
+	 */
+	public void setValue(int slot, long value) {
+		this.numbers[slot] = value;
+		this.whole[slot] = true;
+		this.texts[slot] = null;
+	}
+
+	/**
+	 * Sets a slot to a text, replacing tabs and line breaks like
+	 * {@link StringUtil#sanitize(String)}.
+	 *
+	 * @param slot  the number of the slot
+	 * @param value the value, null for an empty cell
+	 */
+	public void setValue(int slot, String value) {
+		this.texts[slot] = value == null ? Symbol.EMPTY.toString() : StringUtil.sanitize(value);
+	}
+
+}
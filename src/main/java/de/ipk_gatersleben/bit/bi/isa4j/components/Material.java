@@ -7,10 +7,8 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
@@ -28,22 +26,9 @@ public class Material extends Source {
 		this.setType(type);
 	}
 
-	Map<String, String[]> getFields() {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-		
-		fields.put(this.type, new String[]{this.name});
-		fields.putAll(this.getFieldsForCharacteristics());
-
-		return fields;
-	}
-
-	LinkedHashMap<String, String[]> getHeaders() {
-		LinkedHashMap<String, String[]> headers = new LinkedHashMap<String, String[]>();
-		
-		headers.put(this.type, new String[]{this.type});
-		headers.putAll(this.getHeadersForCharacteristics());
-		
-		return headers;
+	void addGroups(HeaderStructure structure) {
+		structure.group(null, this.type);
+		this.addCharacteristicGroups(structure);
 	}
 	
 	/**
@@ -65,5 +50,11 @@ public class Material extends Source {
 	public String toString() {
 		return "<Material> '" + this.name + "'";
 	}
+	
+	void visitFields(FieldVisitor visitor) throws IOException {
+		visitor.group(null, this.type, 1);
+		visitor.cell(this.name);
+		this.visitCharacteristics(visitor);
+	}
 
 }
@@ -15,11 +15,19 @@ import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
  * Class representing a {@link Ontology} based term. Every {@link OntologyAnnotation} has
  * three Attributes: Name, AccessionNumber and SourceREF
  *
+ * Annotations obtained from an {@link OntologyAnnotationPool} are shared and
+ * cannot be modified.
+ *
  * @author liufe, arendd
  */
 public class OntologyAnnotation implements Commentable {
 	
-	private CommentCollection comments = new CommentCollection();
+	private CommentCollection comments;
+	
+	/**
+	 * true if the annotation is shared through an {@link OntologyAnnotationPool}
+	 */
+	private final boolean shared;
 	
 	/**
      * sourceREF of ontology term
@@ -41,14 +49,34 @@ public class OntologyAnnotation implements Commentable {
     }
     
     public OntologyAnnotation(String term, String termAccessionNumber, Ontology sourceREF) {
+    	this(term, termAccessionNumber, sourceREF, false);
+    }
+    
+    OntologyAnnotation(String term, String termAccessionNumber, Ontology sourceREF, boolean shared) {
     	this.term = term;
     	this.termAccession = termAccessionNumber;
     	this.sourceREF = sourceREF;
+    	this.shared = shared;
+    	this.comments = shared ? CommentCollection.EMPTY : null;
+    }
+    
+    private void checkNotShared() {
+    	if (this.shared)
+    		throw new UnsupportedOperationException("Shared OntologyAnnotation " + this + " cannot be modified");
     }
     
+    /**
+     * The comments of a shared annotation are always empty and cannot be modified
+     */
     public CommentCollection comments() {
+		if (this.comments == null)
+			this.comments = new CommentCollection();
 		return this.comments;
 	}
+
+	public CommentCollection commentsOrEmpty() {
+		return this.comments == null ? CommentCollection.EMPTY : this.comments;
+	}
    
 
     /**
@@ -78,12 +106,20 @@ public class OntologyAnnotation implements Commentable {
         return termAccession;
     }
 
+    /**
+     * @return true if the annotation comes from an {@link OntologyAnnotationPool} and cannot be modified
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
     /**
      * set source REF
      *
      * @param sourceREF source REF
      */
     public void setSourceREF(Ontology sourceREF) {
+    	this.checkNotShared();
         this.sourceREF = sourceREF;
     }
 
@@ -93,6 +129,7 @@ public class OntologyAnnotation implements Commentable {
      * @param term term of ontology term
      */
     public void setTerm(String term) {
+    	this.checkNotShared();
         this.term = StringUtil.sanitize(Objects.requireNonNull(term));
     }
 
@@ -102,6 +139,7 @@ public class OntologyAnnotation implements Commentable {
      * @param termAccession accession number of ontology term
      */
     public void setTermAccession(String termAccession) {
+    	this.checkNotShared();
         this.termAccession = StringUtil.sanitize(termAccession);
     }
     
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out shared {@link OntologyAnnotation}s, so that lines which use the same
+ * terms and units (e.g. "litre" from UO) do not create a new annotation with a
+ * new {@link CommentCollection} every time. Annotations from a pool cannot be
+ * modified and have no comments, see {@link OntologyAnnotation#isShared()}.
+ *
+ * Annotations are identified by term, accession number and the
+ * {@link Ontology} instance they refer to. A pool holds at most
+ * maximumSize annotations; once it is full, annotations for new keys are
+ * still immutable but created anew for every call. A pool can be used by
+ * several threads at once.
+ */
+public class OntologyAnnotationPool {
+
+	/**
+	 * Identifies an annotation in the pool. Ontologies are compared by identity.
+	 */
+	private static final class Key {
+
+		private final Ontology sourceREF;
+
+		private final String term;
+
+		private final String termAccession;
+
+		private Key(String term, String termAccession, Ontology sourceREF) {
+			this.term = term;
+			this.termAccession = termAccession;
+			this.sourceREF = sourceREF;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return this.sourceREF == other.sourceREF && Objects.equals(this.term, other.term)
+					&& Objects.equals(this.termAccession, other.termAccession);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * Objects.hashCode(this.term) + Objects.hashCode(this.termAccession))
+					+ System.identityHashCode(this.sourceREF);
+		}
+
+	}
+
+	/**
+	 * Number of annotations a pool holds if no other size is given
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+	private final ConcurrentHashMap<Key, OntologyAnnotation> annotations = new ConcurrentHashMap<Key, OntologyAnnotation>();
+
+	private final int maximumSize;
+
+	/**
+	 * Creates a pool holding up to {@link #DEFAULT_MAXIMUM_SIZE} annotations
+	 */
+	public OntologyAnnotationPool() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * @param maximumSize the maximum number of annotations the pool holds
+	 */
+	public OntologyAnnotationPool(int maximumSize) {
+		if (maximumSize < 0)
+			throw new IllegalArgumentException("Maximum size cannot be negative: " + maximumSize);
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Removes all annotations from the pool. Annotations handed out before stay
+	 * valid.
+	 */
+	public void clear() {
+		this.annotations.clear();
+	}
+
+	/**
+	 * @param term the term
+	 * @return the shared annotation without accession number and ontology
+	 */
+	public OntologyAnnotation get(String term) {
+		return this.get(term, null, null);
+	}
+
+	/**
+	 * @param term          the term
+	 * @param termAccession the accession number of the term
+	 * @param sourceREF     the ontology the term comes from
+	 * @return the shared annotation
+	 */
+	public OntologyAnnotation get(String term, String termAccession, Ontology sourceREF) {
+		Key key = new Key(term, termAccession, sourceREF);
+		OntologyAnnotation annotation = this.annotations.get(key);
+		if (annotation != null)
+			return annotation;
+
+		annotation = new OntologyAnnotation(term, termAccession, sourceREF, true);
+		if (this.annotations.size() >= this.maximumSize)
+			return annotation;
+		OntologyAnnotation existing = this.annotations.putIfAbsent(key, annotation);
+		return existing == null ? annotation : existing;
+	}
+
+	/**
+	 * @return the number of annotations in the pool
+	 */
+	public int size() {
+		return this.annotations.size();
+	}
+
+}
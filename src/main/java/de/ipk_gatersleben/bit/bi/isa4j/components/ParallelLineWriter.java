@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes lines of a Study or Assay File with several threads. Batches of lines
+ * can be submitted from any number of threads, worker threads serialize them
+ * concurrently along the {@link RowPlan} of the file and the serialized batches
+ * are appended to the file one at a time. If the order is kept, batches end up
+ * in the file in the order in which they were submitted (and the lines of a
+ * batch always keep their order), otherwise in the order in which they are
+ * finished.
+ *
+ * The objects of a submitted line must not be changed until the writer is
+ * closed. If a line cannot be written, no further lines are written and the
+ * error is rethrown by the next call to {@link #submit(Collection)} or by
+ * {@link #close()}.
+ *
+ * <pre>
+ * try (ParallelLineWriter writer = study.openParallelLineWriter(8, true)) {
+ *     rows.parallelStream().forEach(batch -&gt; writer.submit(batch));
+ * }
+ * study.closeFile();
+ * </pre>
+ */
+public final class ParallelLineWriter implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ParallelLineWriter.class);
+
+	private final WideTableFile file;
+
+	private final ExecutorService executor;
+
+	private final boolean keepOrder;
+
+	/**
+	 * Limits the number of batches that are submitted but not yet written
+	 */
+	private final Semaphore permits;
+
+	private final AtomicLong nextSequence = new AtomicLong();
+
+	/**
+	 * Guards the header, the reorder buffer and all writes to the file
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * Serialized batches that are waiting for their predecessors, by sequence
+	 * number. A failed batch is stored as null.
+	 */
+	private final Map<Long, StringBuilder> pending = new HashMap<Long, StringBuilder>();
+
+	private long nextToWrite = 0;
+
+	private final ThreadLocal<LineSerializer> serializers = ThreadLocal
+			.withInitial(() -> new LineSerializer(this.plan));
+
+	private volatile RowPlan plan;
+
+	private volatile int chunkCapacity = 1024;
+
+	private volatile Throwable failure = null;
+
+	private volatile boolean closed = false;
+
+	ParallelLineWriter(WideTableFile file, int threads, boolean keepOrder) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Number of threads must be at least 1, was: " + threads);
+		this.file = file;
+		this.keepOrder = keepOrder;
+		this.plan = file.getRowPlan();
+		this.permits = new Semaphore(threads * 4);
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadFactory threadFactory = r -> {
+			Thread thread = new Thread(r, "isa4j-line-writer-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		this.executor = Executors.newFixedThreadPool(threads, threadFactory);
+		logger.debug("{}: Writing lines with {} threads, keeping order: {}", file, threads, keepOrder);
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable failure = this.failure;
+		if (failure == null)
+			return;
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		throw new IOException(failure);
+	}
+
+	/**
+	 * Waits until all submitted lines are written and stops the worker threads.
+	 * The file itself stays open.
+	 * 
+	 * @throws IOException if a line could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed)
+			return;
+		this.closed = true;
+		this.executor.shutdown();
+		try {
+			while (!this.executor.awaitTermination(1, TimeUnit.MINUTES))
+				logger.debug("{}: Waiting for lines to be written", this.file);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for lines to be written");
+		} finally {
+			this.file.parallelLineWriterClosed(this);
+		}
+		this.checkFailure();
+	}
+
+	/**
+	 * Called by the worker thread when a batch is serialized or failed (chunk is
+	 * null).
+	 */
+	private void complete(long sequence, StringBuilder chunk) {
+		synchronized (this.lock) {
+			if (!this.keepOrder) {
+				this.write(chunk);
+				this.permits.release();
+				return;
+			}
+			this.pending.put(sequence, chunk);
+			while (this.pending.containsKey(this.nextToWrite)) {
+				this.write(this.pending.remove(this.nextToWrite));
+				this.nextToWrite++;
+				this.permits.release();
+			}
+		}
+	}
+
+	private void fail(Throwable t) {
+		synchronized (this.lock) {
+			if (this.failure == null) {
+				logger.debug("{}: Writing lines failed", this.file, t);
+				this.failure = t;
+			}
+		}
+	}
+
+	private void serialize(long sequence, List<StudyOrAssayTableObject> lines) {
+		StringBuilder chunk = null;
+		if (this.failure == null) {
+			try {
+				chunk = new StringBuilder(this.chunkCapacity);
+				LineSerializer serializer = this.serializers.get();
+				for (StudyOrAssayTableObject line : lines)
+					serializer.appendLine(line, chunk);
+				if (chunk.length() > this.chunkCapacity)
+					this.chunkCapacity = chunk.length();
+			} catch (Throwable t) {
+				this.fail(t);
+				chunk = null;
+			}
+		}
+		this.complete(sequence, chunk);
+	}
+
+	/**
+	 * Submits a batch of lines, each given by its first object. The headers are
+	 * written from the first line submitted if they were not written yet. Blocks
+	 * while too many batches are waiting to be written.
+	 * 
+	 * Larger batches (some hundred lines) keep the overhead per line low.
+	 * 
+	 * @param lines the first objects of the lines to write
+	 * @throws IOException if writing the headers or a previous line failed
+	 */
+	public void submit(Collection<? extends StudyOrAssayTableObject> lines) throws IOException {
+		if (this.closed)
+			throw new IllegalStateException("Writer is already closed");
+		this.checkFailure();
+		if (lines.isEmpty())
+			return;
+		List<StudyOrAssayTableObject> batch = List.copyOf(lines);
+		if (this.plan == null) {
+			synchronized (this.lock) {
+				if (this.plan == null) {
+					if (!this.file.hasWrittenHeaders())
+						this.file.writeHeadersFromExample(batch.get(0));
+					this.plan = this.file.getRowPlan();
+				}
+			}
+		}
+		try {
+			this.permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to submit lines");
+		}
+		long sequence = this.nextSequence.getAndIncrement();
+		this.executor.execute(() -> this.serialize(sequence, batch));
+	}
+
+	/**
+	 * Submits a single line, see {@link #submit(Collection)}.
+	 * 
+	 * @param initiator the first object of the line
+	 * @throws IOException if writing the headers or a previous line failed
+	 */
+	public void submit(StudyOrAssayTableObject initiator) throws IOException {
+		this.submit(List.of(initiator));
+	}
+
+	private void write(StringBuilder chunk) {
+		if (chunk == null || this.failure != null)
+			return;
+		try {
+			this.file.writeBuffer(chunk);
+		} catch (Throwable t) {
+			this.fail(t);
+		}
+	}
+
+}
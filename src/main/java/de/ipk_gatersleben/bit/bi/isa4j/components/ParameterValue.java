@@ -31,7 +31,7 @@ public class ParameterValue extends Value<ProtocolParameter> {
 
 	@Override
 	public String toString() {
-		return "<ParameterValue> '" + (this.hasUnit() ? this.getValue().getTerm() + " " + this.getUnit().getTerm() : this.getValue().getTerm())
+		return "<ParameterValue> '" + (this.hasUnit() ? this.getValueTerm() + " " + this.getUnit().getTerm() : this.getValueTerm())
 				+ "(" + this.getCategory() + ")";
 	}
 }
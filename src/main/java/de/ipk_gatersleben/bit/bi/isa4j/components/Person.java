@@ -31,7 +31,7 @@ public class Person implements Commentable {
 	 */
 	private String affiliation;
 
-	private CommentCollection comments = new CommentCollection();
+	private CommentCollection comments = null;
 
 	/**
 	 * The email corresponding to the {@link Person}
@@ -82,9 +82,15 @@ public class Person implements Commentable {
 
 
 	public CommentCollection comments() {
+		if (this.comments == null)
+			this.comments = new CommentCollection();
 		return this.comments;
 	}
 
+	public CommentCollection commentsOrEmpty() {
+		return this.comments == null ? CommentCollection.EMPTY : this.comments;
+	}
+
 	/**
 	 * Get address of the {@link Person}
 	 *
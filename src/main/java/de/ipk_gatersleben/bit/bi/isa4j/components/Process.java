@@ -7,21 +7,21 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 
 import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
 import de.ipk_gatersleben.bit.bi.isa4j.exceptions.RedundantItemException;
 
 public class Process extends StudyOrAssayTableObject implements Commentable {
 
-	private CommentCollection comments = new CommentCollection();
+	private static final Function<ParameterValue, ProtocolParameter> PARAMETER = ParameterValue::getCategory;
+
+	private CommentCollection comments = null;
 
 	private LocalDate date;
 
@@ -29,7 +29,8 @@ public class Process extends StudyOrAssayTableObject implements Commentable {
 
 	private StudyOrAssayTableObject input;
 
-	private List<ParameterValue> parameterValues = new ArrayList<ParameterValue>();
+	private List<ParameterValue> parameterValues = new KeyedList<ParameterValue>(List.of(PARAMETER),
+			ParameterValue::indexingLists);
 
 	private Protocol protocol;
 
@@ -38,17 +39,22 @@ public class Process extends StudyOrAssayTableObject implements Commentable {
 	}
 
 	public void addParameterValue(ParameterValue parameterValue) {
-		if (this.parameterValues.stream().map(ParameterValue::getCategory)
-				.anyMatch(parameterValue.getCategory()::equals))
+		if (KeyedList.find(this.parameterValues, PARAMETER, parameterValue.getCategory()) != null)
 			throw new RedundantItemException(
 					"Multiple ParameterValues for Parameter: " + parameterValue.getCategory().getName());
 		this.parameterValues.add(parameterValue);
 	}
 
 	public CommentCollection comments() {
+		if (this.comments == null)
+			this.comments = new CommentCollection();
 		return this.comments;
 	}
 
+	public CommentCollection commentsOrEmpty() {
+		return this.comments == null ? CommentCollection.EMPTY : this.comments;
+	}
+
 	/**
 	 * @return the date
 	 */
@@ -63,33 +69,13 @@ public class Process extends StudyOrAssayTableObject implements Commentable {
 		return dateTime;
 	}
 
-	Map<String, String[]> getFields() {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-
-		fields.put(StudyAssayAttribute.PROTOCOL.toString(), new String[] { this.protocol.getName() });
-		fields.putAll(this.getFieldsForValues(StudyAssayAttribute.PARAMETER_VALUE, this.parameterValues,
-				pv -> pv.getCategory().getName().getTerm()));
-		if (this.dateTime != null)
-			fields.put(StudyAssayAttribute.PROTOCOL_DATE.toString(), new String[] { this.dateTime.toString() });
-		else if (this.date != null)
-			fields.put(StudyAssayAttribute.PROTOCOL_DATE.toString(), new String[] { this.date.toString() });
-		fields.putAll(this.getFieldsForComments(this.comments));
-
-		return fields;
-	}
-
-	LinkedHashMap<String, String[]> getHeaders() {
-		LinkedHashMap<String, String[]> headers = new LinkedHashMap<String, String[]>();
-
-		headers.put(StudyAssayAttribute.PROTOCOL.toString(), new String[] { StudyAssayAttribute.PROTOCOL.toString() });
-		headers.putAll(this.getHeadersForValues(StudyAssayAttribute.PARAMETER_VALUE, this.parameterValues,
-				pv -> pv.getCategory().getName().getTerm()));
+	void addGroups(HeaderStructure structure) {
+		structure.group(StudyAssayAttribute.PROTOCOL, null);
+		this.addValueGroups(structure, StudyAssayAttribute.PARAMETER_VALUE, this.parameterValues,
+				pv -> pv.getCategory().getName().getTerm());
 		if (this.dateTime != null || this.date != null)
-			headers.put(StudyAssayAttribute.PROTOCOL_DATE.toString(),
-					new String[] { StudyAssayAttribute.PROTOCOL_DATE.toString() });
-		headers.putAll(this.getHeadersForComments(this.comments));
-
-		return headers;
+			structure.group(StudyAssayAttribute.PROTOCOL_DATE, null);
+		this.addCommentGroups(structure, this.commentsOrEmpty());
 	}
 
 	public StudyOrAssayTableObject getInput() {
@@ -181,4 +167,19 @@ public class Process extends StudyOrAssayTableObject implements Commentable {
 		return "<Process> '" + this.protocol.getName() + "' on input " + this.input.toString();
 	}
 
+	void visitFields(FieldVisitor visitor) throws IOException {
+		visitor.group(StudyAssayAttribute.PROTOCOL, null, 1);
+		visitor.cell(this.protocol.getName());
+		this.visitValues(StudyAssayAttribute.PARAMETER_VALUE, this.parameterValues,
+				pv -> pv.getCategory().getName().getTerm(), visitor);
+		if (this.dateTime != null) {
+			visitor.group(StudyAssayAttribute.PROTOCOL_DATE, null, 1);
+			visitor.cell(this.dateTime.toString());
+		} else if (this.date != null) {
+			visitor.group(StudyAssayAttribute.PROTOCOL_DATE, null, 1);
+			visitor.cell(this.date.toString());
+		}
+		this.visitComments(this.commentsOrEmpty(), visitor);
+	}
+
 }
@@ -10,6 +10,7 @@ package de.ipk_gatersleben.bit.bi.isa4j.components;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 
 import de.ipk_gatersleben.bit.bi.isa4j.exceptions.RedundantItemException;
 import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
@@ -22,7 +23,9 @@ import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
  */
 public class Protocol implements Commentable {
 	
-	private CommentCollection comments = new CommentCollection();
+	private static final Function<ProtocolParameter, OntologyAnnotation> NAME = ProtocolParameter::getName;
+
+	private CommentCollection comments = null;
 	
 	private List<ProtocolComponent> components = new ArrayList<ProtocolComponent>();
 
@@ -39,7 +42,8 @@ public class Protocol implements Commentable {
     /**
      * The {@link Parameter} list of this {@link Protocol}
      */
-    private List<ProtocolParameter> parameters = new ArrayList<ProtocolParameter>(3);
+    private List<ProtocolParameter> parameters = new KeyedList<ProtocolParameter>(3, List.of(NAME),
+    		ProtocolParameter::indexingLists);
 
     /**
      * The {@link OntologyAnnotation} to describe the type of the {@link Protocol}
@@ -86,16 +90,22 @@ public class Protocol implements Commentable {
      */
     public void addParameter(ProtocolParameter parameter) {
     	Objects.requireNonNull(parameter);
-    	if(this.parameters.stream().map(ProtocolParameter::getName).anyMatch(parameter.getName()::equals))
+    	if(KeyedList.find(this.parameters, NAME, parameter.getName()) != null)
     		throw new RedundantItemException("Parameter not unique: " + parameter.getName());
 
         this.parameters.add(parameter);
     }
 
 	public CommentCollection comments() {
+		if (this.comments == null)
+			this.comments = new CommentCollection();
 		return this.comments;
 	}
 
+	public CommentCollection commentsOrEmpty() {
+		return this.comments == null ? CommentCollection.EMPTY : this.comments;
+	}
+
     /**
 	 * @return the components
 	 */
@@ -13,6 +13,11 @@ public class ProtocolParameter {
 	
 	private OntologyAnnotation name;
 
+	/**
+	 * The lists indexing this ProtocolParameter by its name, see {@link KeyedList}
+	 */
+	private IndexingLists indexingLists = null;
+
 	public ProtocolParameter(OntologyAnnotation name) {
 		this.setName(name);
 	}
@@ -28,11 +33,21 @@ public class ProtocolParameter {
 		return name;
 	}
 
+	/**
+	 * @return the lists indexing this ProtocolParameter, created if necessary
+	 */
+	IndexingLists indexingLists() {
+		if (this.indexingLists == null)
+			this.indexingLists = new IndexingLists();
+		return this.indexingLists;
+	}
+
 	/**
 	 * @param name the name to set
 	 */
 	public void setName(OntologyAnnotation name) {
-		this.name = Objects.requireNonNull(name, "ProtocolParameter name OntologyAnnotation object cannot be null");
+		this.name = IndexingLists.changeKey(this.indexingLists, this.name,
+				Objects.requireNonNull(name, "ProtocolParameter name OntologyAnnotation object cannot be null"));
 	}
 	
 	@Override
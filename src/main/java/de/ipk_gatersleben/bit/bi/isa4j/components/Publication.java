@@ -25,7 +25,7 @@ public class Publication implements Commentable {
      */
     private String authors;
 	
-	private CommentCollection comments = new CommentCollection();
+	private CommentCollection comments = null;
 	
 	/**
      * DOI (Digital Object Identifier) for this {@link Publication}
@@ -60,9 +60,15 @@ public class Publication implements Commentable {
     }
 
     public CommentCollection comments() {
+		if (this.comments == null)
+			this.comments = new CommentCollection();
 		return this.comments;
 	}
 
+	public CommentCollection commentsOrEmpty() {
+		return this.comments == null ? CommentCollection.EMPTY : this.comments;
+	}
+
     /**
      * Get the list of authors of this {@link Publication}
      *
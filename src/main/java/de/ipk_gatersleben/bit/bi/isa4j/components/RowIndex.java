@@ -0,0 +1,401 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+/**
+ * Looks up lines of a Study or Assay File by the value of one column, e.g.
+ * "Sample Name", without reading the file from the start. The index is a
+ * sidecar file next to the Study or Assay File (its name with
+ * {@link #FILE_SUFFIX} appended) that is built while the lines are written, see
+ * {@link WideTableFile#enableRowIndex(int)}. It holds a hash table from the
+ * values to the byte offsets of the lines. Both files are memory-mapped, so a
+ * lookup only touches the slots of the value and the lines it points to.
+ *
+ * Several lines can have the same value, e.g. a Source that is split into
+ * several Samples. The index refers to the file as it was when the index was
+ * written; if the file was changed since, it cannot be opened.
+ *
+ * <pre>
+ * RowIndex index = new RowIndex(Paths.get("a_assay.txt"));
+ * String[] cells = index.getLine("Plant 42 Leaf");
+ * </pre>
+ */
+public final class RowIndex {
+
+	/**
+	 * Collects the values and offsets of lines while they are written and writes
+	 * the index file once the Study or Assay File is complete. Not thread-safe.
+	 */
+	static final class Builder {
+
+		private final int column;
+
+		private long[] hashes = new long[1024];
+
+		private long[] offsets = new long[1024];
+
+		private int size = 0;
+
+		/**
+		 * @param column the index of the column whose values are indexed
+		 */
+		Builder(int column) {
+			this.column = column;
+		}
+
+		private void add(long hash, long offset) {
+			if (this.size == this.hashes.length) {
+				this.hashes = Arrays.copyOf(this.hashes, this.size * 2);
+				this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+			}
+			this.hashes[this.size] = hash;
+			this.offsets[this.size] = offset;
+			this.size++;
+		}
+
+		/**
+		 * Adds all lines of an existing index, e.g. of the lines of a file that more
+		 * lines are appended to.
+		 */
+		void addAll(RowIndex index) {
+			if (index.column != this.column)
+				throw new IllegalStateException(
+						"The existing index is for column " + index.column + ", not for column " + this.column);
+			for (long slot = 0; slot < index.capacity; slot++) {
+				long offset = index.slots.getLong(slot * SLOT_SIZE + 8);
+				if (offset != 0)
+					this.add(index.slots.getLong(slot * SLOT_SIZE), offset - 1);
+			}
+		}
+
+		/**
+		 * Adds the complete lines in lines[0, length), which are written to the file
+		 * starting at byte position. Bytes are counted like {@link Props#DEFAULT_CHARSET}
+		 * encodes the chars, a malformed surrogate as one byte.
+		 */
+		void addLines(CharSequence lines, int length, long position) {
+			long lineStart = position;
+			int tabs = 0;
+			int cellStart = this.column == 0 ? 0 : -1;
+			int cellEnd = -1;
+			for (int i = 0; i < length; i++) {
+				char c = lines.charAt(i);
+				if (c < 0x80) {
+					position++;
+					if (c == '\t') {
+						tabs++;
+						if (tabs == this.column)
+							cellStart = i + 1;
+						else if (tabs == this.column + 1)
+							cellEnd = i;
+					} else if (c == '\r' || c == '\n') {
+						if (cellEnd < 0)
+							cellEnd = i;
+						if (c == '\n') {
+							// Lines with fewer cells than the column are not indexed
+							if (cellStart >= 0)
+								this.add(hash(lines, cellStart, cellEnd), lineStart);
+							lineStart = position;
+							tabs = 0;
+							cellStart = this.column == 0 ? i + 1 : -1;
+							cellEnd = -1;
+						}
+					}
+				} else if (c < 0x800) {
+					position += 2;
+				} else if (Character.isHighSurrogate(c) && i + 1 < length
+						&& Character.isLowSurrogate(lines.charAt(i + 1))) {
+					position += 4;
+					i++;
+				} else if (Character.isSurrogate(c)) {
+					// Replaced by the encoder
+					position++;
+				} else {
+					position += 3;
+				}
+			}
+		}
+
+		/**
+		 * Writes the index file.
+		 *
+		 * @param file     the index file, replaced if it exists
+		 * @param dataSize the size of the Study or Assay File in bytes
+		 */
+		void write(Path file, long dataSize) throws IOException {
+			// Keep the table at most three quarters full, so that lookups stop early
+			long needed = this.size + this.size / 3 + 1;
+			long capacity = Long.highestOneBit(needed);
+			if (capacity < needed)
+				capacity <<= 1;
+
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC).putInt(this.column).putLong(dataSize).putLong(capacity).putLong(this.size).flip();
+				while (header.hasRemaining())
+					channel.write(header, header.position());
+
+				// Write the empty slots, then fill them through a mapping
+				ByteBuffer zeros = ByteBuffer.allocate(64 * 1024);
+				long end = HEADER_SIZE + capacity * SLOT_SIZE;
+				for (long position = HEADER_SIZE; position < end;) {
+					zeros.clear().limit((int) Math.min(zeros.capacity(), end - position));
+					position += channel.write(zeros, position);
+				}
+				Mapping slots = new Mapping(channel, FileChannel.MapMode.READ_WRITE, HEADER_SIZE, capacity * SLOT_SIZE);
+				for (int entry = 0; entry < this.size; entry++) {
+					long slot = this.hashes[entry] & (capacity - 1);
+					while (slots.getLong(slot * SLOT_SIZE + 8) != 0)
+						slot = (slot + 1) & (capacity - 1);
+					slots.putLong(slot * SLOT_SIZE, this.hashes[entry]);
+					// Offsets are stored plus one, so that 0 marks an empty slot
+					slots.putLong(slot * SLOT_SIZE + 8, this.offsets[entry] + 1);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * A file region mapped in segments, since a single mapping is limited to 2 GiB
+	 */
+	private static final class Mapping {
+
+		private static final int SEGMENT_BITS = 30;
+
+		private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+		private final long length;
+
+		private final MappedByteBuffer[] segments;
+
+		private Mapping(FileChannel channel, FileChannel.MapMode mode, long start, long length) throws IOException {
+			this.length = length;
+			this.segments = new MappedByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS)];
+			for (int segment = 0; segment < this.segments.length; segment++) {
+				long offset = (long) segment << SEGMENT_BITS;
+				this.segments[segment] = channel.map(mode, start + offset, Math.min(length - offset, 1L << SEGMENT_BITS));
+			}
+		}
+
+		private byte get(long position) {
+			return this.segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+		}
+
+		/**
+		 * Reads a long at a position that is a multiple of 8, so that it does not
+		 * cross segments
+		 */
+		private long getLong(long position) {
+			return this.segments[(int) (position >>> SEGMENT_BITS)].getLong((int) (position & SEGMENT_MASK));
+		}
+
+		private void putLong(long position, long value) {
+			this.segments[(int) (position >>> SEGMENT_BITS)].putLong((int) (position & SEGMENT_MASK), value);
+		}
+
+	}
+
+	/**
+	 * Appended to the name of the Study or Assay File to get the name of its index
+	 */
+	public static final String FILE_SUFFIX = ".idx";
+
+	/**
+	 * Magic number, column, size of the data file, number of slots, number of lines
+	 */
+	private static final int HEADER_SIZE = 32;
+
+	private static final int MAGIC = 0x49534149;
+
+	/**
+	 * Hash of the value and offset of the line plus one
+	 */
+	private static final int SLOT_SIZE = 16;
+
+	/**
+	 * Hashes the chars in chars[start, end), spreading the bits so that the low
+	 * bits select a slot well
+	 */
+	static long hash(CharSequence chars, int start, int end) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = start; i < end; i++) {
+			hash ^= chars.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * @param dataFile a Study or Assay File
+	 * @return the path of its index
+	 */
+	public static Path indexFile(Path dataFile) {
+		return Paths.get(dataFile.toString() + FILE_SUFFIX);
+	}
+
+	private final long capacity;
+
+	private final int column;
+
+	private final Mapping data;
+
+	private final long size;
+
+	private final Mapping slots;
+
+	/**
+	 * Opens the index of a Study or Assay File.
+	 *
+	 * @param dataFile the Study or Assay File, the index is expected next to it
+	 * @throws IOException if the index cannot be read or the file has changed since
+	 *                     it was written
+	 */
+	public RowIndex(Path dataFile) throws IOException {
+		Path indexFile = indexFile(dataFile);
+		// Mappings stay valid when their channel is closed
+		try (FileChannel dataChannel = FileChannel.open(dataFile, StandardOpenOption.READ);
+				FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining())
+				if (indexChannel.read(header, header.position()) < 0)
+					throw new IOException(indexFile + " is not a row index");
+			header.flip();
+			if (header.getInt() != MAGIC)
+				throw new IOException(indexFile + " is not a row index");
+			this.column = header.getInt();
+			long dataSize = header.getLong();
+			this.capacity = header.getLong();
+			this.size = header.getLong();
+			if (dataSize != dataChannel.size())
+				throw new IOException("Row index " + indexFile + " is out of date, " + dataFile + " has changed since");
+			if (indexChannel.size() < HEADER_SIZE + this.capacity * SLOT_SIZE)
+				throw new IOException("Row index " + indexFile + " is incomplete");
+
+			this.data = new Mapping(dataChannel, FileChannel.MapMode.READ_ONLY, 0, dataSize);
+			this.slots = new Mapping(indexChannel, FileChannel.MapMode.READ_ONLY, HEADER_SIZE, this.capacity * SLOT_SIZE);
+		}
+	}
+
+	/**
+	 * Finds all lines that have a value in the indexed column.
+	 *
+	 * @param value the value of the column
+	 * @return the byte offsets of the lines in the order of the file, empty if
+	 *         there is no such line
+	 */
+	public long[] find(String value) {
+		byte[] bytes = value.getBytes(Props.DEFAULT_CHARSET);
+		long hash = hash(value, 0, value.length());
+		long[] found = new long[4];
+		int count = 0;
+		for (long slot = hash & (this.capacity - 1);; slot = (slot + 1) & (this.capacity - 1)) {
+			long offset = this.slots.getLong(slot * SLOT_SIZE + 8);
+			if (offset == 0)
+				break;
+			// Different values can have the same hash, so the line itself is checked
+			if (this.slots.getLong(slot * SLOT_SIZE) == hash && this.hasValue(offset - 1, bytes)) {
+				if (count == found.length)
+					found = Arrays.copyOf(found, count * 2);
+				found[count++] = offset - 1;
+			}
+		}
+		found = Arrays.copyOf(found, count);
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * @return the index of the column whose values are indexed
+	 */
+	public int getColumn() {
+		return this.column;
+	}
+
+	/**
+	 * Finds the first line that has a value in the indexed column.
+	 *
+	 * @param value the value of the column
+	 * @return the cells of the line, null if there is no such line
+	 */
+	public String[] getLine(String value) {
+		long[] offsets = this.find(value);
+		return offsets.length == 0 ? null : this.readLine(offsets[0]);
+	}
+
+	/**
+	 * @return true if the indexed cell of the line at offset holds bytes
+	 */
+	private boolean hasValue(long offset, byte[] bytes) {
+		long position = offset;
+		for (int tabs = 0; tabs < this.column; position++) {
+			if (position >= this.data.length)
+				return false;
+			byte b = this.data.get(position);
+			if (b == '\n')
+				return false;
+			if (b == '\t')
+				tabs++;
+		}
+		for (byte b : bytes) {
+			if (position >= this.data.length || this.data.get(position) != b)
+				return false;
+			position++;
+		}
+		if (position >= this.data.length)
+			return true;
+		byte next = this.data.get(position);
+		return next == '\t' || next == '\r' || next == '\n';
+	}
+
+	/**
+	 * Reads the line starting at a byte offset returned by {@link #find(String)}.
+	 *
+	 * @param offset the byte offset of the line
+	 * @return the cells of the line
+	 */
+	public String[] readLine(long offset) {
+		if (offset < 0 || offset >= this.data.length)
+			throw new IndexOutOfBoundsException("Offset " + offset + " is outside the file of " + this.data.length + " bytes");
+		long end = offset;
+		while (end < this.data.length && this.data.get(end) != '\n')
+			end++;
+		if (end > offset && this.data.get(end - 1) == '\r')
+			end--;
+		byte[] bytes = new byte[Math.toIntExact(end - offset)];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = this.data.get(offset + i);
+		return new String(bytes, Props.DEFAULT_CHARSET).split(Symbol.TAB.toString(), -1);
+	}
+
+	/**
+	 * @return the number of lines in the index
+	 */
+	public long size() {
+		return this.size;
+	}
+
+}
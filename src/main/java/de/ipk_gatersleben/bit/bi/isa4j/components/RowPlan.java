@@ -0,0 +1,351 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+/**
+ * The compiled layout of a line in a Study or Assay File. It is created once
+ * from the header groups passed to
+ * {@link WideTableFile#writeHeadersFromExample(StudyOrAssayTableObject)} and
+ * then reused for every line: for each position in the chain of
+ * {@link StudyOrAssayTableObject}s it holds the header group keys in output
+ * order and the number of columns each group spans.
+ *
+ * A header group is identified by its slot, i.e. its position and index in
+ * the plan, which is assigned when the plan is compiled. Lines are serialized
+ * slot by slot, so the String keys of the groups are only hashed and compared
+ * while the plan is compiled and when a group is first matched against a slot.
+ *
+ * Apart from the signatures it remembers for matched header groups, a plan is
+ * immutable once compiled and can be shared between threads.
+ */
+final class RowPlan {
+
+	/**
+	 * Attribute and name an object announced for a header group, see
+	 * {@link FieldVisitor#group(StudyAssayAttribute, String, int)}. The fields are
+	 * final, so a signature stored by one thread is seen completely by all others.
+	 */
+	private static final class GroupSignature {
+
+		private final StudyAssayAttribute attribute;
+
+		private final String name;
+
+		private GroupSignature(StudyAssayAttribute attribute, String name) {
+			this.attribute = attribute;
+			this.name = name;
+		}
+
+	}
+
+	/**
+	 * Collects the cells of an object into the slots of its header groups, in
+	 * whatever order the object announces them
+	 */
+	private final class SlotCollector implements FieldVisitor {
+
+		private int position;
+
+		/**
+		 * cells[group] = cells of the header group, null if the object did not
+		 * announce it
+		 */
+		private String[][] cells;
+
+		private String[] current;
+
+		private int cell;
+
+		private int nextGroup;
+
+		private List<String> unknownKeys;
+
+		public void cell(String value) {
+			this.current[this.cell++] = value;
+		}
+
+		public void group(StudyAssayAttribute attribute, String name, int width) {
+			this.current = new String[width];
+			this.cell = 0;
+			int group = RowPlan.this.findGroup(this.position, attribute, name, this.nextGroup);
+			if (group < 0) {
+				this.unknownKeys.add(StudyOrAssayTableObject.groupKey(attribute, name));
+				return;
+			}
+			this.cells[group] = this.current;
+			this.nextGroup = group + 1;
+		}
+
+		private void reset(int position) {
+			this.position = position;
+			this.cells = new String[RowPlan.this.keys[position].length][];
+			this.nextGroup = 0;
+			this.unknownKeys = new ArrayList<String>(0);
+		}
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(RowPlan.class);
+
+	/**
+	 * The header line (without line break) the plan was compiled from
+	 */
+	private final String headerLine;
+
+	/**
+	 * keys[position][group] = key of the header group, e.g. "Characteristics[Organism]"
+	 */
+	private final String[][] keys;
+
+	/**
+	 * Number of columns of a line
+	 */
+	private final int columnCount;
+
+	/**
+	 * columnStarts[position][group] = index of the first column of the header group
+	 */
+	private final int[][] columnStarts;
+
+	/**
+	 * widths[position][group] = number of columns of the header group
+	 */
+	private final int[][] widths;
+
+	/**
+	 * signatures[position][group] = the last signature that matched the key of the
+	 * header group, null until one did. Lines built from the same Characteristics,
+	 * Protocols, Parameters etc. announce the very same name instances, so
+	 * comparing them with the signature replaces assembling and comparing the key.
+	 */
+	private final GroupSignature[][] signatures;
+
+	/**
+	 * The file this plan belongs to, only used for log messages
+	 */
+	private final Object owner;
+
+	RowPlan(Object owner, List<LinkedHashMap<String, String[]>> headers) {
+		this.owner = owner;
+		this.keys = new String[headers.size()][];
+		this.widths = new int[headers.size()][];
+		this.signatures = new GroupSignature[headers.size()][];
+		this.columnStarts = new int[headers.size()][];
+
+		StringBuilder sb = new StringBuilder();
+		int columnCount = 0;
+		for (int position = 0; position < headers.size(); position++) {
+			LinkedHashMap<String, String[]> headerGroup = headers.get(position);
+			this.keys[position] = headerGroup.keySet().toArray(new String[0]);
+			this.widths[position] = new int[this.keys[position].length];
+			this.signatures[position] = new GroupSignature[this.keys[position].length];
+			this.columnStarts[position] = new int[this.keys[position].length];
+			for (int group = 0; group < this.keys[position].length; group++) {
+				String[] columns = headerGroup.get(this.keys[position][group]);
+				this.widths[position][group] = columns.length;
+				this.columnStarts[position][group] = columnCount;
+				columnCount += columns.length;
+				for (int column = 0; column < columns.length; column++) {
+					if (position > 0 || group > 0 || column > 0)
+						sb.append(Symbol.TAB.toString());
+					sb.append(columns[column]);
+				}
+			}
+		}
+		this.headerLine = sb.toString();
+		this.columnCount = columnCount;
+	}
+
+	/**
+	 * Appends the cells of the line starting with initiator to sb, including the
+	 * closing line break, by collecting the cells of every object into the slots
+	 * of its header groups first. This tolerates objects whose groups come in a
+	 * different order than in the header and produces detailed errors for lines
+	 * that do not fit the header, but it is slower than {@link LineSerializer},
+	 * which falls back to it only in these cases.
+	 *
+	 * @param initiator first object of the line
+	 * @param sb        the buffer to append to
+	 * @throws IOException if an object fails to pass its fields
+	 */
+	void appendLineBySlots(StudyOrAssayTableObject initiator, StringBuilder sb) throws IOException {
+		SlotCollector collector = new SlotCollector();
+		StudyOrAssayTableObject currentObject = initiator;
+		for (int position = 0; position < this.keys.length; position++) {
+			// This happens if we have header groups left but no more objects in the line
+			Objects.requireNonNull(currentObject,
+					"This line contains fewer objects (Sources, Samples, Processes...) than were defined in the header."
+							+ "\n Please make sure your line structure is uniform (e.g. Sample->Process->Material->Process->DataFile for ALL lines) and everything is linked with Processes correctly.");
+
+			collector.reset(position);
+			currentObject.visitFields(collector);
+			String[] positionKeys = this.keys[position];
+			int[] positionWidths = this.widths[position];
+			for (int group = 0; group < positionKeys.length; group++) {
+				String[] values = collector.cells[group];
+				// The message is only built if it is needed
+				if (values == null)
+					throw new NullPointerException("Object " + currentObject + " has no value for header " + positionKeys[group]);
+				if (positionWidths[group] != values.length)
+					throw new IllegalStateException("Object has "
+							+ (positionWidths[group] > values.length ? "fewer" : "more")
+							+ "columns than header for " + positionKeys[group]
+							+ "\n Please make sure that every object contains the same information as the first line (or the examplary objects that were manually passed to writeHeadersFromExample)."
+							+ "This error mostly occurs when only some objects of the same column (e.g. a specific Process ParameterValue) have Term Source Refs and Term Accession numbers.");
+				for (int cell = 0; cell < values.length; cell++) {
+					if (position > 0 || group > 0 || cell > 0)
+						sb.append(Symbol.TAB.toString());
+					sb.append(values[cell]);
+				}
+			}
+
+			if (!collector.unknownKeys.isEmpty())
+				logger.warn("{}: There were fields for Object {} that had no corresponding header. They were ignored: {}",
+						this.owner, currentObject, String.join(", ", collector.unknownKeys));
+
+			currentObject = currentObject.getNextStudyOrAssayTableObject();
+		}
+		sb.append(Symbol.ENTER.toString());
+	}
+
+	/**
+	 * @return the number of columns of a line
+	 */
+	int columnCount() {
+		return this.columnCount;
+	}
+
+	/**
+	 * @param position position of the object in the line
+	 * @param key      key of a header group of the object
+	 * @return the index of the first column of the group, -1 if the object has no
+	 *         such group
+	 */
+	int columnIndex(int position, String key) {
+		if (position < 0 || position >= this.keys.length)
+			return -1;
+		for (int group = 0; group < this.keys[position].length; group++)
+			if (this.keys[position][group].equals(key))
+				return this.columnStarts[position][group];
+		return -1;
+	}
+
+	/**
+	 * Finds the slot of a header group announced by an object, starting with the
+	 * group where it is expected. Remembered signatures are tried for all groups
+	 * before any key is compared.
+	 *
+	 * @param position  position of the object in the line
+	 * @param attribute attribute of the announced group
+	 * @param name      name of the announced group
+	 * @param expected  index of the group where the announced group is expected
+	 * @return the index of the matching group, -1 if there is none
+	 */
+	int findGroup(int position, StudyAssayAttribute attribute, String name, int expected) {
+		int groupCount = this.keys[position].length;
+		for (int offset = 0; offset < groupCount; offset++) {
+			int group = (expected + offset) % groupCount;
+			if (this.matchesSignature(position, group, attribute, name))
+				return group;
+		}
+		for (int offset = 0; offset < groupCount; offset++) {
+			int group = (expected + offset) % groupCount;
+			if (this.matchesKey(position, group, attribute, name))
+				return group;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the header line this plan was compiled from, without line break
+	 */
+	String getHeaderLine() {
+		return this.headerLine;
+	}
+
+	/**
+	 * @param position position of the object in the line
+	 * @return the number of header groups of the object
+	 */
+	int groupCount(int position) {
+		return this.keys[position].length;
+	}
+
+	/**
+	 * @param position position of the object in the line
+	 * @param group    index of the group within the object
+	 * @return the key of the header group, e.g. "Characteristics[Organism]"
+	 */
+	String key(int position, int group) {
+		return this.keys[position][group];
+	}
+
+	/**
+	 * Checks whether a header group announced by an object matches the header
+	 * group at the same place in the plan. Signatures that passed the check are
+	 * remembered, so that the same attribute and name are accepted right away the
+	 * next time.
+	 *
+	 * @param position  position of the object in the line
+	 * @param group     index of the group within the object
+	 * @param attribute attribute of the announced group
+	 * @param name      name of the announced group
+	 * @param width     number of cells of the announced group
+	 * @return true if key and width match the header
+	 */
+	boolean matches(int position, int group, StudyAssayAttribute attribute, String name, int width) {
+		return this.widths[position][group] == width && this.matchesKey(position, group, attribute, name);
+	}
+
+	/**
+	 * Like {@link #matches(int, int, StudyAssayAttribute, String, int)}, without
+	 * checking the width
+	 */
+	private boolean matchesKey(int position, int group, StudyAssayAttribute attribute, String name) {
+		if (this.matchesSignature(position, group, attribute, name))
+			return true;
+		if (!StudyOrAssayTableObject.isGroupKey(this.keys[position][group], attribute, name))
+			return false;
+		this.signatures[position][group] = new GroupSignature(attribute, name);
+		return true;
+	}
+
+	private boolean matchesSignature(int position, int group, StudyAssayAttribute attribute, String name) {
+		GroupSignature signature = this.signatures[position][group];
+		return signature != null && signature.attribute == attribute
+				&& (signature.name == name || (name != null && name.equals(signature.name)));
+	}
+
+	/**
+	 * @return the number of objects a line consists of
+	 */
+	int size() {
+		return this.keys.length;
+	}
+
+	/**
+	 * @param position position of the object in the line
+	 * @param group    index of the group within the object
+	 * @return the number of columns of the header group
+	 */
+	int width(int position, int group) {
+		return this.widths[position][group];
+	}
+
+}
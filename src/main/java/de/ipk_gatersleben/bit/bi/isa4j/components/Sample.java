@@ -7,21 +7,19 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 
 import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
 import de.ipk_gatersleben.bit.bi.isa4j.exceptions.RedundantItemException;
 
 public class Sample extends Source implements Commentable {
 	
-	private CommentCollection comments = new CommentCollection();
-	
-	private List<FactorValue> factorValues = new ArrayList<FactorValue>();
+	private static final Function<FactorValue, Factor> FACTOR = FactorValue::getCategory;
+
+	private List<FactorValue> factorValues = new KeyedList<FactorValue>(List.of(FACTOR), FactorValue::indexingLists);
 	
 	public Sample(String name) {
 		super(name);
@@ -32,15 +30,11 @@ public class Sample extends Source implements Commentable {
 	}
 
 	public void addFactorValue(FactorValue factorValue) {
-		if(this.factorValues.stream().map(FactorValue::getCategory).anyMatch(factorValue.getCategory()::equals))
+		if(KeyedList.find(this.factorValues, FACTOR, factorValue.getCategory()) != null)
 			throw new RedundantItemException("Multiple FactorValues for Factor: " + factorValue.getCategory().getName());
 		this.factorValues.add(factorValue);
 	}
 	
-	public CommentCollection comments() {
-		return this.comments;
-	}
-
 	/**
 	 * @return the factorValues
 	 */
@@ -48,26 +42,11 @@ public class Sample extends Source implements Commentable {
 		return factorValues;
 	}
 	
-	Map<String, String[]> getFields() {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-		
-		fields.put(StudyAssayAttribute.SAMPLE_NAME.toString(), new String[]{this.getName()});
-		fields.putAll(this.getFieldsForCharacteristics());
-		fields.putAll(this.getFieldsForComments(this.comments));
-		fields.putAll(this.getFieldsForValues(StudyAssayAttribute.FACTOR_VALUE, this.factorValues, fv -> fv.getCategory().getName()));
-
-		return fields;
-	}
-	
-	LinkedHashMap<String, String[]> getHeaders() {
-		LinkedHashMap<String, String[]> headers = new LinkedHashMap<String, String[]>();
-		
-		headers.put(StudyAssayAttribute.SAMPLE_NAME.toString(), new String[]{StudyAssayAttribute.SAMPLE_NAME.toString()});
-		headers.putAll(this.getHeadersForCharacteristics());
-		headers.putAll(this.getHeadersForComments(this.comments));
-		headers.putAll(this.getHeadersForValues(StudyAssayAttribute.FACTOR_VALUE, this.factorValues, fv -> fv.getCategory().getName()));
-		
-		return headers;
+	void addGroups(HeaderStructure structure) {
+		structure.group(StudyAssayAttribute.SAMPLE_NAME, null);
+		this.addCharacteristicGroups(structure);
+		this.addCommentGroups(structure, this.commentsOrEmpty());
+		this.addValueGroups(structure, StudyAssayAttribute.FACTOR_VALUE, this.factorValues, fv -> fv.getCategory().getName());
 	}
 	
 	/**
@@ -83,4 +62,12 @@ public class Sample extends Source implements Commentable {
 		return "<Sample> '" + this.name + "'";
 	}
 	
+	void visitFields(FieldVisitor visitor) throws IOException {
+		visitor.group(StudyAssayAttribute.SAMPLE_NAME, null, 1);
+		visitor.cell(this.getName());
+		this.visitCharacteristics(visitor);
+		this.visitComments(this.commentsOrEmpty(), visitor);
+		this.visitValues(StudyAssayAttribute.FACTOR_VALUE, this.factorValues, fv -> fv.getCategory().getName(), visitor);
+	}
+	
 }
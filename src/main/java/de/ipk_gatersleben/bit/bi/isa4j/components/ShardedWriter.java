@@ -0,0 +1,568 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+import de.ipk_gatersleben.bit.bi.isa4j.util.ChannelWriter;
+
+/**
+ * Spreads the lines of a very large Study or Assay File over several part
+ * files (shards) next to it, e.g. a_assay.part-00000.txt,
+ * a_assay.part-00001.txt for a_assay.txt. Every shard starts with the same
+ * header line, so each one is a valid Study or Assay File on its own, and
+ * {@link #merge(Path, boolean)} concatenates them into the file afterwards.
+ *
+ * Lines can be written from any number of threads, each thread serializes its
+ * own lines. Several writers, e.g. in different processes, can write shards of
+ * the same file if each has its own writer id. When a writer is closed, it
+ * records its shards with their number of lines and bytes in a manifest
+ * (a_assay.txt.shards, or a_assay.txt.&lt;writer id&gt;.shards), which is what
+ * {@link #merge(Path, boolean)} collects the shards by. Shards of a writer that
+ * was not closed successfully are not merged.
+ *
+ * <pre>
+ * try (ShardedWriter writer = assay.openShardedWriter(ShardedWriter.Sharding.byLineCount(10_000_000, 4))) {
+ *     rows.parallelStream().forEach(row -&gt; writer.writeLine(row));
+ * }
+ * assay.mergeShards(true);
+ * </pre>
+ */
+public final class ShardedWriter implements AutoCloseable {
+
+	/**
+	 * Decides which shard a line is written to
+	 */
+	public static final class Sharding {
+
+		/**
+		 * Starts a new shard once the current one has the given number of lines.
+		 * Lines written by different threads go to up to streams shards at the same
+		 * time.
+		 *
+		 * @param linesPerShard the number of lines of a shard
+		 * @param streams       the number of shards written at the same time
+		 * @return the sharding
+		 */
+		public static Sharding byLineCount(long linesPerShard, int streams) {
+			if (linesPerShard < 1)
+				throw new IllegalArgumentException("Lines per shard must be at least 1, was: " + linesPerShard);
+			return new Sharding(linesPerShard, Long.MAX_VALUE, streams, -1);
+		}
+
+		/**
+		 * Starts a new shard once the current one has at least the given number of
+		 * bytes, so a shard is larger by at most one line. Lines written by different
+		 * threads go to up to streams shards at the same time.
+		 *
+		 * @param bytesPerShard the size of a shard in bytes
+		 * @param streams       the number of shards written at the same time
+		 * @return the sharding
+		 */
+		public static Sharding byByteSize(long bytesPerShard, int streams) {
+			if (bytesPerShard < 1)
+				throw new IllegalArgumentException("Bytes per shard must be at least 1, was: " + bytesPerShard);
+			return new Sharding(Long.MAX_VALUE, bytesPerShard, streams, -1);
+		}
+
+		/**
+		 * Writes each line to one of a fixed number of shards by the hash of the cell
+		 * in a key column, so that all lines with the same key end up in the same
+		 * shard.
+		 *
+		 * @param shards the number of shards
+		 * @param column the index of the key column, see
+		 *               {@link WideTableFile#getColumnIndex(int, String)}
+		 * @return the sharding
+		 */
+		public static Sharding byKey(int shards, int column) {
+			if (column < 0)
+				throw new IllegalArgumentException("Column cannot be negative: " + column);
+			return new Sharding(Long.MAX_VALUE, Long.MAX_VALUE, shards, column);
+		}
+
+		private final long linesPerShard;
+
+		private final long bytesPerShard;
+
+		/**
+		 * Number of shards written at the same time, or of all shards if lines are
+		 * sharded by key
+		 */
+		private final int streams;
+
+		/**
+		 * Key column, -1 if lines are not sharded by key
+		 */
+		private final int column;
+
+		private Sharding(long linesPerShard, long bytesPerShard, int streams, int column) {
+			if (streams < 1)
+				throw new IllegalArgumentException("Number of shards must be at least 1, was: " + streams);
+			this.linesPerShard = linesPerShard;
+			this.bytesPerShard = bytesPerShard;
+			this.streams = streams;
+			this.column = column;
+		}
+
+		/**
+		 * @return true if the shard has to be closed after a line
+		 */
+		private boolean isFull(Shard shard) {
+			return shard.lines >= this.linesPerShard || shard.writer.position() >= this.bytesPerShard;
+		}
+
+		@Override
+		public String toString() {
+			if (this.column >= 0)
+				return "<Sharding> " + this.streams + " shards by column " + this.column;
+			if (this.linesPerShard != Long.MAX_VALUE)
+				return "<Sharding> " + this.linesPerShard + " lines per shard, " + this.streams + " at a time";
+			return "<Sharding> " + this.bytesPerShard + " bytes per shard, " + this.streams + " at a time";
+		}
+
+	}
+
+	/**
+	 * A part file being written
+	 */
+	private static final class Shard {
+
+		private final Path path;
+
+		private final int part;
+
+		private final ChannelWriter writer;
+
+		private long lines = 0;
+
+		private long bytes = 0;
+
+		private Shard(Path path, int part, ChannelWriter writer) {
+			this.path = path;
+			this.part = part;
+			this.writer = writer;
+		}
+
+		private void close() throws IOException {
+			this.bytes = this.writer.position();
+			this.writer.close();
+		}
+
+	}
+
+	/**
+	 * Where lines of one stream go. A slot is locked while a line is written to its
+	 * shard.
+	 */
+	private static final class Slot {
+
+		private Shard shard = null;
+
+	}
+
+	/**
+	 * Suffix of the manifest files
+	 */
+	public static final String MANIFEST_SUFFIX = ".shards";
+
+	/**
+	 * First line of a manifest file
+	 */
+	private static final String MANIFEST_HEADER = "File" + Symbol.TAB + "Lines" + Symbol.TAB + "Bytes";
+
+	private static final Logger logger = LoggerFactory.getLogger(ShardedWriter.class);
+
+	/**
+	 * Reads the header line of a shard, including its line break
+	 */
+	private static byte[] readHeader(FileChannel channel, Path shard) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (true) {
+			if (!buffer.hasRemaining())
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+			int start = buffer.position();
+			if (channel.read(buffer, start) <= 0)
+				throw new IOException("Shard " + shard + " has no complete header line");
+			for (int i = start; i < buffer.position(); i++)
+				if (buffer.get(i) == '\n')
+					return Arrays.copyOf(buffer.array(), i + 1);
+		}
+	}
+
+	/**
+	 * @return the manifests of the shards of file
+	 */
+	private static List<Path> manifests(Path file) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		String prefix = file.getFileName().toString() + ".";
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(path -> {
+				String name = path.getFileName().toString();
+				return name.startsWith(prefix) && name.endsWith(MANIFEST_SUFFIX);
+			}).sorted().collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Concatenates the shards of a file, as recorded in the manifests next to it,
+	 * into the file: the header line once, then the lines of the shards in the
+	 * order of the manifests' names and of the shards in each manifest. The bytes
+	 * are copied by the file system (see {@link FileChannel#transferTo(long, long,
+	 * java.nio.channels.WritableByteChannel)}) without passing through the JVM
+	 * where possible.
+	 *
+	 * All shards are checked before anything is written. The merged file is
+	 * written next to the file and then moved into its place, so a failing merge
+	 * leaves an existing file unchanged.
+	 *
+	 * @param file         the file to merge the shards into, it is overwritten
+	 * @param deleteShards true if the shards and manifests are to be deleted
+	 *                     afterwards
+	 * @return the number of lines of the merged file, without header
+	 * @throws IOException if there are no manifests, they list no shards or
+	 *                     contain an invalid line, a shard is missing, its size
+	 *                     differs from the manifest or its header line differs
+	 *                     from the others
+	 */
+	public static long merge(Path file, boolean deleteShards) throws IOException {
+		List<Path> manifests = manifests(file);
+		if (manifests.isEmpty())
+			throw new IOException("No manifest of shards found for " + file);
+
+		List<Path> shards = new ArrayList<Path>();
+		long lines = 0;
+		for (Path manifest : manifests) {
+			try (BufferedReader reader = Files.newBufferedReader(manifest, Props.DEFAULT_CHARSET)) {
+				String line = reader.readLine();
+				if (!MANIFEST_HEADER.equals(line))
+					throw new IOException("Not a manifest of shards: " + manifest);
+				while ((line = reader.readLine()) != null) {
+					if (line.isEmpty())
+						continue;
+					String[] cells = line.split(Symbol.TAB.toString());
+					if (cells.length != 3)
+						throw new IOException("Line '" + line + "' of " + manifest + " does not have 3 cells");
+					Path shard = manifest.resolveSibling(cells[0]);
+					long bytes;
+					try {
+						bytes = Long.parseLong(cells[2]);
+						lines += Long.parseLong(cells[1]);
+					} catch (NumberFormatException e) {
+						throw new IOException("Line '" + line + "' of " + manifest + " has no valid line or byte count", e);
+					}
+					if (!Files.exists(shard) || Files.size(shard) != bytes)
+						throw new IOException("Shard " + shard + " is missing or does not have the " + bytes
+								+ " bytes recorded in " + manifest);
+					shards.add(shard);
+				}
+			}
+		}
+		// Without a shard there is not even a header line to write
+		if (shards.isEmpty())
+			throw new IOException("The manifests of " + file + " list no shards, no line was written");
+
+		// All headers are checked before anything is written, so the file is not touched by a failing merge
+		byte[] header = null;
+		for (Path shard : shards) {
+			try (FileChannel in = FileChannel.open(shard, StandardOpenOption.READ)) {
+				byte[] shardHeader = readHeader(in, shard);
+				if (header == null)
+					header = shardHeader;
+				else if (!Arrays.equals(header, shardHeader))
+					throw new IOException("Header line of shard " + shard + " differs from the one of " + shards.get(0));
+			}
+		}
+
+		logger.debug("Merging {} shards with {} lines into '{}'.", shards.size(), lines, file);
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				out.write(ByteBuffer.wrap(header));
+				for (Path shard : shards) {
+					try (FileChannel in = FileChannel.open(shard, StandardOpenOption.READ)) {
+						long position = header.length;
+						long size = in.size();
+						while (position < size)
+							position += in.transferTo(position, size - position, out);
+					}
+				}
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			try {
+				Files.deleteIfExists(temporary);
+			} catch (IOException deleteFailure) {
+				e.addSuppressed(deleteFailure);
+			}
+			throw e;
+		}
+
+		if (deleteShards) {
+			for (Path shard : shards)
+				Files.delete(shard);
+			for (Path manifest : manifests)
+				Files.delete(manifest);
+		}
+		return lines;
+	}
+
+	private final Path file;
+
+	private final String writerId;
+
+	private final Sharding sharding;
+
+	private final Slot[] slots;
+
+	/**
+	 * Number of the next shard if lines are not sharded by key
+	 */
+	private final AtomicInteger nextPart = new AtomicInteger();
+
+	/**
+	 * Closed shards, guarded by itself
+	 */
+	private final List<Shard> closedShards = new ArrayList<Shard>();
+
+	private final AtomicLong lineCount = new AtomicLong();
+
+	private final ThreadLocal<LineSerializer> serializers = ThreadLocal
+			.withInitial(() -> new LineSerializer(this.plan));
+
+	private final ThreadLocal<StringBuilder> lineBuffers = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+	private volatile RowPlan plan = null;
+
+	private volatile Throwable failure = null;
+
+	private volatile boolean closed = false;
+
+	ShardedWriter(Path file, Sharding sharding, String writerId) {
+		this.file = file;
+		this.sharding = Objects.requireNonNull(sharding, "Sharding cannot be null");
+		if (writerId != null && !writerId.matches("[A-Za-z0-9_-]+"))
+			throw new IllegalArgumentException(
+					"Writer id may only contain letters, digits, '_' and '-', was: " + writerId);
+		this.writerId = writerId;
+		this.slots = new Slot[sharding.streams];
+		for (int slot = 0; slot < this.slots.length; slot++)
+			this.slots[slot] = new Slot();
+		logger.debug("{}: Writing shards of '{}' with {}", this, file, sharding);
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable failure = this.failure;
+		if (failure != null)
+			throw new IOException("A previous line could not be written", failure);
+	}
+
+	/**
+	 * Closes all shards and records them in the manifest. If a line could not be
+	 * written, the shards are closed but not recorded.
+	 *
+	 * @throws IOException if a shard or the manifest cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed)
+			return;
+		this.closed = true;
+		for (Slot slot : this.slots) {
+			synchronized (slot) {
+				try {
+					if (slot.shard != null)
+						this.closeShard(slot);
+				} catch (IOException | RuntimeException e) {
+					if (this.failure == null)
+						this.failure = e;
+				}
+			}
+		}
+		this.checkFailure();
+		this.writeManifest();
+	}
+
+	private void closeShard(Slot slot) throws IOException {
+		Shard shard = slot.shard;
+		slot.shard = null;
+		shard.close();
+		synchronized (this.closedShards) {
+			this.closedShards.add(shard);
+		}
+		logger.debug("{}: Closed shard '{}' with {} lines", this, shard.path, shard.lines);
+	}
+
+	/**
+	 * @return the number of lines written so far
+	 */
+	public long getLineCount() {
+		return this.lineCount.get();
+	}
+
+	/**
+	 * @return the path of the manifest this writer records its shards in
+	 */
+	public Path getManifest() {
+		String name = this.file.getFileName().toString()
+				+ (this.writerId == null ? "" : "." + this.writerId) + MANIFEST_SUFFIX;
+		return this.file.resolveSibling(name);
+	}
+
+	/**
+	 * Opens a new shard and writes the header line to it
+	 */
+	private Shard openShard(int part) throws IOException {
+		String name = this.file.getFileName().toString();
+		int extension = name.lastIndexOf('.');
+		String stem = extension > 0 ? name.substring(0, extension) : name;
+		String suffix = extension > 0 ? name.substring(extension) : "";
+		String partName = stem + ".part-" + (this.writerId == null ? "" : this.writerId + "-")
+				+ String.format("%05d", part) + suffix;
+		Path path = this.file.resolveSibling(partName);
+		ChannelWriter writer = new ChannelWriter(FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+		writer.write(this.plan.getHeaderLine());
+		writer.write(Symbol.ENTER.toString());
+		logger.debug("{}: Opened shard '{}'", this, path);
+		return new Shard(path, part, writer);
+	}
+
+	/**
+	 * @return the index of the slot the line in buffer is written to
+	 */
+	private int slot(StringBuilder buffer) {
+		if (this.sharding.column < 0)
+			return (int) Math.floorMod(Thread.currentThread().getId(), (long) this.slots.length);
+		int start = 0;
+		for (int tabs = 0; tabs < this.sharding.column; tabs++)
+			start = buffer.indexOf(Symbol.TAB.toString(), start) + 1;
+		int end = start;
+		while (end < buffer.length() && buffer.charAt(end) != '\t' && buffer.charAt(end) != '\r'
+				&& buffer.charAt(end) != '\n')
+			end++;
+		return (int) Math.floorMod(RowIndex.hash(buffer, start, end), (long) this.slots.length);
+	}
+
+	@Override
+	public String toString() {
+		return "<ShardedWriter> '" + this.file + "'" + (this.writerId == null ? "" : " " + this.writerId);
+	}
+
+	/**
+	 * Writes the headers for all shards, see {@link WideTableFile#writeHeaders(List)}.
+	 * Otherwise they are written from the first line.
+	 *
+	 * @param headers the header groups of the objects in a line
+	 */
+	public synchronized void writeHeaders(List<LinkedHashMap<String, String[]>> headers) {
+		if (this.plan != null)
+			throw new IllegalStateException("Headers were already written to the shards");
+		RowPlan plan = new RowPlan(this, headers);
+		if (this.sharding.column >= plan.columnCount())
+			throw new IllegalArgumentException("Key column " + this.sharding.column + " does not exist, lines have "
+					+ plan.columnCount() + " columns");
+		this.plan = plan;
+	}
+
+	/**
+	 * Writes a line, given by its first object, to its shard. Can be called from
+	 * several threads at the same time.
+	 *
+	 * @param initiator the first object of the line
+	 * @throws IOException if writing the line or a previous one failed
+	 */
+	public void writeLine(StudyOrAssayTableObject initiator) throws IOException {
+		Objects.requireNonNull(initiator, "Line cannot be null");
+		if (this.closed)
+			throw new IllegalStateException("Writer is already closed");
+		this.checkFailure();
+		if (this.plan == null) {
+			synchronized (this) {
+				if (this.plan == null) {
+					List<LinkedHashMap<String, String[]>> headers = new ArrayList<LinkedHashMap<String, String[]>>();
+					for (StudyOrAssayTableObject object = initiator; object != null; object = object
+							.getNextStudyOrAssayTableObject())
+						headers.add(object.getHeaders());
+					this.writeHeaders(headers);
+				}
+			}
+		}
+
+		StringBuilder buffer = this.lineBuffers.get();
+		buffer.setLength(0);
+		this.serializers.get().appendLine(initiator, buffer);
+		int index = this.slot(buffer);
+		Slot slot = this.slots[index];
+		synchronized (slot) {
+			// close() may have closed the shards of the slot since the check above
+			if (this.closed)
+				throw new IllegalStateException("Writer is already closed");
+			try {
+				// Shards by key are numbered by their slot, rolling shards one after the other
+				if (slot.shard == null)
+					slot.shard = this.openShard(this.sharding.column < 0 ? this.nextPart.getAndIncrement() : index);
+				Writer writer = slot.shard.writer;
+				writer.append(buffer, 0, buffer.length());
+				slot.shard.lines++;
+				if (this.sharding.isFull(slot.shard))
+					this.closeShard(slot);
+			} catch (IOException | RuntimeException e) {
+				this.failure = e;
+				throw e;
+			}
+		}
+		this.lineCount.incrementAndGet();
+	}
+
+	/**
+	 * Writes the manifest to a temporary file first and moves it into place, so
+	 * that it is either complete or missing
+	 */
+	private void writeManifest() throws IOException {
+		List<Shard> shards;
+		synchronized (this.closedShards) {
+			shards = new ArrayList<Shard>(this.closedShards);
+		}
+		shards.sort(Comparator.comparingInt(shard -> shard.part));
+		StringBuilder sb = new StringBuilder(MANIFEST_HEADER).append(Symbol.ENTER);
+		for (Shard shard : shards)
+			sb.append(shard.path.getFileName()).append(Symbol.TAB).append(shard.lines).append(Symbol.TAB)
+					.append(shard.bytes).append(Symbol.ENTER);
+		Path manifest = this.getManifest();
+		Path temporary = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+		Files.writeString(temporary, sb, Props.DEFAULT_CHARSET);
+		Files.move(temporary, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		logger.debug("{}: Recorded {} shards with {} lines in '{}'", this, shards.size(), this.getLineCount(), manifest);
+	}
+
+}
@@ -7,12 +7,10 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 
 import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
 import de.ipk_gatersleben.bit.bi.isa4j.exceptions.RedundantItemException;
@@ -20,9 +18,12 @@ import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
 
 public class Source extends StudyOrAssayTableObject implements Commentable {
 	
-	private List<Characteristic> characteristics = new ArrayList<Characteristic>();
+	private static final Function<Characteristic, String> CATEGORY = Characteristic::getCategory;
+
+	private List<Characteristic> characteristics = new KeyedList<Characteristic>(List.of(CATEGORY),
+			Characteristic::indexingLists);
 	
-	private CommentCollection comments = new CommentCollection();
+	private CommentCollection comments = null;
 	
 	protected String name;
 	public Source(String name) {
@@ -33,14 +34,20 @@ public class Source extends StudyOrAssayTableObject implements Commentable {
 		this.setCharacteristics(characteristics);
 	}
 	public void addCharacteristic(Characteristic characteristic) {
-		if(this.characteristics.stream().map(Characteristic::getCategory).anyMatch(characteristic.getCategory()::equals))
+		if(KeyedList.find(this.characteristics, CATEGORY, characteristic.getCategory()) != null)
 			throw new RedundantItemException("Multiple entries for Characteristic: " + characteristic.getCategory());
 		
 		this.characteristics.add(characteristic);
 	}
 	public CommentCollection comments() {
+		if (this.comments == null)
+			this.comments = new CommentCollection();
 		return this.comments;
 	}
+
+	public CommentCollection commentsOrEmpty() {
+		return this.comments == null ? CommentCollection.EMPTY : this.comments;
+	}
 	
 	/**
 	 * @return the characteristics
@@ -48,52 +55,17 @@ public class Source extends StudyOrAssayTableObject implements Commentable {
 	public List<Characteristic> getCharacteristics() {
 		return characteristics;
 	}
-	Map<String, String[]> getFields() {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-		
-		fields.put(StudyAssayAttribute.SOURCE_NAME.toString(), new String[]{this.name});
-		fields.putAll(this.getFieldsForCharacteristics());
-		fields.putAll(this.getFieldsForComments(this.comments));
-
-		return fields;
-	}
-	
-	protected Map<String, String[]> getFieldsForCharacteristics() {
-		HashMap<String, String[]> fields = new HashMap<String, String[]>();
-		
+	void addCharacteristicGroups(HeaderStructure structure) {
 		for(Characteristic characteristic : this.characteristics) {
-			String characteristicName = StringUtil.putNameInAttribute(StudyAssayAttribute.CHARACTERISTICS, characteristic.getCategory());
-			List<String> characteristicFields = new ArrayList<String>(3);
-			characteristicFields.add(characteristic.getValue().getTerm());
-			characteristicFields.addAll(this.getOntologyAnnotationExtensionFields(characteristic, c -> c.getValue()));
-			fields.put(characteristicName, characteristicFields.toArray(new String[0]));
+			structure.group(StudyAssayAttribute.CHARACTERISTICS, characteristic.getCategory());
+			structure.annotationColumns(characteristic.getValue());
 		}
-		
-		return fields;
-	}
-	
-	LinkedHashMap<String, String[]> getHeaders() {
-		LinkedHashMap<String, String[]> headers = new LinkedHashMap<String, String[]>();
-		
-		headers.put(StudyAssayAttribute.SOURCE_NAME.toString(), new String[]{StudyAssayAttribute.SOURCE_NAME.toString()});
-		headers.putAll(this.getHeadersForCharacteristics());
-		headers.putAll(this.getHeadersForComments(this.comments));
-		
-		return headers;
 	}
 	
-	protected LinkedHashMap<String, String[]> getHeadersForCharacteristics() {
-		LinkedHashMap<String, String[]> headers = new LinkedHashMap<String, String[]>();
-		
-		for(Characteristic characteristic : this.characteristics) {
-			List<String> characteristicColumns = new ArrayList<String>(3);
-			String characteristicName = StringUtil.putNameInAttribute(StudyAssayAttribute.CHARACTERISTICS, characteristic.getCategory());		
-			characteristicColumns.add(characteristicName);
-			characteristicColumns.addAll(this.getOntologyAnnotationExtensionHeaders(characteristic, c -> c.getValue()));
-			headers.put(characteristicName, characteristicColumns.toArray(new String[0]));
-		}
-		
-		return headers;	
+	void addGroups(HeaderStructure structure) {
+		structure.group(StudyAssayAttribute.SOURCE_NAME, null);
+		this.addCharacteristicGroups(structure);
+		this.addCommentGroups(structure, this.commentsOrEmpty());
 	}
 	
 	/**
@@ -103,7 +75,6 @@ public class Source extends StudyOrAssayTableObject implements Commentable {
 		return name;
 	}
 	
-	
 	/**
 	 * @param characteristics the characteristics to set
 	 */
@@ -124,4 +95,18 @@ public class Source extends StudyOrAssayTableObject implements Commentable {
 		return "<Source> '" + this.name + "'";
 	}
 	
+	protected void visitCharacteristics(FieldVisitor visitor) throws IOException {
+		for(Characteristic characteristic : this.characteristics) {
+			visitor.group(StudyAssayAttribute.CHARACTERISTICS, characteristic.getCategory(), ontologyAnnotationWidth(characteristic.getValue()));
+			this.visitOntologyAnnotation(characteristic.getValue(), visitor);
+		}
+	}
+	
+	void visitFields(FieldVisitor visitor) throws IOException {
+		visitor.group(StudyAssayAttribute.SOURCE_NAME, null, 1);
+		visitor.cell(this.name);
+		this.visitCharacteristics(visitor);
+		this.visitComments(this.commentsOrEmpty(), visitor);
+	}
+	
 }
@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 
 import de.ipk_gatersleben.bit.bi.isa4j.exceptions.RedundantItemException;
 import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
@@ -24,10 +25,12 @@ import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
 
 public class Study extends WideTableFile implements Commentable {
 
+	private static final Function<Assay, String> FILE_NAME = Assay::getFileName;
+
 	/**
 	 * {@link Assay} of Study
 	 */
-	private List<Assay> assays = new ArrayList<>(2);
+	private List<Assay> assays = new KeyedList<Assay>(2, List.of(FILE_NAME), Assay::indexingLists);
 
 	/**
 	 * People, who take part to the Investigation {@link Person}
@@ -112,7 +115,7 @@ public class Study extends WideTableFile implements Commentable {
 	 */
 	public void addAssay(Assay assay) {
 		Objects.requireNonNull(assay);
-		if (this.assays.stream().map(Assay::getFileName).anyMatch(assay.getFileName()::equals))
+		if (KeyedList.find(this.assays, FILE_NAME, assay.getFileName()) != null)
 			throw new RedundantItemException("Assay Filename not unique: " + assay.getFileName());
 
 		assay.setStudy(this);
@@ -316,7 +319,8 @@ public class Study extends WideTableFile implements Commentable {
 	 * @param identifier the identifier to set
 	 */
 	public void setIdentifier(String identifier) {
-		this.identifier = StringUtil.sanitize(Objects.requireNonNull(identifier, "Study identifier cannot be null"));
+		this.identifier = IndexingLists.changeKey(this.indexingLists, this.identifier,
+				StringUtil.sanitize(Objects.requireNonNull(identifier, "Study identifier cannot be null")));
 	}
 
 	/**
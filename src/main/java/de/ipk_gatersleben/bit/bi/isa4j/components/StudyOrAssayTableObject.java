@@ -7,7 +7,8 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -15,12 +16,88 @@ import java.util.Map;
 import java.util.function.Function;
 
 import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
 import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
 
 public abstract class StudyOrAssayTableObject {
 
+	/**
+	 * Key of a header group as used in {@link #getHeaders()} and {@link #getFields()}:
+	 * the name put into the attribute (e.g. "Characteristics[Organism]"), the bare
+	 * attribute if there is no name (e.g. "Source Name") or the bare name if there is
+	 * no attribute (e.g. "Extract Name").
+	 * 
+	 * @param attribute the attribute, can be null
+	 * @param name      the name, can be null
+	 * @return the key of the header group
+	 */
+	static String groupKey(StudyAssayAttribute attribute, String name) {
+		if (attribute == null)
+			return name;
+		if (name == null)
+			return attribute.toString();
+		return StringUtil.putNameInAttribute(attribute, name);
+	}
+
+	/**
+	 * Checks whether key equals {@link #groupKey(StudyAssayAttribute, String)}
+	 * without building that key.
+	 * 
+	 * @param key       the key to check
+	 * @param attribute the attribute, can be null
+	 * @param name      the name, can be null
+	 * @return true if key is the key of the header group
+	 */
+	static boolean isGroupKey(String key, StudyAssayAttribute attribute, String name) {
+		if (attribute == null)
+			return key.equals(name);
+		String template = attribute.toString();
+		if (name == null)
+			return key.equals(template);
+		int wildcard = template.indexOf(Symbol.WILDCARD.toString());
+		if (wildcard < 0)
+			return key.equals(template);
+		int suffixLength = template.length() - wildcard - 1;
+		return key.length() == template.length() - 1 + name.length()
+				&& key.regionMatches(0, template, 0, wildcard)
+				&& key.regionMatches(wildcard, name, 0, name.length())
+				&& key.regionMatches(wildcard + name.length(), template, wildcard + 1, suffixLength);
+	}
+
+	/**
+	 * Number of cells an {@link OntologyAnnotation} takes up: the term plus
+	 * optional Term Source REF and Term Accession Number.
+	 * 
+	 * @param ontologyAnnotation the annotation
+	 * @return the number of cells
+	 */
+	static int ontologyAnnotationWidth(OntologyAnnotation ontologyAnnotation) {
+		return 1 + (ontologyAnnotation.getSourceREF() == null ? 0 : 1)
+				+ (ontologyAnnotation.getTermAccession() == null ? 0 : 1);
+	}
+
 	private StudyOrAssayTableObject nextStudyOrAssayTableObject;
 
+	void addCommentGroups(HeaderStructure structure, CommentCollection comments) {
+		if (comments.isEmpty())
+			return;
+		for (Comment comment : comments.getAll())
+			structure.group(StudyAssayAttribute.COMMENT, comment.getName());
+	}
+
+	<T extends Value<?>> void addValueGroups(HeaderStructure structure, StudyAssayAttribute tName, List<T> tValues,
+			Function<T, String> lambda) {
+		for (T tValue : tValues) {
+			structure.group(tName, lambda.apply(tValue));
+			if (!tValue.isNumeric())
+				structure.annotationColumns(tValue.getValue());
+			if (tValue.getUnit() != null) {
+				structure.column(StudyAssayAttribute.UNIT);
+				structure.annotationColumns(tValue.getUnit());
+			}
+		}
+	}
+
 	/**
 	 * Return a map of field headers -> field values for this object, as it would be
 	 * printed in a Study or Assay File. For example, for a Source object this could
@@ -34,38 +111,34 @@ public abstract class StudyOrAssayTableObject {
 	 * "ParameterValue[Container type]" => ["pot", AgroOntology,
 	 * "http://purl.obolibrary.org/obo/AGRO_00000309"], }
 	 * 
-	 * @return
+	 * The map is collected from {@link #visitFields(FieldVisitor)}, which should be
+	 * preferred wherever the fields are only passed on.
+	 * 
+	 * @return the fields of this object
 	 */
-	abstract Map<String, String[]> getFields();
-
-	protected HashMap<String, String[]> getFieldsForComments(CommentCollection comments) {
+	Map<String, String[]> getFields() {
 		HashMap<String, String[]> fields = new HashMap<String, String[]>();
+		FieldVisitor collector = new FieldVisitor() {
+			private String[] values;
+			private int cell;
+
+			public void group(StudyAssayAttribute attribute, String name, int width) {
+				this.values = new String[width];
+				this.cell = 0;
+				fields.put(groupKey(attribute, name), this.values);
+			}
 
-		for (Comment comment : comments.getAll()) {
-			String commentName = StringUtil.putNameInAttribute(StudyAssayAttribute.COMMENT, comment.getName());
-			fields.put(commentName, new String[] { comment.getValue() });
-		}
-
-		return fields;
-	}
-
-	protected <T extends Value<?>> HashMap<String, String[]> getFieldsForValues(StudyAssayAttribute tName,
-			List<T> tValues, Function<T, String> lambda) {
-		HashMap<String, String[]> headers = new HashMap<String, String[]>();
-
-		for (T tValue : tValues) {
-			List<String> tValueFields = new ArrayList<String>(3);
-			String tValueName = StringUtil.putNameInAttribute(tName, lambda.apply(tValue));
-			tValueFields.add(tValue.getValue().getTerm());
-			tValueFields.addAll(this.getOntologyAnnotationExtensionFields(tValue, c -> c.getValue()));
-			if (tValue.getUnit() != null) {
-				tValueFields.add(tValue.getUnit().getTerm());
-				tValueFields.addAll(this.getOntologyAnnotationExtensionFields(tValue, c -> c.getUnit()));
+			public void cell(String value) {
+				this.values[this.cell++] = value;
 			}
-			headers.put(tValueName, tValueFields.toArray(new String[0]));
+		};
+		try {
+			this.visitFields(collector);
+		} catch (IOException e) {
+			// The collector itself never throws
+			throw new UncheckedIOException(e);
 		}
-
-		return headers;
+		return fields;
 	}
 
 	/**
@@ -75,39 +148,24 @@ public abstract class StudyOrAssayTableObject {
 	 * "Term Source REF", "Term Accession Number"], "Characteristic[Genotype]" =>
 	 * ["Characteristic [Genotype]"] }
 	 * 
+	 * The headers are described as a {@link HeaderStructure} and shared between all
+	 * objects with the same structure, so the returned map must not be modified.
+	 * 
 	 * @return
 	 */
-	abstract LinkedHashMap<String, String[]> getHeaders();
-
-	protected LinkedHashMap<String, String[]> getHeadersForComments(CommentCollection comments) {
-		LinkedHashMap<String, String[]> headers = new LinkedHashMap<String, String[]>();
-
-		for (Comment comment : comments.getAll()) {
-			String commentName = StringUtil.putNameInAttribute(StudyAssayAttribute.COMMENT, comment.getName());
-			headers.put(commentName, new String[] { commentName });
-		}
-
-		return headers;
+	LinkedHashMap<String, String[]> getHeaders() {
+		HeaderStructure structure = new HeaderStructure();
+		this.addGroups(structure);
+		return structure.headers();
 	}
 
-	protected <T extends Value<?>> LinkedHashMap<String, String[]> getHeadersForValues(StudyAssayAttribute tName,
-			List<T> tValues, Function<T, String> lambda) {
-		LinkedHashMap<String, String[]> headers = new LinkedHashMap<String, String[]>();
-
-		for (T tValue : tValues) {
-			List<String> tValueColumns = new ArrayList<String>(3);
-			String tValueName = StringUtil.putNameInAttribute(tName, lambda.apply(tValue));
-			tValueColumns.add(tValueName);
-			tValueColumns.addAll(this.getOntologyAnnotationExtensionHeaders(tValue, c -> c.getValue()));
-			if (tValue.getUnit() != null) {
-				tValueColumns.add(StudyAssayAttribute.UNIT.toString());
-				tValueColumns.addAll(this.getOntologyAnnotationExtensionHeaders(tValue, c -> c.getUnit()));
-			}
-			headers.put(tValueName, tValueColumns.toArray(new String[0]));
-		}
-
-		return headers;
-	}
+	/**
+	 * Describes the header groups of this object, in the same order as
+	 * {@link #visitFields(FieldVisitor)} passes them.
+	 * 
+	 * @param structure receives the groups
+	 */
+	abstract void addGroups(HeaderStructure structure);
 
 	/**
 	 * @return the nextStudyOrAssayTableObject
@@ -116,42 +174,54 @@ public abstract class StudyOrAssayTableObject {
 		return nextStudyOrAssayTableObject;
 	}
 
-	protected <T> ArrayList<String> getOntologyAnnotationExtensionFields(T thing,
-			Function<T, OntologyAnnotation> lambda) {
-		ArrayList<String> extensionFields = new ArrayList<String>(2);
-		OntologyAnnotation ontologyAnnotation = lambda.apply(thing);
-		if (ontologyAnnotation.getSourceREF() != null)
-			extensionFields.add(ontologyAnnotation.getSourceREF().getName());
-		if (ontologyAnnotation.getTermAccession() != null)
-			extensionFields.add(ontologyAnnotation.getTermAccession());
-		return extensionFields;
+	/**
+	 * @param nextStudyOrAssayTableObject the nextStudyOrAssayTableObject to set
+	 */
+	protected void setNextStudyOrAssayTableObject(StudyOrAssayTableObject nextStudyOrAssayTableObject) {
+		this.nextStudyOrAssayTableObject = nextStudyOrAssayTableObject;
 	}
 
 	/**
-	 * These two methods are meant to simplify getFields and getHeaders for Objects
-	 * that can have TERM SOURCE REF and TERM ACCESSION NUMBERS but don't have to
+	 * Passes the fields of this object to visitor, in the same order as the header
+	 * groups returned by {@link #getHeaders()}. See {@link FieldVisitor} for the
+	 * order of calls.
 	 * 
-	 * @param <T>    the type
-	 * @param thing  the value
-	 * @param lambda lambda
-	 * @return the headers
+	 * @param visitor receives the groups and cells
+	 * @throws IOException if the visitor fails
 	 */
-	protected <T> ArrayList<String> getOntologyAnnotationExtensionHeaders(T thing,
-			Function<T, OntologyAnnotation> lambda) {
-		ArrayList<String> extensionHeaders = new ArrayList<String>(2);
-		OntologyAnnotation ontologyAnnotation = lambda.apply(thing);
+	abstract void visitFields(FieldVisitor visitor) throws IOException;
+
+	protected void visitComments(CommentCollection comments, FieldVisitor visitor) throws IOException {
+		if (comments.isEmpty())
+			return;
+		for (Comment comment : comments.getAll()) {
+			visitor.group(StudyAssayAttribute.COMMENT, comment.getName(), 1);
+			visitor.cell(comment.getValue());
+		}
+	}
+
+	protected void visitOntologyAnnotation(OntologyAnnotation ontologyAnnotation, FieldVisitor visitor) throws IOException {
+		visitor.cell(ontologyAnnotation.getTerm());
 		if (ontologyAnnotation.getSourceREF() != null)
-			extensionHeaders.add(StudyAssayAttribute.TERM_SOURCE_REF.toString());
+			visitor.cell(ontologyAnnotation.getSourceREF().getName());
 		if (ontologyAnnotation.getTermAccession() != null)
-			extensionHeaders.add(StudyAssayAttribute.TERM_ACCESSION_NUMBER.toString());
-		return extensionHeaders;
+			visitor.cell(ontologyAnnotation.getTermAccession());
 	}
 
-	/**
-	 * @param nextStudyOrAssayTableObject the nextStudyOrAssayTableObject to set
-	 */
-	protected void setNextStudyOrAssayTableObject(StudyOrAssayTableObject nextStudyOrAssayTableObject) {
-		this.nextStudyOrAssayTableObject = nextStudyOrAssayTableObject;
+	protected <T extends Value<?>> void visitValues(StudyAssayAttribute tName, List<T> tValues,
+			Function<T, String> lambda, FieldVisitor visitor) throws IOException {
+		for (T tValue : tValues) {
+			int width = tValue.getValueWidth();
+			if (tValue.getUnit() != null)
+				width += ontologyAnnotationWidth(tValue.getUnit());
+			visitor.group(tName, lambda.apply(tValue), width);
+			if (tValue.isNumeric())
+				tValue.visitNumber(visitor);
+			else
+				this.visitOntologyAnnotation(tValue.getValue(), visitor);
+			if (tValue.getUnit() != null)
+				this.visitOntologyAnnotation(tValue.getUnit(), visitor);
+		}
 	}
 
-}
+}
\ No newline at end of file
@@ -0,0 +1,718 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+/**
+ * Checks lines of a Study or Assay File against a header layout and reports
+ * every problem with its line number, instead of failing at the first one
+ * halfway through {@link WideTableFile#writeLine(StudyOrAssayTableObject)}.
+ * Lines can be checked as chains of {@link StudyOrAssayTableObject}s before they
+ * are written, or in an existing file.
+ *
+ * Lines are checked in chunks on several threads. Only a bounded number of
+ * chunks is in memory at a time, and at most
+ * {@link #setMaximumViolations(int)} violations are kept (the ones in the first
+ * lines), while all of them are counted. Line numbers are the ones the lines
+ * have in the file, or would have if they were written, the header being line 1.
+ *
+ * <pre>
+ * TableValidator validator = TableValidator.fromExample(lines.get(0));
+ * TableValidator.Report report = validator.validate(lines, 8);
+ * for (TableValidator.Violation violation : report.getViolations())
+ *     System.out.println(violation);
+ * </pre>
+ */
+public final class TableValidator {
+
+	/**
+	 * What is wrong with a line
+	 */
+	public enum Kind {
+		/**
+		 * The header line of a file differs from the layout
+		 */
+		HEADER,
+		/**
+		 * A line of a file has a different number of cells than the header
+		 */
+		CELL_COUNT,
+		/**
+		 * A line has fewer objects than the header
+		 */
+		MISSING_OBJECT,
+		/**
+		 * A line has more objects than the header, the surplus ones would not be
+		 * written
+		 */
+		SURPLUS_OBJECT,
+		/**
+		 * An object has no field for one of its header groups
+		 */
+		MISSING_GROUP,
+		/**
+		 * An object has a field without header group, it would not be written
+		 */
+		UNKNOWN_GROUP,
+		/**
+		 * An object has a different number of columns for a header group than the
+		 * header, e.g. because only some objects have a Term Source REF and Term
+		 * Accession Number
+		 */
+		GROUP_WIDTH
+	}
+
+	/**
+	 * A problem found in a line
+	 */
+	public static final class Violation {
+
+		private final long lineNumber;
+
+		private final Kind kind;
+
+		private final String message;
+
+		private Violation(long lineNumber, Kind kind, String message) {
+			this.lineNumber = lineNumber;
+			this.kind = kind;
+			this.message = message;
+		}
+
+		/**
+		 * @return what is wrong
+		 */
+		public Kind getKind() {
+			return this.kind;
+		}
+
+		/**
+		 * @return the number of the line, the header being 1
+		 */
+		public long getLineNumber() {
+			return this.lineNumber;
+		}
+
+		/**
+		 * @return the description of the problem
+		 */
+		public String getMessage() {
+			return this.message;
+		}
+
+		@Override
+		public String toString() {
+			return "Line " + this.lineNumber + ": " + this.message;
+		}
+
+	}
+
+	/**
+	 * The result of a validation
+	 */
+	public static final class Report {
+
+		private final long lineCount;
+
+		private final long violationCount;
+
+		private final List<Violation> violations;
+
+		private Report(long lineCount, Violations violations) {
+			this.lineCount = lineCount;
+			this.violationCount = violations.count;
+			this.violations = violations.result();
+		}
+
+		/**
+		 * @return the number of lines checked, without header and empty lines
+		 */
+		public long getLineCount() {
+			return this.lineCount;
+		}
+
+		/**
+		 * @return the number of violations found, including those that were not kept
+		 */
+		public long getViolationCount() {
+			return this.violationCount;
+		}
+
+		/**
+		 * @return the violations in the first lines, ordered by line number
+		 */
+		public List<Violation> getViolations() {
+			return this.violations;
+		}
+
+		/**
+		 * @return true if no violations were found
+		 */
+		public boolean isValid() {
+			return this.violationCount == 0;
+		}
+
+		@Override
+		public String toString() {
+			return "<Report> " + this.lineCount + " lines, " + this.violationCount + " violations";
+		}
+
+	}
+
+	/**
+	 * Violations of a chunk of lines or of all lines. A chunk adds its violations
+	 * in the order of its lines, so the first maximum of them are the ones kept.
+	 */
+	private static final class Violations {
+
+		private final int maximum;
+
+		private final List<Violation> kept = new ArrayList<Violation>();
+
+		private long count = 0;
+
+		private Violations(int maximum) {
+			this.maximum = maximum;
+		}
+
+		private void add(long lineNumber, Kind kind, String message) {
+			this.count++;
+			if (this.kept.size() < this.maximum)
+				this.kept.add(new Violation(lineNumber, kind, message));
+		}
+
+		/**
+		 * Adds the violations of a chunk, whose line numbers are shifted by offset
+		 */
+		private synchronized void addAll(Violations chunk, long offset) {
+			this.count += chunk.count;
+			for (Violation violation : chunk.kept)
+				this.kept.add(offset == 0 ? violation
+						: new Violation(violation.lineNumber + offset, violation.kind, violation.message));
+			if (this.kept.size() > 2 * this.maximum)
+				this.trim();
+		}
+
+		private synchronized List<Violation> result() {
+			this.trim();
+			return List.copyOf(this.kept);
+		}
+
+		/**
+		 * Keeps the violations of the first lines. The sort is stable, so the
+		 * violations of a line keep their order.
+		 */
+		private void trim() {
+			this.kept.sort(Comparator.comparingLong(Violation::getLineNumber));
+			if (this.kept.size() > this.maximum)
+				this.kept.subList(this.maximum, this.kept.size()).clear();
+		}
+
+	}
+
+	/**
+	 * Checks the objects of a line against the plan, one line at a time
+	 */
+	private final class LineChecker implements FieldVisitor {
+
+		private long lineNumber;
+
+		private int nextGroup;
+
+		private StudyOrAssayTableObject object;
+
+		private int position;
+
+		/**
+		 * seen[group] = whether the object announced the header group
+		 */
+		private final boolean[] seen;
+
+		private Violations violations;
+
+		private LineChecker() {
+			int groups = 0;
+			for (int position = 0; position < TableValidator.this.plan.size(); position++)
+				groups = Math.max(groups, TableValidator.this.plan.groupCount(position));
+			this.seen = new boolean[groups];
+		}
+
+		@Override
+		public void cell(double value) {
+		}
+
+		@Override
+		public void cell(long value) {
+		}
+
+		@Override
+		public void cell(String value) {
+		}
+
+		private void check(StudyOrAssayTableObject initiator, long lineNumber, Violations violations)
+				throws IOException {
+			RowPlan plan = TableValidator.this.plan;
+			this.lineNumber = lineNumber;
+			this.violations = violations;
+			StudyOrAssayTableObject currentObject = initiator;
+			for (this.position = 0; this.position < plan.size(); this.position++) {
+				if (currentObject == null) {
+					violations.add(lineNumber, Kind.MISSING_OBJECT,
+							"Line has " + this.position + " objects, but the header has " + plan.size());
+					return;
+				}
+				int groupCount = plan.groupCount(this.position);
+				Arrays.fill(this.seen, 0, groupCount, false);
+				this.object = currentObject;
+				this.nextGroup = 0;
+				currentObject.visitFields(this);
+				for (int group = 0; group < groupCount; group++)
+					if (!this.seen[group])
+						violations.add(lineNumber, Kind.MISSING_GROUP,
+								"Object " + currentObject + " has no value for header " + plan.key(this.position, group));
+				currentObject = currentObject.getNextStudyOrAssayTableObject();
+			}
+			if (currentObject != null) {
+				int objects = plan.size();
+				for (; currentObject != null; currentObject = currentObject.getNextStudyOrAssayTableObject())
+					objects++;
+				violations.add(lineNumber, Kind.SURPLUS_OBJECT,
+						"Line has " + objects + " objects, but the header has " + plan.size());
+			}
+		}
+
+		@Override
+		public void group(StudyAssayAttribute attribute, String name, int width) {
+			RowPlan plan = TableValidator.this.plan;
+			int group = plan.findGroup(this.position, attribute, name, this.nextGroup);
+			if (group < 0) {
+				this.violations.add(this.lineNumber, Kind.UNKNOWN_GROUP, "Object " + this.object
+						+ " has a field without header: " + StudyOrAssayTableObject.groupKey(attribute, name));
+				return;
+			}
+			this.seen[group] = true;
+			this.nextGroup = group + 1;
+			if (plan.width(this.position, group) != width)
+				this.violations.add(this.lineNumber, Kind.GROUP_WIDTH,
+						"Object " + this.object + " has " + width + " columns for header " + plan.key(this.position, group)
+								+ ", but the header has " + plan.width(this.position, group));
+		}
+
+	}
+
+	/**
+	 * Lines of a file starting in a range of bytes: their number and violations,
+	 * numbered from 1 within the range
+	 */
+	private static final class RangeResult {
+
+		private long lines = 0;
+
+		private long checkedLines = 0;
+
+		private final Violations violations;
+
+		private RangeResult(int maximumViolations) {
+			this.violations = new Violations(maximumViolations);
+		}
+
+	}
+
+	/**
+	 * Number of violations kept unless changed with
+	 * {@link #setMaximumViolations(int)}
+	 */
+	public static final int DEFAULT_MAXIMUM_VIOLATIONS = 1000;
+
+	/**
+	 * Number of lines of a stream checked by one task
+	 */
+	private static final int CHUNK_LINES = 1024;
+
+	/**
+	 * Size of the buffer each thread reads a file with
+	 */
+	private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+	private static final Logger logger = LoggerFactory.getLogger(TableValidator.class);
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	/**
+	 * Creates a validator for the layout of the lines that start like example,
+	 * i.e. the headers {@link WideTableFile#writeLine(StudyOrAssayTableObject)}
+	 * would write for it.
+	 *
+	 * @param example the first object of an example line
+	 * @return the validator
+	 */
+	public static TableValidator fromExample(StudyOrAssayTableObject example) {
+		Objects.requireNonNull(example, "Example cannot be null");
+		List<LinkedHashMap<String, String[]>> headers = new ArrayList<LinkedHashMap<String, String[]>>();
+		for (; example != null; example = example.getNextStudyOrAssayTableObject())
+			headers.add(example.getHeaders());
+		return new TableValidator(headers);
+	}
+
+	/**
+	 * Creates a validator for the layout of an existing Study or Assay File.
+	 *
+	 * @param file the file whose header line is the layout
+	 * @return the validator
+	 * @throws IOException if the header line cannot be read
+	 */
+	public static TableValidator fromFile(Path file) throws IOException {
+		try (WideTableFileReader reader = new WideTableFileReader(file)) {
+			return new TableValidator(reader.getHeaders());
+		}
+	}
+
+	private static void rethrow(Throwable failure) throws IOException {
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		throw new IOException(failure);
+	}
+
+	private final List<LinkedHashMap<String, String[]>> headers;
+
+	private final RowPlan plan;
+
+	private volatile int maximumViolations = DEFAULT_MAXIMUM_VIOLATIONS;
+
+	/**
+	 * Creates a validator for lines with the given headers, in the form of
+	 * {@link WideTableFile#writeHeaders(List)}.
+	 *
+	 * @param headers the header groups of the objects in a line
+	 */
+	public TableValidator(List<LinkedHashMap<String, String[]>> headers) {
+		Objects.requireNonNull(headers, "Headers cannot be null");
+		if (headers.isEmpty())
+			throw new IllegalArgumentException("Headers must contain at least one object");
+		this.headers = HeaderStructure.copy(headers);
+		this.plan = new RowPlan(this, this.headers);
+	}
+
+	private void checkLine(RangeResult result, int tabs, long length, byte last, int columns) {
+		result.lines++;
+		// Empty lines are skipped like by WideTableFileReader
+		if (length == 0 || (length == 1 && last == '\r'))
+			return;
+		result.checkedLines++;
+		if (tabs + 1 != columns)
+			result.violations.add(result.lines, Kind.CELL_COUNT,
+					"Line has " + (tabs + 1) + " cells, but the header has " + columns);
+	}
+
+	/**
+	 * Finds the lines of a range of bytes of a file. A line belongs to the range
+	 * it starts in, so the range is read past its end up to the end of its last
+	 * line.
+	 */
+	private RangeResult checkRange(FileChannel channel, long from, long to, long dataStart, int columns)
+			throws IOException {
+		RangeResult result = new RangeResult(this.maximumViolations);
+		if (from >= to)
+			return result;
+		ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		byte[] bytes = buffer.array();
+		// A line starting before the range belongs to the previous one
+		boolean skipping = false;
+		if (from > dataStart) {
+			buffer.limit(1);
+			channel.read(buffer, from - 1);
+			skipping = bytes[0] != '\n';
+		}
+
+		long position = from;
+		int tabs = 0;
+		long length = 0;
+		byte last = 0;
+		while (true) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++) {
+				byte b = bytes[i];
+				if (b != '\n') {
+					if (!skipping) {
+						if (b == '\t')
+							tabs++;
+						length++;
+						last = b;
+					}
+					continue;
+				}
+				if (skipping)
+					skipping = false;
+				else
+					this.checkLine(result, tabs, length, last, columns);
+				tabs = 0;
+				length = 0;
+				last = 0;
+				if (position + i + 1 >= to)
+					return result;
+			}
+			position += read;
+		}
+		// The last line of the file has no line break
+		if (!skipping && length > 0)
+			this.checkLine(result, tabs, length, last, columns);
+		return result;
+	}
+
+	/**
+	 * @return a copy of the headers lines are checked against
+	 */
+	public List<LinkedHashMap<String, String[]>> getHeaders() {
+		return HeaderStructure.copy(this.headers);
+	}
+
+	/**
+	 * @return the maximum number of violations kept in a report
+	 */
+	public int getMaximumViolations() {
+		return this.maximumViolations;
+	}
+
+	/**
+	 * Compares the header line of a file with the layout
+	 *
+	 * @return a description of the first difference, null if there is none
+	 */
+	private String headerDifference(String headerLine) {
+		String[] expected = this.plan.getHeaderLine().split(Symbol.TAB.toString(), -1);
+		String[] actual = headerLine.split(Symbol.TAB.toString(), -1);
+		for (int column = 0; column < Math.min(expected.length, actual.length); column++)
+			if (!expected[column].equals(actual[column]))
+				return "Column " + (column + 1) + " of the header is " + actual[column] + ", but should be "
+						+ expected[column];
+		if (expected.length != actual.length)
+			return "Header has " + actual.length + " columns, but should have " + expected.length;
+		return null;
+	}
+
+	/**
+	 * @return the offset of the first line after the header line
+	 */
+	private static long headerEnd(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long position = 0;
+		while (true) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0)
+				return position;
+			for (int i = 0; i < read; i++)
+				if (buffer.get(i) == '\n')
+					return position + i + 1;
+			position += read;
+		}
+	}
+
+	private ExecutorService newExecutor(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Number of threads must be at least 1, was: " + threads);
+		return Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "isa4j-validator-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Sets how many violations are kept in a report. Further ones are only
+	 * counted.
+	 *
+	 * @param maximumViolations number of violations, {@link #DEFAULT_MAXIMUM_VIOLATIONS} by default
+	 */
+	public void setMaximumViolations(int maximumViolations) {
+		if (maximumViolations < 0)
+			throw new IllegalArgumentException("Maximum number of violations cannot be negative: " + maximumViolations);
+		this.maximumViolations = maximumViolations;
+	}
+
+	private static void shutdown(ExecutorService executor) throws InterruptedIOException {
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+				logger.debug("Waiting for lines to be checked");
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for lines to be checked");
+		}
+	}
+
+	private void submit(ExecutorService executor, Semaphore permits, List<StudyOrAssayTableObject> chunk,
+			long firstLineNumber, Violations violations, AtomicReference<Throwable> failure,
+			ThreadLocal<LineChecker> checkers) throws InterruptedIOException {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to check lines");
+		}
+		executor.execute(() -> {
+			try {
+				Violations chunkViolations = new Violations(this.maximumViolations);
+				LineChecker checker = checkers.get();
+				for (int line = 0; line < chunk.size() && failure.get() == null; line++)
+					checker.check(chunk.get(line), firstLineNumber + line, chunkViolations);
+				violations.addAll(chunkViolations, 0);
+			} catch (Throwable t) {
+				failure.compareAndSet(null, t);
+			} finally {
+				permits.release();
+			}
+		});
+	}
+
+	@Override
+	public String toString() {
+		return "<TableValidator> " + this.plan.columnCount() + " columns";
+	}
+
+	/**
+	 * Checks lines, each given by its first object, on the given number of
+	 * threads. The lines are taken from the {@link Iterable} in chunks while they
+	 * are checked, so a lazily produced sequence of lines (e.g. from
+	 * {@code stream::iterator}) is never held in memory as a whole. The objects must
+	 * not be changed during the validation.
+	 *
+	 * @param lines   the first objects of the lines
+	 * @param threads number of threads to check lines with
+	 * @return the report
+	 * @throws IOException if an object fails to pass its fields
+	 */
+	public Report validate(Iterable<? extends StudyOrAssayTableObject> lines, int threads) throws IOException {
+		Objects.requireNonNull(lines, "Lines cannot be null");
+		ExecutorService executor = this.newExecutor(threads);
+		// Bounds the number of chunks in memory
+		Semaphore permits = new Semaphore(threads * 4);
+		Violations violations = new Violations(this.maximumViolations);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		ThreadLocal<LineChecker> checkers = ThreadLocal.withInitial(LineChecker::new);
+		long lineCount = 0;
+		try {
+			List<StudyOrAssayTableObject> chunk = new ArrayList<StudyOrAssayTableObject>(CHUNK_LINES);
+			for (StudyOrAssayTableObject line : lines) {
+				chunk.add(line);
+				lineCount++;
+				if (chunk.size() < CHUNK_LINES)
+					continue;
+				this.submit(executor, permits, chunk, lineCount - chunk.size() + 2, violations, failure, checkers);
+				chunk = new ArrayList<StudyOrAssayTableObject>(CHUNK_LINES);
+				if (failure.get() != null)
+					break;
+			}
+			if (!chunk.isEmpty())
+				this.submit(executor, permits, chunk, lineCount - chunk.size() + 2, violations, failure, checkers);
+		} finally {
+			shutdown(executor);
+		}
+		if (failure.get() != null)
+			rethrow(failure.get());
+		logger.debug("{}: Checked {} lines, found {} violations", this, lineCount, violations.count);
+		return new Report(lineCount, violations);
+	}
+
+	/**
+	 * Checks the lines of an existing Study or Assay File on the given number of
+	 * threads. If the header line differs from the layout, this is reported and
+	 * the lines are checked against the header line of the file. Every thread
+	 * reads its own part of the file, so the file is never held in memory.
+	 *
+	 * Apart from the header line, the file is read as bytes and only the cells of
+	 * every line are counted, which is what
+	 * {@link WideTableFileReader#readLine()} relies on.
+	 *
+	 * @param file    the file to check
+	 * @param threads number of threads to check lines with
+	 * @return the report
+	 * @throws IOException if the file cannot be read
+	 */
+	public Report validate(Path file, int threads) throws IOException {
+		Objects.requireNonNull(file, "File cannot be null");
+		RowPlan filePlan;
+		try (WideTableFileReader reader = new WideTableFileReader(file)) {
+			filePlan = new RowPlan(reader, reader.getHeaders());
+		}
+		Violations violations = new Violations(this.maximumViolations);
+		String difference = this.headerDifference(filePlan.getHeaderLine());
+		if (difference != null)
+			violations.add(1, Kind.HEADER, difference);
+
+		ExecutorService executor = this.newExecutor(threads);
+		List<Future<RangeResult>> ranges = new ArrayList<Future<RangeResult>>();
+		long lineCount = 0;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long dataStart = headerEnd(channel);
+			long dataSize = channel.size() - dataStart;
+			// Several ranges per thread even out differences in speed, but every range is read in whole buffers
+			long rangeCount = Math.max(1, Math.min(threads * 4L, dataSize / READ_BUFFER_SIZE));
+			int columns = filePlan.columnCount();
+			for (long range = 0; range < rangeCount; range++) {
+				long from = dataStart + dataSize * range / rangeCount;
+				long to = dataStart + dataSize * (range + 1) / rangeCount;
+				Callable<RangeResult> task = () -> this.checkRange(channel, from, to, dataStart, columns);
+				ranges.add(executor.submit(task));
+			}
+			// The header is line 1
+			long lineOffset = 1;
+			for (Future<RangeResult> range : ranges) {
+				RangeResult result = range.get();
+				violations.addAll(result.violations, lineOffset);
+				lineOffset += result.lines;
+				lineCount += result.checkedLines;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for lines to be checked");
+		} catch (ExecutionException e) {
+			rethrow(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		logger.debug("{}: Checked {} lines of {}, found {} violations", this, lineCount, file, violations.count);
+		return new Report(lineCount, violations);
+	}
+
+}
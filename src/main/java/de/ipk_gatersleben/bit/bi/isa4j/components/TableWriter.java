@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.IOException;
+
+/**
+ * Writes the lines of the Study and Assay Files when a whole
+ * {@link Investigation} is written with
+ * {@link Investigation#writeArchive(String, TableWriter)}. It is called for
+ * several files at once from different threads.
+ */
+@FunctionalInterface
+public interface TableWriter {
+
+	/**
+	 * Writes the lines of a file, e.g. with
+	 * {@link WideTableFile#writeLine(StudyOrAssayTableObject)}. The file is open
+	 * for writing and is closed afterwards.
+	 * 
+	 * @param file the {@link Study} or {@link Assay} to write the lines of
+	 * @throws IOException if writing fails
+	 */
+	void writeLines(WideTableFile file) throws IOException;
+
+}
@@ -7,21 +7,55 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
+import java.io.IOException;
 import java.util.Objects;
 
+import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
+
+/**
+ * A value of a category, e.g. of a {@link Factor} or a
+ * {@link ProtocolParameter}. Numbers are kept as double or long and only
+ * turned into text when they are written, so that they need no
+ * {@link OntologyAnnotation} and String until then.
+ */
 abstract class Value<T> {
+
+	/**
+	 * How {@link Value#number} is to be read
+	 */
+	private enum NumberType {
+		DOUBLE, LONG
+	}
+
 	private T category;
+
+	/**
+	 * The number if numberType is set, for doubles as raw long bits
+	 */
+	private long number;
+
+	/**
+	 * null if the value is held by the annotation
+	 */
+	private NumberType numberType;
 	
 	private OntologyAnnotation unit;
 	
 	private OntologyAnnotation value;
+
+	/**
+	 * The lists indexing this Value by its category, see {@link KeyedList}
+	 */
+	private IndexingLists indexingLists = null;
 	
 	public Value(T category, double value) {
 		this(category, value, null);
 	}
 	
 	public Value(T category, double value, OntologyAnnotation unit) {
-		this(category, new OntologyAnnotation(String.valueOf(value), null, null), unit);
+		this.setCategory(category);
+		this.setValue(value);
+		this.setUnit(unit);
 	}
 	
 	public Value(T category, OntologyAnnotation value) {
@@ -51,21 +85,65 @@ abstract class Value<T> {
 	}
 	
 	/**
+	 * A number is returned as a new annotation with the formatted number as term
+	 * on every call. The value stays a number, so changes to that annotation are
+	 * not kept; use {@link #setValue(OntologyAnnotation)} instead.
+	 * 
 	 * @return the value
 	 */
 	public OntologyAnnotation getValue() {
+		if (this.numberType != null)
+			return new OntologyAnnotation(this.getValueTerm(), null, null);
 		return value;
 	}
 
+	/**
+	 * @return the term of the value, formatted from the number if the value is a
+	 *         number
+	 */
+	String getValueTerm() {
+		if (this.numberType == NumberType.DOUBLE)
+			return StringUtil.formatNumber(Double.longBitsToDouble(this.number));
+		if (this.numberType == NumberType.LONG)
+			return String.valueOf(this.number);
+		return this.value.getTerm();
+	}
+
+	/**
+	 * @return the number of cells the value takes in a Study or Assay File, not
+	 *         counting the unit
+	 */
+	int getValueWidth() {
+		return this.numberType == null ? StudyOrAssayTableObject.ontologyAnnotationWidth(this.value) : 1;
+	}
+
 	public boolean hasUnit() {
 		return !(this.unit == null);
 	}
+
+	/**
+	 * @return true if the value is held as a number and has no accession number
+	 *         or ontology
+	 */
+	public boolean isNumeric() {
+		return this.numberType != null;
+	}
 	
+	/**
+	 * @return the lists indexing this Value, created if necessary
+	 */
+	IndexingLists indexingLists() {
+		if (this.indexingLists == null)
+			this.indexingLists = new IndexingLists();
+		return this.indexingLists;
+	}
+
 	/**
 	 * @param category the category to set
 	 */
 	public void setCategory(T category) {
-		this.category = Objects.requireNonNull(category, "Category cannot be null");
+		this.category = IndexingLists.changeKey(this.indexingLists, this.category,
+				Objects.requireNonNull(category, "Category cannot be null"));
 	}
 	
 	/**
@@ -75,8 +153,20 @@ abstract class Value<T> {
 		this.unit = unit;
 	}
 
+	public void setValue(double value) {
+		this.number = Double.doubleToRawLongBits(value);
+		this.numberType = NumberType.DOUBLE;
+		this.value = null;
+	}
+
 	public void setValue(int value) {
-		this.value = new OntologyAnnotation(String.valueOf(value), null, null);
+		this.setValue((long) value);
+	}
+
+	public void setValue(long value) {
+		this.number = value;
+		this.numberType = NumberType.LONG;
+		this.value = null;
 	}
 
 	/**
@@ -84,10 +174,24 @@ abstract class Value<T> {
 	 */
 	public void setValue(OntologyAnnotation value) {
 		this.value = Objects.requireNonNull(value, "Value cannot be null");
+		this.numberType = null;
 	}
 	
 	public void setValue(String value) {
-		this.value = new OntologyAnnotation(Objects.requireNonNull(value, "Value cannot be null"), null, null);
+		this.setValue(new OntologyAnnotation(Objects.requireNonNull(value, "Value cannot be null"), null, null));
+	}
+
+	/**
+	 * Passes the number to visitor without formatting it, only for numeric values
+	 * 
+	 * @param visitor receives the cell
+	 * @throws IOException if the visitor fails
+	 */
+	void visitNumber(FieldVisitor visitor) throws IOException {
+		if (this.numberType == NumberType.DOUBLE)
+			visitor.cell(Double.longBitsToDouble(this.number));
+		else
+			visitor.cell(this.number);
 	}
 
 }
@@ -7,16 +7,28 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
+import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -24,19 +36,85 @@ import org.slf4j.LoggerFactory;
 
 import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
 import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+import de.ipk_gatersleben.bit.bi.isa4j.util.ChannelWriter;
+import de.ipk_gatersleben.bit.bi.isa4j.util.CompressionCodec;
 import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
 
 public abstract class WideTableFile implements Commentable {
 
-	private CommentCollection comments = new CommentCollection();
+	/**
+	 * Number of chars of lines from a {@link ColumnBatch} that are collected
+	 * before they are written
+	 */
+	private static final int COLUMNS_CHUNK_SIZE = 64 * 1024;
+
+	private CommentCollection comments = null;
 
 	private String fileName;
 
+	/**
+	 * The lists indexing this file by its file name and, for a Study, by its
+	 * identifier, see {@link KeyedList}
+	 */
+	IndexingLists indexingLists = null;
+
 	private ArrayList<LinkedHashMap<String, String[]>> headers = null;
 
+	/**
+	 * Reusable buffers for assembling lines before they are written
+	 */
+	private char[] charBuffer = new char[1024];
+	private final StringBuilder lineBuffer = new StringBuilder(1024);
+
 	private final Logger logger = LoggerFactory.getLogger(WideTableFile.class);
 	
-	private OutputStreamWriter outputstreamwriter;
+	/**
+	 * Either an {@link OutputStreamWriter} around a user supplied stream or a
+	 * {@link ChannelWriter} around a file or user supplied channel
+	 */
+	private Writer writer;
+
+	/**
+	 * The parallel writer currently writing to this file, if any
+	 */
+	private ParallelLineWriter parallelLineWriter = null;
+
+	/**
+	 * The background writer currently writing to this file, if any. It is cleared
+	 * by the background thread.
+	 */
+	private volatile AsyncLineWriter asyncLineWriter = null;
+
+	/**
+	 * Layout compiled from the headers and the serializer writing every line along it
+	 */
+	private RowPlan rowPlan = null;
+	private LineSerializer lineSerializer = null;
+
+	/**
+	 * The file opened with {@link #openFile(int)} or
+	 * {@link #openFileForAppend(int)}, null for any other output
+	 */
+	private Path outputPath = null;
+
+	/**
+	 * Size of the file before lines were appended to it, 0 if it is written from
+	 * the start
+	 */
+	private long appendOffset = 0;
+
+	/**
+	 * The header cells of the file lines are appended to. The headers passed to
+	 * {@link #writeHeaders(List)} are checked against them instead of being written.
+	 */
+	private String[] appendedHeader = null;
+
+	/**
+	 * Collects the lines for the row index of the file, if one was enabled
+	 */
+	private RowIndex.Builder rowIndex = null;
+
+	private boolean wroteLines = false;
 	
 	/**
 	 * Constructor, give the filename
@@ -47,22 +125,142 @@ public abstract class WideTableFile implements Commentable {
 		this.setFileName(fileName);
 	}
 
+	void asyncLineWriterClosed(AsyncLineWriter asyncLineWriter) {
+		if (this.asyncLineWriter == asyncLineWriter)
+			this.asyncLineWriter = null;
+	}
+
+	private void checkNoOutput() {
+		if (this.writer != null) {
+			throw new IllegalStateException(
+					"A file or stream is already being written to. Please close/release it first!");
+		}
+	}
+
+	private void checkNoLineWriter() {
+		if (this.parallelLineWriter != null)
+			throw new IllegalStateException("Lines are being written in parallel. Please close the ParallelLineWriter first!");
+		if (this.asyncLineWriter != null)
+			throw new IllegalStateException("Lines are being written in the background. Please close the AsyncLineWriter first!");
+	}
+
 	/**
-	 * Closes the file and forgets all headers.
+	 * Closes the file and forgets all headers. If a row index was enabled, it is
+	 * written next to the file.
 	 * 
 	 * @throws IOException is unable to close file
 	 */
 	public void closeFile() throws IOException {
+		this.checkNoLineWriter();
 		logger.debug("{}: Closing output file.", this);
-		this.outputstreamwriter.close();
-		this.outputstreamwriter = null;
-		this.headers = null;
+		this.writer.close();
+		this.writeRowIndex();
+		this.resetOutput();
+	}
+
+	/**
+	 * Creates a template for lines that only differ from a prototype in a few
+	 * cells, see {@link LineTemplate}. The headers must have been written before,
+	 * e.g. from the prototype.
+	 * 
+	 * @param prototype the first object of a line with the cells all lines share
+	 * @param columns   the ascending indexes of the columns that differ between
+	 *                  lines, see {@link #getColumnIndex(int, String)}
+	 * @return the template to write lines with {@link #writeLine(LineTemplate)}
+	 * @throws IOException if the prototype cannot be serialized
+	 */
+	public LineTemplate createLineTemplate(StudyOrAssayTableObject prototype, int... columns) throws IOException {
+		if (!this.hasWrittenHeaders())
+			throw new IllegalStateException("Headers must be written before creating a line template");
+		StringBuilder line = new StringBuilder();
+		new LineSerializer(this.rowPlan).appendLine(prototype, line);
+		return new LineTemplate(this.rowPlan, line.toString(), columns);
+	}
+
+	/**
+	 * Closes the file once all lines are written. If an {@link AsyncLineWriter}
+	 * is open, this returns right away and the file is closed by its background
+	 * thread after the lines submitted so far. Otherwise the file is closed
+	 * before this returns, like with {@link #closeFile()}.
+	 * 
+	 * @return completed once the file is closed, or completed exceptionally with
+	 *         the error that occurred while writing the lines or closing the file
+	 * @throws IOException if the file cannot be closed right away
+	 */
+	public Future<Void> closeFileAsync() throws IOException {
+		AsyncLineWriter asyncLineWriter = this.asyncLineWriter;
+		if (asyncLineWriter != null)
+			return asyncLineWriter.finish(true);
+		this.closeFile();
+		return CompletableFuture.completedFuture(null);
 	}
 
 	public CommentCollection comments() {
+		if (this.comments == null)
+			this.comments = new CommentCollection();
 		return this.comments;
 	}
 
+	public CommentCollection commentsOrEmpty() {
+		return this.comments == null ? CommentCollection.EMPTY : this.comments;
+	}
+
+	/**
+	 * Builds a {@link RowIndex} over the first column (Source Name, Sample Name
+	 * etc.) while the lines are written, see {@link #enableRowIndex(int)}.
+	 * 
+	 * @throws IOException if the index of the lines already in the file cannot be
+	 *                     read
+	 */
+	public void enableRowIndex() throws IOException {
+		this.enableRowIndex(0);
+	}
+
+	/**
+	 * Builds a {@link RowIndex} over a column while the lines are written. The
+	 * index is written when the file is closed. It must be enabled before the
+	 * first line is written to a file opened with {@link #openFile()} or
+	 * {@link #openFileForAppend()}. When lines are appended, the index written
+	 * with the lines that are already in the file is extended, so it must be up
+	 * to date.
+	 * 
+	 * @param column the index of the column, see {@link #getColumnIndex(int, String)}
+	 * @throws IOException if the index of the lines already in the file cannot be
+	 *                     read
+	 */
+	public void enableRowIndex(int column) throws IOException {
+		if (this.outputPath == null)
+			throw new IllegalStateException("A row index can only be built for files opened with openFile or openFileForAppend");
+		this.checkNoLineWriter();
+		if (this.wroteLines)
+			throw new IllegalStateException("A row index must be enabled before lines are written");
+		if (column < 0 || (this.rowPlan != null && column >= this.rowPlan.columnCount()))
+			throw new IllegalArgumentException("No column " + column + " to index");
+
+		RowIndex.Builder rowIndex = new RowIndex.Builder(column);
+		// The lines already in the file are taken from its index, the file itself is not read
+		if (this.appendOffset > 0)
+			rowIndex.addAll(new RowIndex(this.outputPath));
+		this.rowIndex = rowIndex;
+		logger.debug("{}: Indexing lines by column {}.", this, column);
+	}
+
+	/**
+	 * Finds the column of a header group, e.g. for filling a {@link ColumnBatch}.
+	 * 
+	 * @param position the position of the object in a line, e.g. 0 for the Source
+	 *                 and 2 for the Sample in Source -&gt; Process -&gt; Sample
+	 * @param groupKey the key of the header group as in the headers, e.g.
+	 *                 "Characteristics[Organism]"
+	 * @return the index of the first column of the group, -1 if there is no such
+	 *         group
+	 */
+	public int getColumnIndex(int position, String groupKey) {
+		if (!this.hasWrittenHeaders())
+			throw new IllegalStateException("No headers have been written yet");
+		return this.rowPlan.columnIndex(position, groupKey);
+	}
+
 	/**
 	 * Get filename of study
 	 *
@@ -72,6 +270,13 @@ public abstract class WideTableFile implements Commentable {
 		return fileName;
 	}
 
+	/**
+	 * @return the plan compiled from the headers, null if no headers were written yet
+	 */
+	RowPlan getRowPlan() {
+		return this.rowPlan;
+	}
+
 	/**
 	 * Returns true if headers have already been written to file/stream. Can be used
 	 * within a loop to make sure headers are exactly written once
@@ -82,50 +287,335 @@ public abstract class WideTableFile implements Commentable {
 		return this.headers != null;
 	}
 
+	/**
+	 * Concatenates the shards written with
+	 * {@link #openShardedWriter(ShardedWriter.Sharding)} into this file, see
+	 * {@link ShardedWriter#merge(Path, boolean)}.
+	 * 
+	 * @param deleteShards true if the shards and manifests are to be deleted afterwards
+	 * @return the number of lines of the file, without header
+	 * @throws IOException if the shards cannot be merged
+	 */
+	public long mergeShards(boolean deleteShards) throws IOException {
+		this.checkNoOutput();
+		return ShardedWriter.merge(Paths.get(this.fileName), deleteShards);
+	}
+
+	/**
+	 * Opens the file for writing. Lines are encoded into a byte buffer of
+	 * {@link ChannelWriter#DEFAULT_BUFFER_SIZE} bytes which is written to the file
+	 * channel whenever it is full.
+	 * 
+	 * @throws FileNotFoundException if the file cannot be opened
+	 */
 	public void openFile() throws FileNotFoundException {
+		this.openFile(ChannelWriter.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens the file for writing with a buffer of the given size.
+	 * 
+	 * @param bufferSize size of the byte buffer in bytes
+	 * @throws FileNotFoundException if the file cannot be opened
+	 */
+	public void openFile(int bufferSize) throws FileNotFoundException {
 		logger.debug("{}: Directing output to File '{}'.", this, this.fileName);
-		this.setOutputStream(new FileOutputStream(this.fileName));
+		this.setOutputChannel(new FileOutputStream(this.fileName).getChannel(), bufferSize);
+		this.outputPath = Paths.get(this.fileName);
+	}
+
+	/**
+	 * Opens the file for appending lines to it, see {@link #openFileForAppend(int)}.
+	 * 
+	 * @throws IOException if the file cannot be opened or does not end with a
+	 *                     complete line
+	 */
+	public void openFileForAppend() throws IOException {
+		this.openFileForAppend(ChannelWriter.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens the file for appending lines to it, e.g. to add the plants of another
+	 * day to an existing Study File. Only the header line is read from the file:
+	 * instead of writing the headers, they are checked against it, and an
+	 * {@link IllegalStateException} is thrown by
+	 * {@link #writeHeadersFromExample(StudyOrAssayTableObject)} or the first
+	 * {@link #writeLine(StudyOrAssayTableObject)} if the lines do not fit it. If
+	 * the file does not exist or is empty, it is written like with
+	 * {@link #openFile(int)}.
+	 * 
+	 * @param bufferSize size of the byte buffer in bytes
+	 * @throws IOException if the file cannot be opened or does not end with a
+	 *                     complete line
+	 */
+	public void openFileForAppend(int bufferSize) throws IOException {
+		this.checkNoOutput();
+		Path path = Paths.get(this.fileName);
+		long size = Files.exists(path) ? Files.size(path) : 0;
+		String[] header = size > 0 ? readHeader(path, size) : null;
+
+		logger.debug("{}: Appending output to File '{}' of {} bytes.", this, this.fileName, size);
+		this.setOutputChannel(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND), bufferSize);
+		this.outputPath = path;
+		this.appendOffset = size;
+		this.appendedHeader = header;
+	}
+
+	/**
+	 * Opens a file and wraps it in the compression of codec. The file is closed
+	 * again if the compressed stream cannot be started.
+	 */
+	static OutputStream openCompressed(String path, CompressionCodec codec) throws IOException {
+		FileOutputStream os = new FileOutputStream(path);
+		try {
+			return codec.compress(os);
+		} catch (IOException | RuntimeException e) {
+			try {
+				os.close();
+			} catch (IOException closeFailure) {
+				e.addSuppressed(closeFailure);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens the file for writing compressed output. The file name has to end with
+	 * the suffix of the codec (e.g. ".gz"), so that the Investigation File refers
+	 * to the compressed file.
+	 * 
+	 * @param codec the compression to use, e.g. {@link de.ipk_gatersleben.bit.bi.isa4j.util.GzipCodec}
+	 * @throws IOException if the file cannot be opened
+	 * @throws IllegalStateException if the file name does not end with the suffix of the codec
+	 */
+	public void openFile(CompressionCodec codec) throws IOException {
+		Objects.requireNonNull(codec, "Compression codec cannot be null");
+		this.checkNoOutput();
+		if (!this.fileName.endsWith(codec.getFileSuffix()))
+			throw new IllegalStateException(this + ": File name '" + this.fileName + "' has to end with '"
+					+ codec.getFileSuffix() + "' to be compressed with " + codec.getName());
+		logger.debug("{}: Directing output to File '{}' compressed with {}.", this, this.fileName, codec);
+		this.setOutputChannel(Channels.newChannel(openCompressed(this.fileName, codec)));
+	}
+
+	/**
+	 * Starts writing lines in a background thread, see {@link AsyncLineWriter}.
+	 * Until the returned writer is closed (or {@link #closeFileAsync()} is
+	 * called), {@link #writeLine(StudyOrAssayTableObject)} submits lines to it and
+	 * no other lines, columns or templates can be written.
+	 * 
+	 * @param capacity     the number of lines that can wait to be written
+	 * @param backpressure what happens when that many lines are waiting
+	 * @return the writer to submit lines to
+	 */
+	public AsyncLineWriter openAsyncLineWriter(int capacity, AsyncLineWriter.Backpressure backpressure) {
+		if (this.writer == null)
+			throw new IllegalStateException("No file or stream open for writing");
+		this.checkNoLineWriter();
+		this.asyncLineWriter = new AsyncLineWriter(this, capacity, backpressure);
+		return this.asyncLineWriter;
+	}
+
+	/**
+	 * Starts writing lines with several threads, see {@link ParallelLineWriter}.
+	 * Until the returned writer is closed, no lines can be written with
+	 * {@link #writeLine(StudyOrAssayTableObject)} and the file cannot be closed or
+	 * released.
+	 * 
+	 * @param threads   the number of threads serializing lines
+	 * @param keepOrder true if lines are to be written in the order they are submitted
+	 * @return the writer to submit lines to
+	 */
+	public ParallelLineWriter openParallelLineWriter(int threads, boolean keepOrder) {
+		if (this.writer == null)
+			throw new IllegalStateException("No file or stream open for writing");
+		this.checkNoLineWriter();
+		this.parallelLineWriter = new ParallelLineWriter(this, threads, keepOrder);
+		return this.parallelLineWriter;
+	}
+
+	/**
+	 * Starts writing lines to several part files next to this file, see
+	 * {@link ShardedWriter}. The file itself does not need to be open.
+	 * 
+	 * @param sharding which part file a line is written to
+	 * @return the writer to write lines with
+	 */
+	public ShardedWriter openShardedWriter(ShardedWriter.Sharding sharding) {
+		return new ShardedWriter(Paths.get(this.fileName), sharding, null);
+	}
+
+	/**
+	 * Starts writing lines to several part files next to this file, alongside
+	 * other writers (e.g. in other processes) with different writer ids.
+	 * 
+	 * @param sharding which part file a line is written to
+	 * @param writerId the id of the writer, part of the names of its shards and manifest
+	 * @return the writer to write lines with
+	 */
+	public ShardedWriter openShardedWriter(ShardedWriter.Sharding sharding, String writerId) {
+		Objects.requireNonNull(writerId, "Writer id cannot be null");
+		return new ShardedWriter(Paths.get(this.fileName), sharding, writerId);
+	}
+
+	void parallelLineWriterClosed(ParallelLineWriter parallelLineWriter) {
+		if (this.parallelLineWriter == parallelLineWriter)
+			this.parallelLineWriter = null;
+	}
+
+	/**
+	 * Reads the header line of a file that lines are appended to and makes sure
+	 * that the last line is complete.
+	 * 
+	 * @return the header cells without enclosing double quotes
+	 */
+	private static String[] readHeader(Path path, long size) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer last = ByteBuffer.allocate(1);
+			channel.read(last, size - 1);
+			if (last.get(0) != '\n')
+				throw new IOException(path + " does not end with a line break, its last line may be incomplete");
+		}
+		String line;
+		try (BufferedReader reader = Files.newBufferedReader(path, Props.DEFAULT_CHARSET)) {
+			line = reader.readLine();
+		}
+		String[] cells = line.split(Symbol.TAB.toString(), -1);
+		for (int i = 0; i < cells.length; i++)
+			cells[i] = WideTableFileReader.unquote(cells[i], 0, cells[i].length());
+		return cells;
 	}
 
 	public void releaseStream() throws IOException {
+		this.checkNoLineWriter();
 		logger.debug("{}: Releasing output stream.", this);	
-		this.outputstreamwriter.flush();
-		this.outputstreamwriter = null;
+		this.writer.flush();
+		this.writeRowIndex();
+		this.resetOutput();
+	}
+
+	/**
+	 * Forgets the output and everything written to it
+	 */
+	private void resetOutput() {
+		this.writer = null;
 		this.headers = null;
+		this.rowPlan = null;
+		this.lineSerializer = null;
+		this.outputPath = null;
+		this.appendOffset = 0;
+		this.appendedHeader = null;
+		this.rowIndex = null;
+		this.wroteLines = false;
+	}
+
+	/**
+	 * @return the lists indexing this file, created if necessary
+	 */
+	IndexingLists indexingLists() {
+		if (this.indexingLists == null)
+			this.indexingLists = new IndexingLists();
+		return this.indexingLists;
 	}
 
 	/**
 	 * @param fileName the fileName to set
 	 */
 	public void setFileName(String fileName) {
-		this.fileName = StringUtil.sanitize(Objects.requireNonNull(fileName, "Filename cannot be null"));
+		this.fileName = IndexingLists.changeKey(this.indexingLists, this.fileName,
+				StringUtil.sanitize(Objects.requireNonNull(fileName, "Filename cannot be null")));
+	}
+
+	/**
+	 * Directs the output to a channel, e.g. a {@link java.nio.channels.FileChannel}
+	 * or a {@link java.nio.channels.SocketChannel}. Like a stream, the channel is
+	 * only closed by {@link #closeFile()}, not by {@link #releaseStream()}.
+	 * 
+	 * @param channel the channel to write to
+	 */
+	public void setOutputChannel(WritableByteChannel channel) {
+		this.setOutputChannel(channel, ChannelWriter.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Directs the output to a channel, buffering up to bufferSize bytes before
+	 * they are written to it.
+	 * 
+	 * @param channel    the channel to write to
+	 * @param bufferSize size of the byte buffer in bytes
+	 */
+	public void setOutputChannel(WritableByteChannel channel, int bufferSize) {
+		this.checkNoOutput();
+		this.writer = new ChannelWriter(channel, bufferSize);
 	}
 
 	public void setOutputStream(OutputStream os) {
-		if (this.outputstreamwriter != null) {
-			throw new IllegalStateException(
-					"A file or stream is already being written to. Please close/release it first!");
+		this.checkNoOutput();
+		this.writer = new OutputStreamWriter(os, Props.DEFAULT_CHARSET);
+	}
+
+	/**
+	 * Writes lines given as columns. The headers must have been written before.
+	 * 
+	 * @param batch the lines to write
+	 * @throws IOException if writing to the file or stream fails
+	 */
+	public void writeColumns(ColumnBatch batch) throws IOException {
+		if (this.writer == null)
+			throw new IllegalStateException("No file or stream open for writing");
+		this.checkNoLineWriter();
+		if (!this.hasWrittenHeaders())
+			throw new IllegalStateException("Headers must be written before columns");
+		if (batch.getColumnCount() != this.rowPlan.columnCount())
+			throw new IllegalStateException("Batch has " + batch.getColumnCount() + " columns, but the header has "
+					+ this.rowPlan.columnCount());
+		if (batch.missingColumn() >= 0)
+			throw new IllegalStateException("Column " + batch.missingColumn() + " of the batch was not set");
+
+		this.lineBuffer.setLength(0);
+		for (int line = 0; line < batch.getSize(); line++) {
+			batch.appendLine(this.lineBuffer, line);
+			this.lineBuffer.append(Symbol.ENTER.toString());
+			if (this.lineBuffer.length() >= COLUMNS_CHUNK_SIZE) {
+				this.writeBuffer(this.lineBuffer);
+				this.lineBuffer.setLength(0);
+			}
 		}
-		this.outputstreamwriter = new OutputStreamWriter(os, Props.DEFAULT_CHARSET);
+		this.writeBuffer(this.lineBuffer);
 	}
 
 	public void writeHeadersFromExample(StudyOrAssayTableObject example) throws IOException {
-		if (this.outputstreamwriter == null)
+		ArrayList<LinkedHashMap<String, String[]>> headers = new ArrayList<LinkedHashMap<String, String[]>>();
+		while (example != null) {
+			headers.add(example.getHeaders());
+			example = example.getNextStudyOrAssayTableObject();
+		}
+		this.writeHeaders(headers);
+	}
+
+	/**
+	 * Writes the headers for lines of objects as they are returned by
+	 * {@link StudyOrAssayTableObject#getHeaders()}: one map per object in the
+	 * line, from the keys of its header groups to their columns, e.g. for a Source
+	 * { "Source Name" =&gt; ["Source Name"], "Characteristics[Organism]" =&gt;
+	 * ["Characteristics[Organism]", "Term Source REF", "Term Accession Number"] }.
+	 * Useful to declare the layout of lines written with
+	 * {@link #writeColumns(ColumnBatch)}.
+	 * 
+	 * @param headers the header groups of the objects in a line
+	 * @throws IOException if writing to the file or stream fails
+	 */
+	public void writeHeaders(List<LinkedHashMap<String, String[]>> headers) throws IOException {
+		if (this.writer == null)
 			throw new IllegalStateException("No file or stream open for writing");
 		if (this.hasWrittenHeaders())
 			throw new IllegalStateException("Headers were already written to this file or stream");
 
-		this.headers = new ArrayList<LinkedHashMap<String, String[]>>();
-		StringBuilder sb = new StringBuilder();
-		while (example != null) {
-			LinkedHashMap<String, String[]> headers = example.getHeaders();
-			this.headers.add(headers);
-			sb.append(headers.values().stream().map(o -> String.join(Symbol.TAB.toString(), o))
-					.collect(Collectors.joining(Symbol.TAB.toString())));
-			example = example.getNextStudyOrAssayTableObject();
-			if (example != null)
-				sb.append(Symbol.TAB.toString());
-		}
+		this.headers = new ArrayList<LinkedHashMap<String, String[]>>(headers);
+		// Compile the headers once into the plan every following line is written with
+		this.rowPlan = new RowPlan(this, this.headers);
+		this.lineSerializer = new LineSerializer(this.rowPlan);
 		
 		logger.debug("{}: Writing these headers to output: [{}]", this,
 			this.headers.stream().map(
@@ -134,12 +624,50 @@ public abstract class WideTableFile implements Commentable {
 				.collect(Collectors.joining(", ")) + "}")
 			.collect(Collectors.joining(", ")));
 		
-		this.outputstreamwriter.write(sb.toString() + Symbol.ENTER);
+		if (this.appendedHeader != null) {
+			this.checkAppendedHeader();
+			return;
+		}
+		this.writer.write(this.rowPlan.getHeaderLine());
+		this.writer.write(Symbol.ENTER.toString());
+	}
+
+	/**
+	 * Makes sure that the headers just compiled are the ones of the file lines are
+	 * appended to. Otherwise they are forgotten again.
+	 */
+	private void checkAppendedHeader() {
+		String[] columns = this.rowPlan.getHeaderLine().split(Symbol.TAB.toString(), -1);
+		String mismatch = null;
+		if (columns.length != this.appendedHeader.length) {
+			mismatch = "the file has " + this.appendedHeader.length + " columns, the lines have " + columns.length;
+		} else {
+			for (int column = 0; column < columns.length; column++) {
+				if (!columns[column].equals(this.appendedHeader[column])) {
+					mismatch = "column " + column + " is " + this.appendedHeader[column] + " in the file, but "
+							+ columns[column] + " in the lines";
+					break;
+				}
+			}
+		}
+		if (mismatch != null) {
+			this.headers = null;
+			this.rowPlan = null;
+			this.lineSerializer = null;
+			throw new IllegalStateException("Lines do not fit the header of " + this.fileName + ": " + mismatch);
+		}
+		logger.debug("{}: Headers match the file the lines are appended to.", this);
 	}
 
 	public void writeLine(StudyOrAssayTableObject initiator) throws IOException {
-		if (this.outputstreamwriter == null)
+		if (this.writer == null)
 			throw new IllegalStateException("No file or stream open for writing");
+		AsyncLineWriter asyncLineWriter = this.asyncLineWriter;
+		if (asyncLineWriter != null) {
+			asyncLineWriter.submit(initiator);
+			return;
+		}
+		this.checkNoLineWriter();
 		
 		// If headers have not been written yet, write them from this row.
 		// This would happen with the first row or if the user has manually called "writeHeadersFromExample"
@@ -147,11 +675,7 @@ public abstract class WideTableFile implements Commentable {
 			this.writeHeadersFromExample(initiator);
 		}
 
-		StringBuilder sb = new StringBuilder();
-		StudyOrAssayTableObject currentObject = initiator;
-		// Loop through header groups and objects at the same time (see below where
-		// currentObject = currentObject.getNextStudyOrAssayTableObject();
-		// each header group corresponds to one object (Sample, Process ...)
+		// Walk the compiled plan: each header group corresponds to one object (Sample, Process ...)
 		// So a header group for a Source could for example look like this:
 		// {
 		// "Source Name" => ["Source Name"],
@@ -159,36 +683,53 @@ public abstract class WideTableFile implements Commentable {
 		// REF", "Term Accession Number"],
 		// "Characteristic[Genotype]" => ["Characteristic [Genotype]"]
 		// }
-		for (LinkedHashMap<String, String[]> currentHeaderGroup : this.headers) {
-			// This happens if we have header groups left but no more currentObjects in the
-			// line
-			Objects.requireNonNull(currentObject,
-					"This line contains fewer objects (Sources, Samples, Processes...) than were defined in the header."
-							+ "\n Please make sure your line structure is uniform (e.g. Sample->Process->Material->Process->DataFile for ALL lines) and everything is linked with Processes correctly.");
-
-			Map<String, String[]> fields = currentObject.getFields();
-
-			sb.append(currentHeaderGroup.keySet().stream().map(o -> {
-				if (currentHeaderGroup.get(o).length != fields.get(o).length)
-					throw new IllegalStateException("Object has "
-							+ (currentHeaderGroup.get(o).length > fields.get(o).length ? "fewer" : "more")
-							+ "columns than header for " + o
-							+ "\n Please make sure that every object contains the same information as the first line (or the examplary objects that were manually passed to writeHeadersFromExample)."
-							+ "This error mostly occurs when only some objects of the same column (e.g. a specific Process ParameterValue) have Term Source Refs and Term Accession numbers.");
-				String partOfLine = String.join(Symbol.TAB.toString(), fields.get(o));
-				// Now we delete the entry from fields so that we know when there's any left in
-				// the end, we are missing headers
-				fields.remove(o);
-				return partOfLine;
-			}).collect(Collectors.joining(Symbol.TAB.toString())));
-
-			if(fields.size() > 0)
-				logger.warn("{}: There were fields for Object {} that had no corresponding header. They were ignored: {}", this, currentObject, String.join(", ", fields.keySet()));
-			
-			currentObject = currentObject.getNextStudyOrAssayTableObject();
-			if (currentObject != null)
-				sb.append(Symbol.TAB.toString());
-		}
-		this.outputstreamwriter.write(sb.toString() + Symbol.ENTER);
+		// and the plan knows the order of these keys and how many columns each spans.
+		// The objects push their cells directly into the line buffer.
+		this.lineBuffer.setLength(0);
+		this.lineSerializer.appendLine(initiator, this.lineBuffer);
+		this.writeBuffer(this.lineBuffer);
+	}
+
+	/**
+	 * Writes a line from a template with the current values of its slots.
+	 * 
+	 * @param template the template, created for this file and its current headers
+	 * @throws IOException if writing to the file or stream fails
+	 */
+	public void writeLine(LineTemplate template) throws IOException {
+		if (this.writer == null)
+			throw new IllegalStateException("No file or stream open for writing");
+		this.checkNoLineWriter();
+		if (template.getPlan() != this.rowPlan)
+			throw new IllegalStateException("Line template was not created for the current headers of this file");
+		this.lineBuffer.setLength(0);
+		template.appendLine(this.lineBuffer);
+		this.writeBuffer(this.lineBuffer);
+	}
+
+	/**
+	 * Hands the content of a buffer to the writer through a reusable char array,
+	 * so that no intermediate String is created for the lines.
+	 */
+	void writeBuffer(StringBuilder buffer) throws IOException {
+		int length = buffer.length();
+		if (this.rowIndex != null)
+			this.rowIndex.addLines(buffer, length, this.appendOffset + ((ChannelWriter) this.writer).position());
+		this.wroteLines |= length > 0;
+		if (this.charBuffer.length < length)
+			this.charBuffer = new char[Math.max(length, this.charBuffer.length * 2)];
+		buffer.getChars(0, length, this.charBuffer, 0);
+		this.writer.write(this.charBuffer, 0, length);
+	}
+
+	/**
+	 * Writes the row index, if one was enabled, once all lines are written
+	 */
+	private void writeRowIndex() throws IOException {
+		if (this.rowIndex == null)
+			return;
+		Path indexFile = RowIndex.indexFile(this.outputPath);
+		logger.debug("{}: Writing row index to '{}'.", this, indexFile);
+		this.rowIndex.write(indexFile, this.appendOffset + ((ChannelWriter) this.writer).position());
 	}
 }
@@ -0,0 +1,491 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+/**
+ * Reads Study and Assay Files line by line. The header line is split into the
+ * same header groups that
+ * {@link WideTableFile#writeHeadersFromExample(StudyOrAssayTableObject)}
+ * produces, one map per object of a line. A column named "Source Name",
+ * "Sample Name" or "Protocol REF", or any other column ending in " Name" or
+ * " File", starts a new object, "Term Source REF", "Term Accession Number" and
+ * "Unit" belong to the group before them and every other column starts a group
+ * of its own.
+ *
+ * Lines can then be read either as a {@link Row}, a view on the cells of the
+ * current line that is reused for every line, or as a chain of
+ * {@link StudyOrAssayTableObject}s like the one that was passed to
+ * {@link WideTableFile#writeLine(StudyOrAssayTableObject)}. Only the current
+ * line is held in memory, plus the Ontologies, Protocols, Factors and Protocol
+ * Parameters seen so far, which are shared between lines.
+ *
+ * Cells are taken as they are, except that enclosing double quotes are removed.
+ * An empty Term Source REF or Term Accession Number is kept as an empty
+ * {@link Ontology} name or accession, so that every line read has the shape of
+ * the header.
+ */
+public class WideTableFileReader implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(WideTableFileReader.class);
+
+	/**
+	 * @return true if the column starts a new object
+	 */
+	private static boolean isObjectColumn(String column) {
+		if (column.equals(StudyAssayAttribute.SOURCE_NAME.toString())
+				|| column.equals(StudyAssayAttribute.SAMPLE_NAME.toString())
+				|| column.equals(StudyAssayAttribute.PROTOCOL.toString()))
+			return true;
+		return column.indexOf('[') < 0 && (column.endsWith(" Name") || column.endsWith(" File"));
+	}
+
+	/**
+	 * @return true if the column belongs to the group before it
+	 */
+	private static boolean isExtensionColumn(String column) {
+		return column.equals(StudyAssayAttribute.TERM_SOURCE_REF.toString())
+				|| column.equals(StudyAssayAttribute.TERM_ACCESSION_NUMBER.toString())
+				|| column.equals(StudyAssayAttribute.UNIT.toString());
+	}
+
+	/**
+	 * @return the name within the brackets of a key like "Characteristics[Organism]"
+	 */
+	private static String nameInKey(String key) {
+		return key.substring(key.indexOf('[') + 1, key.length() - 1);
+	}
+
+	/**
+	 * @return true if key is attribute with some name put in, e.g. "Comment[Note]" for COMMENT
+	 */
+	private static boolean keyHasAttribute(String key, StudyAssayAttribute attribute) {
+		String template = attribute.toString();
+		int wildcard = template.indexOf(Symbol.WILDCARD.toString());
+		return key.startsWith(template.substring(0, wildcard)) && key.endsWith(template.substring(wildcard + 1));
+	}
+
+	/**
+	 * @return line[start, end) without enclosing double quotes
+	 */
+	static String unquote(String line, int start, int end) {
+		if (end - start >= 2 && line.charAt(start) == '"' && line.charAt(end - 1) == '"')
+			return line.substring(start + 1, end - 1);
+		return line.substring(start, end);
+	}
+
+	private final BufferedReader reader;
+
+	private final String fileName;
+
+	private final List<LinkedHashMap<String, String[]>> headers;
+
+	/**
+	 * groupColumns.get(position).get(key) = first column of the group in a line
+	 */
+	private final List<Map<String, Integer>> groupColumns;
+
+	private final String[] cells;
+
+	private final Row row = new Row();
+
+	private long lineNumber = 0;
+
+	/**
+	 * Objects shared between lines, by name
+	 */
+	private final Map<String, Ontology> ontologies = new HashMap<String, Ontology>();
+	private final Map<String, Protocol> protocols = new HashMap<String, Protocol>();
+	private final Map<String, Factor> factors = new HashMap<String, Factor>();
+	private final Map<String, ProtocolParameter> protocolParameters = new HashMap<String, ProtocolParameter>();
+
+	/**
+	 * Header groups that cannot be turned into fields of their object, logged once
+	 */
+	private final Set<String> ignoredKeys = new HashSet<String>();
+
+	/**
+	 * Reads from a stream, creating Ontologies for Term Source REFs as they occur.
+	 * 
+	 * @param is the stream to read from
+	 * @throws IOException if the header line cannot be read
+	 */
+	public WideTableFileReader(InputStream is) throws IOException {
+		this(is, Collections.emptyList());
+	}
+
+	/**
+	 * Reads from a stream, resolving Term Source REFs to the given Ontologies (e.g.
+	 * the ones of the {@link Investigation}) by name.
+	 * 
+	 * @param is         the stream to read from
+	 * @param ontologies the Ontologies Term Source REFs refer to
+	 * @throws IOException if the header line cannot be read
+	 */
+	public WideTableFileReader(InputStream is, Collection<Ontology> ontologies) throws IOException {
+		this(new BufferedReader(new InputStreamReader(is, Props.DEFAULT_CHARSET)), "stream", ontologies);
+	}
+
+	/**
+	 * Reads a file, creating Ontologies for Term Source REFs as they occur.
+	 * 
+	 * @param file the file to read
+	 * @throws IOException if the file or its header line cannot be read
+	 */
+	public WideTableFileReader(Path file) throws IOException {
+		this(file, Collections.emptyList());
+	}
+
+	/**
+	 * Reads a file, resolving Term Source REFs to the given Ontologies by name.
+	 * 
+	 * @param file       the file to read
+	 * @param ontologies the Ontologies Term Source REFs refer to
+	 * @throws IOException if the file or its header line cannot be read
+	 */
+	public WideTableFileReader(Path file, Collection<Ontology> ontologies) throws IOException {
+		this(Files.newBufferedReader(file, Props.DEFAULT_CHARSET), file.toString(), ontologies);
+	}
+
+	private WideTableFileReader(BufferedReader reader, String fileName, Collection<Ontology> ontologies)
+			throws IOException {
+		this.reader = reader;
+		this.fileName = fileName;
+		for (Ontology ontology : ontologies)
+			this.ontologies.put(ontology.getName(), ontology);
+
+		String headerLine = reader.readLine();
+		if (headerLine == null) {
+			reader.close();
+			throw new IOException("No header line in " + fileName);
+		}
+		this.lineNumber++;
+		String[] columns = this.split(headerLine, -1);
+		this.cells = new String[columns.length];
+
+		List<LinkedHashMap<String, String[]>> headers = new ArrayList<LinkedHashMap<String, String[]>>();
+		List<Map<String, Integer>> groupColumns = new ArrayList<Map<String, Integer>>();
+		LinkedHashMap<String, String[]> object = null;
+		List<String> group = new ArrayList<String>();
+		for (int column = 0; column < columns.length; column++) {
+			boolean objectColumn = isObjectColumn(columns[column]);
+			if (column > 0 && (objectColumn || !isExtensionColumn(columns[column]))) {
+				// Store the previous group
+				object.put(group.get(0), group.toArray(new String[0]));
+				group.clear();
+			}
+			if (objectColumn) {
+				object = new LinkedHashMap<String, String[]>();
+				headers.add(object);
+				groupColumns.add(new HashMap<String, Integer>());
+			} else if (object == null) {
+				reader.close();
+				throw new IOException("The first column of " + fileName
+						+ " must be a Source Name, Sample Name, Protocol REF or another Name or File column, but is: "
+						+ columns[column]);
+			}
+			if (group.isEmpty()) {
+				if (object.containsKey(columns[column])) {
+					reader.close();
+					throw new IOException("Duplicate column " + columns[column] + " in " + fileName);
+				}
+				groupColumns.get(groupColumns.size() - 1).put(columns[column], column);
+			}
+			group.add(columns[column]);
+		}
+		if (object != null)
+			object.put(group.get(0), group.toArray(new String[0]));
+		this.headers = Collections.unmodifiableList(headers);
+		this.groupColumns = groupColumns;
+		logger.debug("{}: Read {} columns for {} objects per line", this, columns.length, headers.size());
+	}
+
+	private OntologyAnnotation annotation(String term, String accession, String sourceREF) {
+		if (accession == null && sourceREF == null)
+			return new OntologyAnnotation(term);
+		return new OntologyAnnotation(term, accession, sourceREF == null ? null : this.ontology(sourceREF));
+	}
+
+	/**
+	 * Sets the fields of a header group (anything but the first group, which
+	 * created the object) on object.
+	 */
+	private void applyGroup(StudyOrAssayTableObject object, String key, String[] columns, int column) {
+		if (object instanceof Source && keyHasAttribute(key, StudyAssayAttribute.CHARACTERISTICS)) {
+			OntologyAnnotation[] value = this.values(columns, column);
+			if (value[1] != null && this.ignoredKeys.add(key))
+				logger.warn("{}: Characteristics have no Unit, the Unit of {} is only available through readRow", this, key);
+			((Source) object).addCharacteristic(new Characteristic(nameInKey(key), value[0]));
+		} else if (object instanceof Sample && keyHasAttribute(key, StudyAssayAttribute.FACTOR_VALUE)) {
+			OntologyAnnotation[] value = this.values(columns, column);
+			Factor factor = this.factors.computeIfAbsent(nameInKey(key), Factor::new);
+			((Sample) object).addFactorValue(new FactorValue(factor, value[0], value[1]));
+		} else if (object instanceof Process && keyHasAttribute(key, StudyAssayAttribute.PARAMETER_VALUE)) {
+			OntologyAnnotation[] value = this.values(columns, column);
+			ProtocolParameter parameter = this.protocolParameters.computeIfAbsent(nameInKey(key),
+					ProtocolParameter::new);
+			((Process) object).addParameterValue(new ParameterValue(parameter, value[0], value[1]));
+		} else if (object instanceof Process && key.equals(StudyAssayAttribute.PROTOCOL_DATE.toString())) {
+			String date = this.cells[column];
+			if (date.indexOf('T') >= 0)
+				((Process) object).setDateTime(LocalDateTime.parse(date));
+			else if (!date.isEmpty())
+				((Process) object).setDate(LocalDate.parse(date));
+		} else if (object instanceof Commentable && keyHasAttribute(key, StudyAssayAttribute.COMMENT)) {
+			((Commentable) object).comments().add(new Comment(nameInKey(key), this.cells[column]));
+		} else if (this.ignoredKeys.add(key)) {
+			logger.warn("{}: Column {} cannot be set on {}, it is only available through readRow", this, key,
+					object.getClass().getSimpleName());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.reader.close();
+	}
+
+	/**
+	 * Creates the object of the group that starts it.
+	 */
+	private StudyOrAssayTableObject createObject(String key, String value) {
+		if (key.equals(StudyAssayAttribute.SOURCE_NAME.toString()))
+			return new Source(value);
+		if (key.equals(StudyAssayAttribute.SAMPLE_NAME.toString()))
+			return new Sample(value);
+		if (key.equals(StudyAssayAttribute.PROTOCOL.toString()))
+			return new Process(this.protocols.computeIfAbsent(value, Protocol::new));
+		if (key.endsWith(" File"))
+			return new DataFile(key, value);
+		return new Material(key, value);
+	}
+
+	/**
+	 * Returns the header groups, one map per object of a line, in the same form
+	 * as {@link StudyOrAssayTableObject#getHeaders()}.
+	 * 
+	 * @return the header groups
+	 */
+	public List<LinkedHashMap<String, String[]>> getHeaders() {
+		return this.headers;
+	}
+
+	/**
+	 * @return the number of the line read last, the header line being 1
+	 */
+	public long getLineNumber() {
+		return this.lineNumber;
+	}
+
+	private Ontology ontology(String name) {
+		return this.ontologies.computeIfAbsent(name, n -> new Ontology(n, null, null, null));
+	}
+
+	/**
+	 * Reads the next line into the cells.
+	 * 
+	 * @return false if there are no more lines
+	 */
+	private boolean readCells() throws IOException {
+		String line;
+		do {
+			line = this.reader.readLine();
+			this.lineNumber++;
+		} while (line != null && line.isEmpty());
+		if (line == null)
+			return false;
+		this.split(line, this.cells.length);
+		return true;
+	}
+
+	/**
+	 * Reads the next line and rebuilds the chain of objects it was written from.
+	 * Protocols, Factors, Protocol Parameters and Ontologies with the same name are
+	 * the same object in all lines.
+	 * 
+	 * @return the first object of the line, null if there are no more lines
+	 * @throws IOException if the line cannot be read
+	 */
+	public StudyOrAssayTableObject readLine() throws IOException {
+		if (!this.readCells())
+			return null;
+		StudyOrAssayTableObject first = null;
+		StudyOrAssayTableObject previous = null;
+		int column = 0;
+		for (LinkedHashMap<String, String[]> headerGroups : this.headers) {
+			StudyOrAssayTableObject object = null;
+			for (Map.Entry<String, String[]> group : headerGroups.entrySet()) {
+				if (object == null)
+					object = this.createObject(group.getKey(), this.cells[column]);
+				else
+					this.applyGroup(object, group.getKey(), group.getValue(), column);
+				column += group.getValue().length;
+			}
+			if (previous == null)
+				first = object;
+			else if (object instanceof Process)
+				((Process) object).setInput(previous);
+			else
+				previous.setNextStudyOrAssayTableObject(object);
+			previous = object;
+		}
+		return first;
+	}
+
+	/**
+	 * Reads the next line. The returned view is the same for every line, its
+	 * content is replaced when the next line is read.
+	 * 
+	 * @return the view on the line, null if there are no more lines
+	 * @throws IOException if the line cannot be read
+	 */
+	public Row readRow() throws IOException {
+		return this.readCells() ? this.row : null;
+	}
+
+	/**
+	 * Splits a line at tabs into the cells (or a new array if expected is
+	 * negative), removing enclosing double quotes.
+	 */
+	private String[] split(String line, int expected) {
+		List<String> columns = expected < 0 ? new ArrayList<String>() : null;
+		String tab = Symbol.TAB.toString();
+		int count = 0;
+		int start = 0;
+		while (true) {
+			int end = line.indexOf(tab, start);
+			if (end < 0)
+				end = line.length();
+			if (count == expected)
+				throw new IllegalStateException(
+						"Line " + this.lineNumber + " of " + this.fileName + " has more cells than the header");
+			String cell = unquote(line, start, end);
+			if (columns != null)
+				columns.add(cell);
+			else
+				this.cells[count] = cell;
+			count++;
+			if (end == line.length())
+				break;
+			start = end + 1;
+		}
+		if (columns != null)
+			return columns.toArray(new String[0]);
+		if (count != expected)
+			throw new IllegalStateException("Line " + this.lineNumber + " of " + this.fileName + " has " + count
+					+ " cells, but the header has " + expected);
+		return this.cells;
+	}
+
+	@Override
+	public String toString() {
+		return "<WideTableFileReader> '" + this.fileName + "'";
+	}
+
+	/**
+	 * Splits the cells of a group into value and unit (null if there is none).
+	 */
+	private OntologyAnnotation[] values(String[] columns, int column) {
+		String[] parts = new String[6];
+		int offset = 0;
+		parts[0] = this.cells[column];
+		for (int i = 1; i < columns.length; i++) {
+			String cell = this.cells[column + i];
+			if (columns[i].equals(StudyAssayAttribute.UNIT.toString())) {
+				offset = 3;
+				parts[offset] = cell;
+			} else if (columns[i].equals(StudyAssayAttribute.TERM_SOURCE_REF.toString())) {
+				parts[offset + 1] = cell;
+			} else {
+				parts[offset + 2] = cell;
+			}
+		}
+		return new OntologyAnnotation[] { this.annotation(parts[0], parts[2], parts[1]),
+				offset == 0 ? null : this.annotation(parts[3], parts[5], parts[4]) };
+	}
+
+	/**
+	 * View on the cells of the line read last by {@link WideTableFileReader#readRow()}.
+	 */
+	public final class Row {
+
+		private Row() {
+		}
+
+		/**
+		 * @param column index of the column
+		 * @return the cell in that column
+		 */
+		public String get(int column) {
+			return WideTableFileReader.this.cells[column];
+		}
+
+		/**
+		 * @param position position of the object in the line
+		 * @param key      key of the header group, e.g. "Characteristics[Organism]"
+		 * @return the first cell of the group, null if the object has no such group
+		 */
+		public String get(int position, String key) {
+			Integer column = WideTableFileReader.this.groupColumns.get(position).get(key);
+			return column == null ? null : WideTableFileReader.this.cells[column];
+		}
+
+		/**
+		 * @param position position of the object in the line
+		 * @param key      key of the header group, e.g. "Characteristics[Organism]"
+		 * @return a copy of all cells of the group, null if the object has no such group
+		 */
+		public String[] getGroup(int position, String key) {
+			Integer column = WideTableFileReader.this.groupColumns.get(position).get(key);
+			if (column == null)
+				return null;
+			int width = WideTableFileReader.this.headers.get(position).get(key).length;
+			return Arrays.copyOfRange(WideTableFileReader.this.cells, column, column + width);
+		}
+
+		/**
+		 * @return the number of the line in the file
+		 */
+		public long getLineNumber() {
+			return WideTableFileReader.this.lineNumber;
+		}
+
+		/**
+		 * @return the number of cells
+		 */
+		public int size() {
+			return WideTableFileReader.this.cells.length;
+		}
+
+	}
+
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Objects;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+
+/**
+ * {@link Writer} that encodes characters with {@link Props#DEFAULT_CHARSET}
+ * straight into a reusable direct {@link ByteBuffer} and hands that buffer to a
+ * {@link WritableByteChannel} whenever it is full. Runs of ASCII characters,
+ * which make up nearly all of an ISA-Tab file, are copied byte by byte without
+ * going through the {@link CharsetEncoder}.
+ *
+ * Unlike {@link java.io.OutputStreamWriter} this class is not synchronized, so
+ * an instance must only be used by one thread at a time.
+ */
+public class ChannelWriter extends Writer {
+
+	/**
+	 * Size of the byte buffer if none is given (256 KiB)
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * The UTF-8 encoding of a character takes at most 3 bytes, a surrogate pair 4
+	 */
+	private static final int MAX_BYTES_PER_CHAR = 4;
+
+	private final ByteBuffer buffer;
+
+	private final WritableByteChannel channel;
+
+	private final CharsetEncoder encoder = Props.DEFAULT_CHARSET.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	/**
+	 * A high surrogate at the end of a write whose low surrogate is expected with
+	 * the next write, 0 if there is none
+	 */
+	private char pendingHighSurrogate = 0;
+
+	private boolean closed = false;
+
+	/**
+	 * Number of bytes handed to the channel so far
+	 */
+	private long written = 0;
+
+	/**
+	 * @param channel the channel to write to
+	 */
+	public ChannelWriter(WritableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param channel    the channel to write to
+	 * @param bufferSize size of the byte buffer in bytes, at least 16
+	 */
+	public ChannelWriter(WritableByteChannel channel, int bufferSize) {
+		if (bufferSize < 16)
+			throw new IllegalArgumentException("Buffer size must be at least 16 bytes, was: " + bufferSize);
+		this.channel = Objects.requireNonNull(channel, "Channel cannot be null");
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	@Override
+	public Writer append(CharSequence csq) throws IOException {
+		if (csq == null)
+			csq = "null";
+		this.write(csq, 0, csq.length());
+		return this;
+	}
+
+	@Override
+	public Writer append(CharSequence csq, int start, int end) throws IOException {
+		if (csq == null)
+			csq = "null";
+		Objects.checkFromToIndex(start, end, csq.length());
+		this.write(csq, start, end);
+		return this;
+	}
+
+	/**
+	 * Writes the buffered bytes and closes the channel. A high surrogate without a
+	 * following low surrogate is replaced like any other malformed input.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed)
+			return;
+		try {
+			if (this.pendingHighSurrogate != 0) {
+				char high = this.pendingHighSurrogate;
+				this.pendingHighSurrogate = 0;
+				this.encode(CharBuffer.wrap(new char[] { high }));
+			}
+			this.writeBuffer();
+		} finally {
+			this.closed = true;
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Encodes chars[start, end) without the ASCII fast path. A high surrogate at
+	 * the very end is kept back until the next write.
+	 */
+	private void encode(CharSequence chars, int start, int end) throws IOException {
+		if (this.pendingHighSurrogate != 0) {
+			char high = this.pendingHighSurrogate;
+			this.pendingHighSurrogate = 0;
+			if (start < end && Character.isLowSurrogate(chars.charAt(start))) {
+				this.encode(CharBuffer.wrap(new char[] { high, chars.charAt(start) }));
+				start++;
+			} else {
+				this.encode(CharBuffer.wrap(new char[] { high }));
+			}
+		}
+		if (start < end && Character.isHighSurrogate(chars.charAt(end - 1))) {
+			this.pendingHighSurrogate = chars.charAt(end - 1);
+			end--;
+		}
+		if (start < end)
+			this.encode(CharBuffer.wrap(chars, start, end));
+	}
+
+	private void encode(CharBuffer in) throws IOException {
+		this.encoder.reset();
+		while (true) {
+			CoderResult result = this.encoder.encode(in, this.buffer, true);
+			if (result.isOverflow()) {
+				this.writeBuffer();
+				continue;
+			}
+			result = this.encoder.flush(this.buffer);
+			if (result.isOverflow()) {
+				this.writeBuffer();
+				continue;
+			}
+			return;
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (this.closed)
+			throw new IOException("Writer is closed");
+	}
+
+	/**
+	 * Writes the buffered bytes to the channel. Does not force the channel to write
+	 * to the storage device.
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.ensureOpen();
+		this.writeBuffer();
+	}
+
+	/**
+	 * Returns the number of bytes written so far, including the ones that are
+	 * still buffered, i.e. the position in the channel at which the next
+	 * character will end up. A high surrogate waiting for its low surrogate is
+	 * not counted yet.
+	 * 
+	 * @return the number of bytes written
+	 */
+	public long position() {
+		return this.written + this.buffer.position();
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		Objects.checkFromIndexSize(off, len, cbuf.length);
+		this.write(CharBuffer.wrap(cbuf), off, off + len);
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		this.ensureOpen();
+		if (c < 0x80 && this.pendingHighSurrogate == 0) {
+			if (!this.buffer.hasRemaining())
+				this.writeBuffer();
+			this.buffer.put((byte) c);
+		} else {
+			this.encode(String.valueOf((char) c), 0, 1);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		Objects.checkFromIndexSize(off, len, str.length());
+		this.write((CharSequence) str, off, off + len);
+	}
+
+	/**
+	 * Writes chars[start, end). ASCII characters are put into the buffer directly,
+	 * everything else goes through the encoder.
+	 */
+	private void write(CharSequence chars, int start, int end) throws IOException {
+		this.ensureOpen();
+		int i = start;
+		while (i < end) {
+			if (this.pendingHighSurrogate != 0 || chars.charAt(i) >= 0x80) {
+				// Encode the run of non ASCII characters
+				int runEnd = i + 1;
+				while (runEnd < end && chars.charAt(runEnd) >= 0x80)
+					runEnd++;
+				this.encode(chars, i, runEnd);
+				i = runEnd;
+				continue;
+			}
+			// Copy the run of ASCII characters that fits into the buffer
+			if (this.buffer.remaining() < MAX_BYTES_PER_CHAR)
+				this.writeBuffer();
+			int limit = Math.min(end, i + this.buffer.remaining());
+			char c;
+			while (i < limit && (c = chars.charAt(i)) < 0x80) {
+				this.buffer.put((byte) c);
+				i++;
+			}
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		this.buffer.flip();
+		this.written += this.buffer.remaining();
+		while (this.buffer.hasRemaining())
+			this.channel.write(this.buffer);
+		this.buffer.clear();
+	}
+
+}
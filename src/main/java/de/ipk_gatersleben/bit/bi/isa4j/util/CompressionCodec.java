@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ServiceLoader;
+
+/**
+ * A compression format for output files, see
+ * {@link de.ipk_gatersleben.bit.bi.isa4j.components.WideTableFile#openFile(CompressionCodec)}
+ * and
+ * {@link de.ipk_gatersleben.bit.bi.isa4j.components.Investigation#writeToFile(String, CompressionCodec)}.
+ * isa4j comes with {@link GzipCodec}. Further codecs (e.g. Zstandard based on a
+ * native library) can be added without changing isa4j by implementing this
+ * interface and listing the implementation in
+ * META-INF/services/de.ipk_gatersleben.bit.bi.isa4j.util.CompressionCodec, which
+ * makes them available through {@link #forName(String)}.
+ */
+public interface CompressionCodec {
+
+	/**
+	 * Looks up a codec with {@link ServiceLoader}
+	 *
+	 * @param name the name of the codec, e.g. "gzip"
+	 * @return a codec with default settings
+	 * @throws IllegalArgumentException if there is no codec of that name
+	 */
+	static CompressionCodec forName(String name) {
+		for (CompressionCodec codec : ServiceLoader.load(CompressionCodec.class))
+			if (codec.getName().equalsIgnoreCase(name))
+				return codec;
+		throw new IllegalArgumentException("No compression codec found for: " + name);
+	}
+
+	/**
+	 * Wraps a stream so that everything written is compressed. Closing the
+	 * returned stream finishes the compressed data and closes out.
+	 *
+	 * @param out the stream the compressed data is written to
+	 * @return the stream to write the uncompressed data to
+	 * @throws IOException if the compressed stream cannot be started
+	 */
+	OutputStream compress(OutputStream out) throws IOException;
+
+	/**
+	 * @return the suffix of compressed files including the dot, e.g. ".gz"
+	 */
+	String getFileSuffix();
+
+	/**
+	 * @return the name of the codec, e.g. "gzip"
+	 */
+	String getName();
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.util;
+
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * gzip compression with the JDK's {@link Deflater}. The data is cut into blocks
+ * which are compressed into a gzip member each, in parallel if there is more
+ * than one thread. The members are written one after the other, which is still
+ * a valid gzip file (RFC 1952) that gunzip or
+ * {@link java.util.zip.GZIPInputStream} decompress into the original bytes.
+ * Splitting into blocks costs a little compression ratio because every block
+ * starts with an empty dictionary.
+ */
+public class GzipCodec implements CompressionCodec {
+
+	/**
+	 * Size of the blocks compressed in parallel if none is given (1 MiB)
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+	private final int blockSize;
+
+	private final int level;
+
+	private final int threads;
+
+	/**
+	 * Compresses with the default level and one thread per available processor
+	 */
+	public GzipCodec() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param threads   number of threads compressing blocks, 1 to compress them
+	 *                  with the thread writing
+	 * @param blockSize number of uncompressed bytes per block
+	 * @param level     compression level from 1 (fastest) to 9 (smallest) or
+	 *                  {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	public GzipCodec(int threads, int blockSize, int level) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Number of threads must be at least 1, was: " + threads);
+		if (blockSize < 1)
+			throw new IllegalArgumentException("Block size must be at least 1, was: " + blockSize);
+		if ((level < 1 || level > 9) && level != Deflater.DEFAULT_COMPRESSION)
+			throw new IllegalArgumentException("Invalid compression level: " + level);
+		this.threads = threads;
+		this.blockSize = blockSize;
+		this.level = level;
+	}
+
+	@Override
+	public OutputStream compress(OutputStream out) {
+		return new ParallelGzipOutputStream(out, this.threads, this.blockSize, this.level);
+	}
+
+	@Override
+	public String getFileSuffix() {
+		return ".gz";
+	}
+
+	@Override
+	public String getName() {
+		return "gzip";
+	}
+
+	@Override
+	public String toString() {
+		return "<GzipCodec> " + this.threads + " threads, level " + this.level;
+	}
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes gzip data as a sequence of members, one per block of uncompressed
+ * bytes, see {@link GzipCodec}. With more than one thread, full blocks are
+ * handed to a pool of threads and written in their original order as soon as
+ * they are compressed; at most two blocks per thread are held in memory. {@link #flush()} ends the current block
+ * early, so frequent flushing makes the file larger.
+ */
+final class ParallelGzipOutputStream extends OutputStream {
+
+	/**
+	 * gzip header: magic number, deflate, no flags, no modification time, no extra
+	 * flags, unknown operating system
+	 */
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	/**
+	 * Compresses a block into a complete gzip member
+	 */
+	private static byte[] compressMember(byte[] data, int length, int level) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			ByteArrayOutputStream member = new ByteArrayOutputStream(length / 4 + 64);
+			member.write(HEADER, 0, HEADER.length);
+			deflater.setInput(data, 0, length);
+			deflater.finish();
+			byte[] buffer = new byte[64 * 1024];
+			while (!deflater.finished())
+				member.write(buffer, 0, deflater.deflate(buffer));
+
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, length);
+			writeIntLE(member, (int) crc.getValue());
+			writeIntLE(member, length);
+			return member.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static void writeIntLE(ByteArrayOutputStream out, int value) {
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+	private byte[] block;
+
+	private final int blockSize;
+
+	private boolean closed = false;
+
+	private int count = 0;
+
+	private final int level;
+
+	private final int maxPending;
+
+	private boolean memberWritten = false;
+
+	private final OutputStream out;
+
+	/**
+	 * Compressed members not yet written, in order
+	 */
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+	/**
+	 * null if blocks are compressed by the writing thread
+	 */
+	private final ExecutorService pool;
+
+	ParallelGzipOutputStream(OutputStream out, int threads, int blockSize, int level) {
+		this.out = Objects.requireNonNull(out, "Stream cannot be null");
+		this.blockSize = blockSize;
+		this.block = new byte[blockSize];
+		this.level = level;
+		this.maxPending = 2 * threads;
+		if (threads > 1) {
+			AtomicInteger threadCount = new AtomicInteger();
+			this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+				Thread thread = new Thread(runnable, "isa4j-gzip-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else {
+			this.pool = null;
+		}
+	}
+
+	/**
+	 * Compresses and writes the remaining data and closes the underlying stream.
+	 * A stream nothing was written to still becomes a valid, empty gzip file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed)
+			return;
+		try {
+			if (this.count > 0 || !this.memberWritten)
+				this.submitBlock();
+			this.writePending(0);
+		} finally {
+			this.closed = true;
+			if (this.pool != null)
+				this.pool.shutdownNow();
+			this.out.close();
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (this.closed)
+			throw new IOException("Stream is closed");
+	}
+
+	/**
+	 * Compresses and writes everything written so far, then flushes the underlying
+	 * stream.
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.ensureOpen();
+		if (this.count > 0)
+			this.submitBlock();
+		this.writePending(0);
+		this.out.flush();
+	}
+
+	private void submitBlock() throws IOException {
+		byte[] data = this.block;
+		int length = this.count;
+		if (this.pool == null) {
+			this.out.write(compressMember(data, length, this.level));
+			this.count = 0;
+		} else {
+			this.pending.add(this.pool.submit(() -> compressMember(data, length, this.level)));
+			this.block = new byte[this.blockSize];
+			this.count = 0;
+			this.writePending(this.maxPending);
+		}
+		this.memberWritten = true;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		Objects.checkFromIndexSize(off, len, b.length);
+		this.ensureOpen();
+		while (len > 0) {
+			int n = Math.min(len, this.blockSize - this.count);
+			System.arraycopy(b, off, this.block, this.count, n);
+			this.count += n;
+			off += n;
+			len -= n;
+			if (this.count == this.blockSize)
+				this.submitBlock();
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		this.ensureOpen();
+		this.block[this.count++] = (byte) b;
+		if (this.count == this.blockSize)
+			this.submitBlock();
+	}
+
+	/**
+	 * Writes compressed members in order until at most maxRemaining are left
+	 */
+	private void writePending(int maxRemaining) throws IOException {
+		while (this.pending.size() > maxRemaining) {
+			try {
+				this.out.write(this.pending.peek().get());
+				this.pending.remove();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while compressing", e);
+			} catch (ExecutionException e) {
+				throw new IOException("Compressing a block failed", e.getCause());
+			}
+		}
+	}
+
+}
@@ -7,6 +7,8 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.util;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
 
 /**
@@ -16,34 +18,168 @@ import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
  *
  */
 public class StringUtil {
+
+	/**
+	 * Number of names kept per attribute by
+	 * {@link #putNameInAttribute(Object, String)} unless changed with
+	 * {@link #setNameCacheSize(int)}
+	 */
+	public static final int DEFAULT_NAME_CACHE_SIZE = 10_000;
+
+	private static final ConcurrentHashMap<Object, AttributeNames> attributeNames = new ConcurrentHashMap<Object, AttributeNames>();
+
+	private static volatile int nameCacheSize = DEFAULT_NAME_CACHE_SIZE;
+
+	/**
+	 * The template of an attribute, split at its wildcard, and the names already
+	 * put into it
+	 */
+	private static final class AttributeNames {
+
+		private final String template;
+
+		private final String prefix;
+
+		private final String suffix;
+
+		private final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<String, String>();
+
+		private AttributeNames(String template) {
+			this.template = template;
+			int wildcard = template.indexOf(Symbol.WILDCARD.toString());
+			if (wildcard < 0) {
+				this.prefix = null;
+				this.suffix = null;
+			} else {
+				this.prefix = template.substring(0, wildcard);
+				this.suffix = template.substring(wildcard + Symbol.WILDCARD.toString().length());
+			}
+		}
+
+		private String format(String name) {
+			if (this.prefix == null)
+				return this.template;
+			String formatted = this.names.get(name);
+			if (formatted != null)
+				return formatted;
+			formatted = this.prefix.concat(name).concat(this.suffix);
+			if (this.names.size() < nameCacheSize)
+				this.names.putIfAbsent(name, formatted);
+			return formatted;
+		}
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == '\t' || c == '\n' || c == '\r';
+	}
+
+	/**
+	 * Appends a number to a {@link StringBuilder} exactly as
+	 * {@link String#valueOf(double)} would format it, but without creating a
+	 * String. Whole numbers of less than 7 digits, which are the most common
+	 * measurements, are formatted without the general floating point algorithm.
+	 *
+	 * @param sb    the {@link StringBuilder} to append to
+	 * @param value the number
+	 */
+	public static void appendNumber(StringBuilder sb, double value) {
+		long whole = (long) value;
+		// 0 is left out for the sake of -0.0, larger numbers are written in E notation
+		if (whole == value && whole != 0 && whole > -10_000_000 && whole < 10_000_000) {
+			sb.append(whole).append(".0");
+			return;
+		}
+		sb.append(value);
+	}
+
+	/**
+	 * Formats a number like {@link #appendNumber(StringBuilder, double)}
+	 *
+	 * @param value the number
+	 * @return the number as {@link String}
+	 */
+	public static String formatNumber(double value) {
+		StringBuilder sb = new StringBuilder(24);
+		appendNumber(sb, value);
+		return sb.toString();
+	}
+
 	/**
 	 * In constants, the position of ? is the parameter to put in. So we need the
 	 * index of ? this function is used only by writeToFile, get the index of ? and
 	 * use by replace of {@link StringBuilder}.
 	 *
+	 * For enum attributes the template is split at the ? only once and the result
+	 * is remembered per parameter, up to the name cache size per attribute, so
+	 * repeated column names cost a single lookup.
+	 * 
 	 * @param <T>       the attribute type
 	 * @param attribute the attribute to add
 	 * @param parameter to put in the {@link StringBuilder}
 	 * @return the type
 	 */
 	public static <T> String putNameInAttribute(T attribute, String parameter) {
-		return attribute.toString().replace(Symbol.WILDCARD.toString(), parameter);
+		if (!(attribute instanceof Enum<?>) || parameter == null)
+			return attribute.toString().replace(Symbol.WILDCARD.toString(), parameter);
+		AttributeNames names = attributeNames.get(attribute);
+		if (names == null)
+			names = attributeNames.computeIfAbsent(attribute, a -> new AttributeNames(a.toString()));
+		return names.format(parameter);
+	}
+
+	/**
+	 * Sets how many names are remembered per attribute by
+	 * {@link #putNameInAttribute(Object, String)}. 0 turns remembering off. If the
+	 * size is lowered, the names remembered so far are forgotten.
+	 * 
+	 * @param size number of names per attribute, {@link #DEFAULT_NAME_CACHE_SIZE}
+	 *             by default
+	 */
+	public static void setNameCacheSize(int size) {
+		if (size < 0)
+			throw new IllegalArgumentException("Name cache size cannot be negative: " + size);
+		int previous = nameCacheSize;
+		nameCacheSize = size;
+		if (size < previous)
+			attributeNames.clear();
 	}
 
 	/**
-	 * Removes Symbol.TABs and Symbol.ENTERs from an input String and replaces them
-	 * with Symbol.EMPTY. To be used on any String input by the user that ends up in
-	 * the ISATab files.
+	 * Replaces tabs and line breaks in an input String with Symbol.SPACE. To be
+	 * used on any String input by the user that ends up in the ISATab files.
+	 * 
+	 * Every tab, "\r\n", "\r" and "\n" becomes a single space, so line breaks
+	 * are treated the same no matter which platform the input comes from (and
+	 * thereby Symbol.ENTER as well). The input is scanned once and returned as
+	 * it is if there is nothing to replace.
 	 * 
 	 * @param input the input {@link String}
-	 * @return the cleanded {@link String}
+	 * @return the cleaned {@link String}
 	 */
 	public static String sanitize(String input) {
-		if (input == null) {
+		if (input == null)
 			return null;
-		} else {
-			return input.replaceAll(Symbol.TAB.toString(), Symbol.SPACE.toString()).replaceAll(Symbol.ENTER.toString(),
-					Symbol.SPACE.toString());
+		int length = input.length();
+		int i = 0;
+		while (i < length && !isSeparator(input.charAt(i)))
+			i++;
+		if (i == length)
+			return input;
+
+		char space = Symbol.SPACE.toString().charAt(0);
+		char[] chars = input.toCharArray();
+		int sanitizedLength = i;
+		for (; i < length; i++) {
+			char c = chars[i];
+			if (!isSeparator(c)) {
+				chars[sanitizedLength++] = c;
+				continue;
+			}
+			chars[sanitizedLength++] = space;
+			// \r\n is one line break
+			if (c == '\r' && i + 1 < length && chars[i + 1] == '\n')
+				i++;
 		}
+		return new String(chars, 0, sanitizedLength);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.jupiter.api.Test;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+public class InvestigationFileReaderTest {
+
+	@Test
+	void testRead() throws IOException {
+		// Reading the file created with python isatools and writing it again has to give the same file
+		String original;
+		try (InputStream is = this.getClass().getResourceAsStream("python_originals/i_investigation.txt")) {
+			original = new String(is.readAllBytes(), Props.DEFAULT_CHARSET);
+		}
+		Investigation investigation = InvestigationFileReader
+				.read(new ByteArrayInputStream(original.getBytes(Props.DEFAULT_CHARSET)));
+
+		assertEquals("Investigation ID", investigation.getIdentifier());
+		assertEquals(1, investigation.getStudies().size());
+		Study study = investigation.getStudies().get(0);
+		assertEquals("s_study.txt", study.getFileName());
+		assertEquals("a_assay.txt", study.getAssays().get(0).getFileName());
+		assertEquals(3, study.getProtocols().get(1).getParameters().size());
+		// Term Source REFs point to the Ontologies of the ONTOLOGY SOURCE REFERENCE section
+		assertSame(investigation.getOntologies().get(0), investigation.getContacts().get(0).getRoles().get(0).getSourceREF());
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		investigation.writeToStream(os);
+		assertEquals(original.replace("\n", Symbol.ENTER.toString()), os.toString(Props.DEFAULT_CHARSET));
+	}
+
+	@Test
+	void testReadEmptyTermSourceFile() throws IOException {
+		// An Ontology without Term Source File is read without URL and written with an empty cell
+		String original;
+		try (InputStream is = this.getClass().getResourceAsStream("python_originals/i_investigation.txt")) {
+			original = new String(is.readAllBytes(), Props.DEFAULT_CHARSET)
+					.replace("\thttp://purl.org/credit/ontology#\t", "\t\t");
+		}
+		Investigation investigation = InvestigationFileReader
+				.read(new ByteArrayInputStream(original.getBytes(Props.DEFAULT_CHARSET)));
+		assertNull(investigation.getOntologies().get(0).getURL());
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		investigation.writeToStream(os);
+		assertEquals(original.replace("\n", Symbol.ENTER.toString()), os.toString(Props.DEFAULT_CHARSET));
+	}
+
+	@Test
+	void testReadMalformed() {
+		String file = "Investigation Identifier\tID\n";
+		assertThrows(IllegalStateException.class, () -> InvestigationFileReader
+				.read(new ByteArrayInputStream(file.getBytes(Props.DEFAULT_CHARSET))));
+
+		String study = "INVESTIGATION\nInvestigation Identifier\tID\nSTUDY FACTORS\nStudy Factor Name\tdrought\n";
+		assertThrows(IllegalStateException.class, () -> InvestigationFileReader
+				.read(new ByteArrayInputStream(study.getBytes(Props.DEFAULT_CHARSET))));
+	}
+
+}
@@ -20,13 +20,17 @@ import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import de.ipk_gatersleben.bit.bi.isa4j.components.Comment;
 import de.ipk_gatersleben.bit.bi.isa4j.components.Factor;
@@ -39,6 +43,7 @@ import de.ipk_gatersleben.bit.bi.isa4j.components.ProtocolParameter;
 import de.ipk_gatersleben.bit.bi.isa4j.components.Publication;
 import de.ipk_gatersleben.bit.bi.isa4j.components.Study;
 import de.ipk_gatersleben.bit.bi.isa4j.constants.InvestigationAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
 import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
 import de.ipk_gatersleben.bit.bi.isa4j.exceptions.RedundantItemException;
 import de.ipk_gatersleben.bit.bi.isa4j.util.StringUtil;
@@ -164,6 +169,21 @@ public class InvestigationTest {
     			result);
     }
     
+    @Test
+    void testAppendOntologyLinesFromList() throws IOException {
+    	List<Publication> publications = List.of(new Publication(Symbol.EMPTY.toString(), null), new Publication(Symbol.EMPTY.toString(), null));
+    	publications.get(0).setStatus(new OntologyAnnotation("Status1", "Accession 1", new Ontology("Ontology1", null, null, null)));
+    	AtomicInteger calls = new AtomicInteger();
+    	StringBuilder sb = new StringBuilder("Before" + Symbol.ENTER);
+    	
+    	Investigation.appendOntologyLinesFromList(sb, "PubStatus", publications, p -> { calls.incrementAndGet(); return p.getStatus(); });
+    	
+    	// The lambda should be called once per publication, and the lines appended after the existing content
+    	assertEquals(2, calls.get());
+    	assertEquals("Before" + Symbol.ENTER
+    		+ Investigation.ontologyLinesFromList("PubStatus", publications, p -> p.getStatus()), sb.toString());
+    }
+
     @Test
     void testFormatSimpleComments() {
     	List<Comment> comments = new ArrayList<Comment>();
@@ -303,4 +323,47 @@ public class InvestigationTest {
     	ourFile.close();
     	
     }
+
+    @Test
+    void testWriteArchive(@TempDir Path directory) throws IOException {
+    	for (int i = 0; i < 20; i++) {
+    		Study study = new Study("Study " + i, "s_study_" + i + ".txt");
+    		study.comments().add(new Comment("Number", Integer.toString(i)));
+    		study.addAssay(new Assay("a_assay_" + i + ".txt"));
+    		this.investigation.addStudy(study);
+    	}
+
+    	String filepath = directory.resolve("i_investigation.txt").toString();
+    	this.investigation.writeArchive(filepath, file -> {
+    		Source source = new Source("Source of " + file.getFileName());
+    		Sample sample = new Sample("Sample");
+    		Process process = new Process(new Protocol("Sampling"));
+    		process.setInput(source);
+    		process.setOutput(sample);
+    		file.writeLine(source);
+    	});
+
+    	ByteArrayOutputStream os = new ByteArrayOutputStream();
+    	this.investigation.writeToStream(os);
+    	assertEquals(os.toString(Props.DEFAULT_CHARSET), Files.readString(directory.resolve("i_investigation.txt")));
+    	for (int i = 0; i < 20; i++) {
+    		assertTrue(Files.readString(directory.resolve("s_study_" + i + ".txt")).contains("Source of s_study_" + i + ".txt"));
+    		assertTrue(Files.readString(directory.resolve("a_assay_" + i + ".txt")).contains("Source of a_assay_" + i + ".txt"));
+    	}
+
+    	// Errors of a single table reach the caller, the other tables are still written
+    	Files.delete(directory.resolve("a_assay_19.txt"));
+    	assertThrows(IllegalStateException.class, () -> this.investigation.writeArchive(filepath, file -> {
+    		if (file.getFileName().equals("s_study_0.txt"))
+    			throw new IllegalStateException("Failed");
+    	}));
+    	assertTrue(Files.exists(directory.resolve("a_assay_19.txt")));
+
+    	// A table that already has an output does not take the opened file
+    	Study study = this.investigation.getStudies().get(0);
+    	ByteArrayOutputStream other = new ByteArrayOutputStream();
+    	study.setOutputStream(other);
+    	assertThrows(IllegalStateException.class, () -> this.investigation.writeArchive(filepath, file -> {}));
+    	study.releaseStream();
+    }
 }
\ No newline at end of file
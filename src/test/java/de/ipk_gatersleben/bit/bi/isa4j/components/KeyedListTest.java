@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import de.ipk_gatersleben.bit.bi.isa4j.exceptions.RedundantItemException;
+
+public class KeyedListTest {
+
+	private static final Function<Comment, String> NAME = Comment::getName;
+
+	@Test
+	void testFind() {
+		KeyedList<Comment> comments = new KeyedList<Comment>(List.of(NAME), Comment::indexingLists);
+		for (int i = 0; i < 100; i++)
+			comments.add(new Comment("Comment " + i, "Value " + i));
+
+		assertEquals("Value 42", KeyedList.find(comments, NAME, "Comment 42").getValue());
+		assertNull(KeyedList.find(comments, NAME, "Comment 100"));
+		// Items appended after the index was built
+		Comment appended = new Comment("Comment 100", "Value 100");
+		comments.add(appended);
+		assertSame(appended, KeyedList.find(comments, NAME, "Comment 100"));
+
+		// Removing and replacing items
+		comments.remove(appended);
+		assertNull(KeyedList.find(comments, NAME, "Comment 100"));
+		comments.set(0, appended);
+		assertSame(appended, KeyedList.find(comments, NAME, "Comment 100"));
+		assertNull(KeyedList.find(comments, NAME, "Comment 0"));
+
+		// A renamed item is found by its new name only
+		appended.setName("Renamed");
+		assertNull(KeyedList.find(comments, NAME, "Comment 100"));
+		assertSame(appended, KeyedList.find(comments, NAME, "Renamed"));
+
+		// Lists that are no KeyedList are scanned
+		assertEquals("Value 42", KeyedList.find(List.copyOf(comments), NAME, "Comment 42").getValue());
+	}
+
+	@Test
+	void testDuplicatesInLargeCollections() {
+		Source source = new Source("Source");
+		for (int i = 0; i < 1000; i++)
+			source.addCharacteristic(new Characteristic("Characteristic " + i, new OntologyAnnotation("Value")));
+		assertThrows(RedundantItemException.class,
+				() -> source.addCharacteristic(new Characteristic("Characteristic 500", new OntologyAnnotation("Value"))));
+		// Order stays the order of insertion
+		assertEquals("Characteristic 999", source.getCharacteristics().get(999).getCategory());
+
+		Investigation investigation = new Investigation("Investigation");
+		for (int i = 0; i < 1000; i++)
+			investigation.addStudy(new Study("Study " + i, "s_study_" + i + ".txt"));
+		assertThrows(RedundantItemException.class, () -> investigation.addStudy(new Study("Study 10", "s_new.txt")));
+		assertThrows(RedundantItemException.class, () -> investigation.addStudy(new Study("New", "s_study_10.txt")));
+		investigation.addStudy(new Study("New", "s_new.txt"));
+	}
+
+	@Test
+	void testRenameIntoDuplicate() {
+		Source source = new Source("Source");
+		for (int i = 0; i < 100; i++)
+			source.addCharacteristic(new Characteristic("Characteristic " + i, new OntologyAnnotation("Value")));
+		// An item renamed to a key no item was indexed under
+		source.getCharacteristics().get(10).setCategory("Renamed");
+		assertThrows(RedundantItemException.class,
+				() -> source.addCharacteristic(new Characteristic("Renamed", new OntologyAnnotation("Value"))));
+		// The old key is free again
+		source.addCharacteristic(new Characteristic("Characteristic 10", new OntologyAnnotation("Value")));
+
+		Investigation investigation = new Investigation("Investigation");
+		for (int i = 0; i < 100; i++)
+			investigation.addStudy(new Study("Study " + i, "s_study_" + i + ".txt"));
+		investigation.getStudies().get(20).setFileName("s_renamed.txt");
+		assertThrows(RedundantItemException.class, () -> investigation.addStudy(new Study("New", "s_renamed.txt")));
+	}
+
+	@Test
+	void testRenameInSeveralLists() {
+		// A Comment shared by two collections tells both when it is renamed
+		CommentCollection first = new CommentCollection();
+		CommentCollection second = new CommentCollection();
+		Comment shared = new Comment("Shared", "Value");
+		for (int i = 0; i < 100; i++) {
+			first.add(new Comment("First " + i, "Value"));
+			second.add(new Comment("Second " + i, "Value"));
+		}
+		first.add(shared);
+		second.add(shared);
+		assertSame(shared, first.getByName("Shared").get());
+
+		shared.setName("Renamed");
+		assertSame(shared, first.getByName("Renamed").get());
+		assertSame(shared, second.getByName("Renamed").get());
+		assertTrue(first.getByName("Shared").isEmpty());
+		assertThrows(RedundantItemException.class, () -> second.add(new Comment("Renamed", "Value")));
+	}
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class OntologyAnnotationPoolTest {
+
+	@Test
+	void testSharedAnnotations() {
+		Ontology uo = new Ontology("UO", null, null, "Units of Measurement Ontology");
+		Ontology otherUo = new Ontology("UO", null, null, "Units of Measurement Ontology");
+		OntologyAnnotationPool pool = new OntologyAnnotationPool();
+
+		OntologyAnnotation litre = pool.get("litre", "http://purl.obolibrary.org/obo/UO_0000099", uo);
+		assertSame(litre, pool.get("litre", "http://purl.obolibrary.org/obo/UO_0000099", uo));
+		assertNotSame(litre, pool.get("litre", "http://purl.obolibrary.org/obo/UO_0000099", otherUo));
+		assertNotSame(litre, pool.get("litre"));
+		assertSame(pool.get("litre"), pool.get("litre", null, null));
+		assertEquals(3, pool.size());
+
+		// Shared annotations cannot be changed
+		assertTrue(litre.isShared());
+		assertThrows(UnsupportedOperationException.class, () -> litre.setTerm("liter"));
+		assertThrows(UnsupportedOperationException.class, () -> litre.setSourceREF(null));
+		assertThrows(UnsupportedOperationException.class, () -> litre.comments().add(new Comment("Note", "value")));
+		assertThrows(UnsupportedOperationException.class, () -> litre.comments().getAll().clear());
+		assertSame(CommentCollection.EMPTY, litre.comments());
+		assertFalse(new OntologyAnnotation("litre").isShared());
+	}
+
+	@Test
+	void testMaximumSize() {
+		OntologyAnnotationPool pool = new OntologyAnnotationPool(2);
+		OntologyAnnotation first = pool.get("first");
+		pool.get("second");
+		OntologyAnnotation third = pool.get("third");
+		assertEquals(2, pool.size());
+		assertSame(first, pool.get("first"));
+		// Beyond the maximum size, annotations are created but not kept
+		assertNotSame(third, pool.get("third"));
+		assertTrue(third.isShared());
+
+		pool.clear();
+		assertEquals(0, pool.size());
+		assertEquals("first", first.getTerm());
+	}
+
+}
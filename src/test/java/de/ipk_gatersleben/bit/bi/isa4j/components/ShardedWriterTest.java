@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+public class ShardedWriterTest {
+
+	private static final String HEADER = "Source Name" + Symbol.TAB + "Protocol REF" + Symbol.TAB + "Sample Name";
+
+	/**
+	 * Source -> Process -> Sample, written as "source\tWatering\tsample"
+	 */
+	private static Source line(String source, String sample) {
+		Source line = new Source(source);
+		Process process = new Process(new Protocol("Watering"));
+		process.setInput(line);
+		process.setOutput(new Sample(sample));
+		return line;
+	}
+
+	private static String text(String source, String sample) {
+		return source + Symbol.TAB + "Watering" + Symbol.TAB + sample;
+	}
+
+	@TempDir
+	Path directory;
+
+	Path file;
+
+	Study study;
+
+	@BeforeEach
+	void createStudy() {
+		this.file = this.directory.resolve("s_study.txt");
+		this.study = new Study("Study ID", this.file.toString());
+	}
+
+	/**
+	 * @return the entries of a manifest next to the file: name, lines and bytes of each shard
+	 */
+	private List<String[]> manifest(String name) throws IOException {
+		List<String> lines = Files.readAllLines(this.directory.resolve(name), Props.DEFAULT_CHARSET);
+		assertEquals("File" + Symbol.TAB + "Lines" + Symbol.TAB + "Bytes", lines.get(0));
+		List<String[]> entries = new ArrayList<String[]>();
+		for (String line : lines.subList(1, lines.size()))
+			entries.add(line.split(Symbol.TAB.toString()));
+		return entries;
+	}
+
+	/**
+	 * @return the lines of the shard of a manifest entry, checking its header line and line count
+	 */
+	private List<String> shard(String[] entry) throws IOException {
+		List<String> lines = Files.readAllLines(this.directory.resolve(entry[0]), Props.DEFAULT_CHARSET);
+		assertEquals(HEADER, lines.get(0));
+		assertEquals(Long.parseLong(entry[1]), lines.size() - 1);
+		assertEquals(Long.parseLong(entry[2]), Files.size(this.directory.resolve(entry[0])));
+		return lines.subList(1, lines.size());
+	}
+
+	@Test
+	void testByLineCount() throws IOException {
+		// From several threads
+		try (ShardedWriter writer = this.study.openShardedWriter(ShardedWriter.Sharding.byLineCount(400, 2))) {
+			IntStream.range(0, 1000).parallel().forEach(i -> {
+				try {
+					writer.writeLine(line("Source " + i, "Sample " + i));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			assertEquals(1000, writer.getLineCount());
+		}
+		Set<String> written = new HashSet<String>();
+		for (String[] entry : this.manifest("s_study.txt.shards")) {
+			List<String> shard = this.shard(entry);
+			assertTrue(shard.size() <= 400);
+			written.addAll(shard);
+		}
+		assertEquals(1000, written.size());
+
+		assertEquals(1000, this.study.mergeShards(true));
+		List<String> lines = Files.readAllLines(this.file, Props.DEFAULT_CHARSET);
+		assertEquals(HEADER, lines.get(0));
+		assertEquals(written, new HashSet<String>(lines.subList(1, lines.size())));
+		assertFalse(Files.exists(this.directory.resolve("s_study.txt.shards")));
+		assertThrows(IOException.class, () -> this.study.mergeShards(false));
+	}
+
+	@Test
+	void testByByteSize() throws IOException {
+		// A single stream fills one shard after the other, so the merged file keeps the order
+		try (ShardedWriter writer = this.study.openShardedWriter(ShardedWriter.Sharding.byByteSize(1000, 1))) {
+			for (int i = 0; i < 100; i++)
+				writer.writeLine(line("Source " + i, "Sample " + i));
+		}
+		List<String[]> manifest = this.manifest("s_study.txt.shards");
+		assertTrue(manifest.size() > 1);
+		for (String[] entry : manifest) {
+			this.shard(entry);
+			// A shard is larger by at most one line
+			assertTrue(Long.parseLong(entry[2]) < 1000 + text("Source 99", "Sample 99").length() + 1);
+		}
+
+		assertEquals(100, ShardedWriter.merge(this.file, false));
+		List<String> lines = Files.readAllLines(this.file, Props.DEFAULT_CHARSET);
+		assertEquals(101, lines.size());
+		for (int i = 0; i < 100; i++)
+			assertEquals(text("Source " + i, "Sample " + i), lines.get(i + 1));
+	}
+
+	@Test
+	void testByKey() throws IOException {
+		// Lines with the same Source Name end up in the same shard
+		try (ShardedWriter writer = this.study.openShardedWriter(ShardedWriter.Sharding.byKey(3, 0))) {
+			for (int i = 0; i < 60; i++)
+				writer.writeLine(line("Source " + i % 20, "Sample " + i));
+		}
+		List<String[]> manifest = this.manifest("s_study.txt.shards");
+		assertEquals(3, manifest.size());
+		Set<String> sources = new HashSet<String>();
+		for (String[] entry : manifest) {
+			Set<String> shardSources = new HashSet<String>();
+			for (String line : this.shard(entry))
+				shardSources.add(line.split(Symbol.TAB.toString())[0]);
+			for (String source : shardSources)
+				assertTrue(sources.add(source), source + " is in several shards");
+		}
+		assertEquals(20, sources.size());
+
+		// The key column has to exist
+		try (ShardedWriter writer = this.study.openShardedWriter(ShardedWriter.Sharding.byKey(3, 3), "other")) {
+			assertThrows(IllegalArgumentException.class, () -> writer.writeLine(line("Source", "Sample")));
+		}
+	}
+
+	@Test
+	void testSeveralWriters() throws IOException {
+		try (ShardedWriter first = this.study.openShardedWriter(ShardedWriter.Sharding.byLineCount(10, 1), "first");
+				ShardedWriter second = this.study.openShardedWriter(ShardedWriter.Sharding.byLineCount(10, 1), "second")) {
+			for (int i = 0; i < 15; i++) {
+				first.writeLine(line("Source " + i, "First"));
+				second.writeLine(line("Source " + i, "Second"));
+			}
+		}
+		assertEquals(2, this.manifest("s_study.txt.first.shards").size());
+		assertTrue(Files.exists(this.directory.resolve("s_study.part-second-00001.txt")));
+
+		// In the order of the manifests' names
+		assertEquals(30, this.study.mergeShards(true));
+		List<String> lines = Files.readAllLines(this.file, Props.DEFAULT_CHARSET);
+		assertEquals(text("Source 0", "First"), lines.get(1));
+		assertEquals(text("Source 0", "Second"), lines.get(16));
+		assertThrows(IllegalArgumentException.class,
+				() -> this.study.openShardedWriter(ShardedWriter.Sharding.byLineCount(10, 1), "a/b"));
+	}
+
+	@Test
+	void testMergeMismatch() throws IOException {
+		try (ShardedWriter writer = this.study.openShardedWriter(ShardedWriter.Sharding.byLineCount(2, 1))) {
+			for (int i = 0; i < 4; i++)
+				writer.writeLine(line("Source " + i, "Sample " + i));
+		}
+		Path shard = this.directory.resolve("s_study.part-00001.txt");
+		String content = Files.readString(shard, Props.DEFAULT_CHARSET);
+
+		// A header line of the same size that differs from the one of the first shard, the existing file is kept
+		Files.writeString(this.file, "Existing", Props.DEFAULT_CHARSET);
+		Files.writeString(shard, content.replace("Sample Name", "Sample NAME"), Props.DEFAULT_CHARSET);
+		assertThrows(IOException.class, () -> this.study.mergeShards(false));
+		assertEquals("Existing", Files.readString(this.file, Props.DEFAULT_CHARSET));
+		assertFalse(Files.exists(this.directory.resolve("s_study.txt.tmp")));
+		Files.writeString(shard, content, Props.DEFAULT_CHARSET);
+
+		// A manifest line with a missing cell or an invalid number
+		Path manifest = this.directory.resolve("s_study.txt.shards");
+		String entries = Files.readString(manifest, Props.DEFAULT_CHARSET);
+		Files.writeString(manifest, entries + "s_study.part-00001.txt" + Symbol.TAB + "2" + Symbol.ENTER, Props.DEFAULT_CHARSET);
+		assertThrows(IOException.class, () -> this.study.mergeShards(false));
+		Files.writeString(manifest, entries.replaceFirst(Symbol.TAB + "2" + Symbol.TAB, Symbol.TAB + "two" + Symbol.TAB),
+				Props.DEFAULT_CHARSET);
+		assertThrows(IOException.class, () -> this.study.mergeShards(false));
+		Files.writeString(manifest, entries, Props.DEFAULT_CHARSET);
+		assertEquals("Existing", Files.readString(this.file, Props.DEFAULT_CHARSET));
+
+		// A shard that is not the size recorded in the manifest
+		Files.writeString(shard, content + text("Source 4", "Sample 4") + Symbol.ENTER, Props.DEFAULT_CHARSET);
+		assertThrows(IOException.class, () -> this.study.mergeShards(false));
+
+		// A missing shard
+		Files.delete(shard);
+		assertThrows(IOException.class, () -> this.study.mergeShards(false));
+	}
+
+	@Test
+	void testMergeWithoutShards() throws IOException {
+		// A writer closed before any line records no shard, there is nothing to merge, not even a header
+		ShardedWriter writer = this.study.openShardedWriter(ShardedWriter.Sharding.byLineCount(10, 1));
+		writer.close();
+		assertTrue(this.manifest("s_study.txt.shards").isEmpty());
+		assertThrows(IOException.class, () -> this.study.mergeShards(false));
+		assertFalse(Files.exists(this.file));
+
+		assertThrows(IllegalStateException.class, () -> writer.writeLine(line("Source", "Sample")));
+	}
+
+}
@@ -9,6 +9,7 @@ package de.ipk_gatersleben.bit.bi.isa4j.components;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
@@ -31,6 +32,25 @@ public class StudyTest {
 		this.study = new Study("Study ID","s_study.txt");
 	}
 	
+	@Test
+	void testLazyComments() throws IOException {
+		Source source = new Source("Source");
+		Sample sample = new Sample("Sample");
+		Process process = new Process(new Protocol("Watering"));
+		process.setInput(source);
+		process.setOutput(sample);
+		// Writing a line without comments does not create collections for them
+		this.study.setOutputStream(new ByteArrayOutputStream());
+		this.study.writeLine(source);
+		this.study.releaseStream();
+		assertSame(CommentCollection.EMPTY, source.commentsOrEmpty());
+		assertSame(CommentCollection.EMPTY, sample.commentsOrEmpty());
+
+		sample.comments().add(new Comment("Comment", "value"));
+		assertSame(sample.comments(), sample.commentsOrEmpty());
+		assertEquals("value", sample.commentsOrEmpty().getByName("Comment").get().getValue());
+	}
+
 	@Test
 	void testWriteLine() throws IOException {
 		// Like in the investigation tests, compare our output to one generated by python isatools
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+public class TableValidatorTest {
+
+	/**
+	 * Header line of the lines built by {@link #line(int)}
+	 */
+	private static final String HEADER = "Source Name" + Symbol.TAB + "Characteristics[Index]" + Symbol.TAB
+			+ "Protocol REF" + Symbol.TAB + "Sample Name";
+
+	/**
+	 * Source -> Process -> Sample, the Source has one Characteristic
+	 */
+	private static Source line(int i) {
+		Source source = new Source("Source " + i);
+		source.addCharacteristic(new Characteristic("Index", new OntologyAnnotation(Integer.toString(i))));
+		Process process = new Process(new Protocol("Watering"));
+		process.setInput(source);
+		process.setOutput(new Sample("Sample " + i));
+		return source;
+	}
+
+	/**
+	 * Writes a valid file with the header and count lines as text, large enough
+	 * to be checked in several ranges
+	 */
+	private static List<String> writeFile(Path file, int count) throws IOException {
+		List<String> lines = new ArrayList<String>(count + 1);
+		lines.add(HEADER);
+		for (int i = 0; i < count; i++)
+			lines.add("Source " + i + Symbol.TAB + i + Symbol.TAB + "Watering" + Symbol.TAB + "Sample " + i);
+		Files.writeString(file, String.join("\n", lines) + "\n", Props.DEFAULT_CHARSET);
+		return lines;
+	}
+
+	private TableValidator validator;
+
+	private List<Source> lines;
+
+	@BeforeEach
+	void createLines() {
+		this.lines = new ArrayList<Source>();
+		for (int i = 0; i < 3000; i++)
+			this.lines.add(line(i));
+		this.validator = TableValidator.fromExample(this.lines.get(0));
+	}
+
+	/**
+	 * Breaks 4 of the lines, with 5 violations in total
+	 */
+	private void breakLines() {
+		// Line 1001: a Term Source REF and Term Accession Number only this line has
+		this.lines.get(1000).getCharacteristics().get(0).setValue(new OntologyAnnotation("1000", "accession", new Ontology("Ontology", null, null, null)));
+		// Line 2501: a Characteristic without header and none for the header
+		this.lines.get(2499).getCharacteristics().set(0, new Characteristic("Other", new OntologyAnnotation("2499")));
+		// Line 2502: no Sample
+		((Process) this.lines.get(2500).getNextStudyOrAssayTableObject()).setOutput(null);
+		// Line 2503: an additional object
+		Sample sample = (Sample) this.lines.get(2501).getNextStudyOrAssayTableObject().getNextStudyOrAssayTableObject();
+		sample.setNextStudyOrAssayTableObject(new DataFile("Raw Data File", "file.txt"));
+	}
+
+	@Test
+	void testValidLines() throws IOException {
+		TableValidator.Report report = this.validator.validate(this.lines, 4);
+		assertTrue(report.isValid());
+		assertEquals(3000, report.getLineCount());
+		assertThrows(IllegalArgumentException.class, () -> this.validator.validate(this.lines, 0));
+	}
+
+	@Test
+	void testViolations() throws IOException {
+		this.breakLines();
+		TableValidator.Report report = this.validator.validate(this.lines, 4);
+		assertFalse(report.isValid());
+		assertEquals(5, report.getViolationCount());
+		List<TableValidator.Violation> violations = report.getViolations();
+		assertEquals(1002, violations.get(0).getLineNumber());
+		assertEquals(TableValidator.Kind.GROUP_WIDTH, violations.get(0).getKind());
+		assertEquals(2501, violations.get(1).getLineNumber());
+		assertEquals(TableValidator.Kind.UNKNOWN_GROUP, violations.get(1).getKind());
+		assertEquals(TableValidator.Kind.MISSING_GROUP, violations.get(2).getKind());
+		assertEquals(2502, violations.get(3).getLineNumber());
+		assertEquals(TableValidator.Kind.MISSING_OBJECT, violations.get(3).getKind());
+		assertEquals(TableValidator.Kind.SURPLUS_OBJECT, violations.get(4).getKind());
+		assertEquals("Line 2502: Line has 2 objects, but the header has 3", violations.get(3).toString());
+	}
+
+	@Test
+	void testMaximumViolations() throws IOException {
+		// Only the first violations are kept, but all are counted
+		this.breakLines();
+		this.validator.setMaximumViolations(2);
+		TableValidator.Report report = this.validator.validate(this.lines, 2);
+		assertEquals(5, report.getViolationCount());
+		assertEquals(2, report.getViolations().size());
+		assertEquals(2501, report.getViolations().get(1).getLineNumber());
+	}
+
+	@Test
+	void testValidFile(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("s_study.txt");
+		writeFile(file, 100_000);
+		TableValidator.Report report = this.validator.validate(file, 4);
+		assertTrue(report.isValid());
+		assertEquals(100_000, report.getLineCount());
+
+		// A file written by the Study is valid, too
+		Study study = new Study("Study ID", directory.resolve("s_written.txt").toString());
+		study.openFile();
+		for (Source line : this.lines)
+			study.writeLine(line);
+		study.closeFile();
+		assertTrue(this.validator.validate(directory.resolve("s_written.txt"), 2).isValid());
+	}
+
+	@Test
+	void testFileViolations(@TempDir Path directory) throws IOException {
+		// Break some lines, add an empty one and leave out the last line break
+		Path file = directory.resolve("s_study.txt");
+		List<String> lines = writeFile(file, 100_000);
+		lines.set(11, lines.get(11) + Symbol.TAB + "surplus");
+		lines.set(50_000, "Source 49999");
+		lines.add(60_000, "");
+		lines.set(100_000, lines.get(100_000).replace(Symbol.TAB.toString(), ""));
+		Files.writeString(file, String.join("\n", lines), Props.DEFAULT_CHARSET);
+
+		TableValidator.Report report = this.validator.validate(file, 4);
+		assertEquals(100_000, report.getLineCount());
+		assertEquals(3, report.getViolationCount());
+		assertEquals("Line 12: Line has 5 cells, but the header has 4", report.getViolations().get(0).toString());
+		assertEquals(50_001, report.getViolations().get(1).getLineNumber());
+		assertEquals(100_001, report.getViolations().get(2).getLineNumber());
+		assertEquals(TableValidator.Kind.CELL_COUNT, report.getViolations().get(2).getKind());
+		// Single threaded the result is the same
+		assertEquals(3, this.validator.validate(file, 1).getViolationCount());
+	}
+
+	@Test
+	void testFileWithOtherHeader(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("s_study.txt");
+		writeFile(file, 10);
+		Source source = line(0);
+		source.addCharacteristic(new Characteristic("Size", new OntologyAnnotation("Big")));
+		TableValidator.Report report = TableValidator.fromExample(source).validate(file, 2);
+		assertEquals(TableValidator.Kind.HEADER, report.getViolations().get(0).getKind());
+		assertEquals("Line 1: Column 3 of the header is Protocol REF, but should be Characteristics[Size]",
+				report.getViolations().get(0).toString());
+		// The lines are checked against the header of the file
+		assertEquals(1, report.getViolationCount());
+		assertEquals(10, report.getLineCount());
+	}
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.components;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+public class WideTableFileReaderTest {
+
+	private void assertHeadersMatch(List<LinkedHashMap<String, String[]>> headers, StudyOrAssayTableObject line) {
+		for (LinkedHashMap<String, String[]> headerGroups : headers) {
+			LinkedHashMap<String, String[]> objectHeaders = line.getHeaders();
+			assertArrayEquals(headerGroups.keySet().toArray(), objectHeaders.keySet().toArray());
+			for (String key : headerGroups.keySet())
+				assertArrayEquals(headerGroups.get(key), objectHeaders.get(key));
+			line = line.getNextStudyOrAssayTableObject();
+		}
+		assertNull(line);
+	}
+
+	/**
+	 * Reads a file generated by python isatools and writes the objects read back,
+	 * which has to give the same file.
+	 */
+	private void assertRoundTrip(String name, WideTableFile file) throws IOException {
+		String original;
+		try (InputStream is = this.getClass().getResourceAsStream(name)) {
+			original = new String(is.readAllBytes(), Props.DEFAULT_CHARSET);
+		}
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		file.setOutputStream(os);
+		try (WideTableFileReader reader = new WideTableFileReader(this.getClass().getResourceAsStream(name))) {
+			StudyOrAssayTableObject line;
+			while ((line = reader.readLine()) != null) {
+				if (!file.hasWrittenHeaders())
+					this.assertHeadersMatch(reader.getHeaders(), line);
+				file.writeLine(line);
+			}
+		}
+		file.releaseStream();
+		assertEquals(original.replace("\n", Symbol.ENTER.toString()), os.toString(Props.DEFAULT_CHARSET));
+	}
+
+	@Test
+	void testReadAssay() throws IOException {
+		this.assertRoundTrip("python_originals/a_assay.txt", new Assay("a_assay.txt"));
+	}
+
+	@Test
+	void testReadStudy() throws IOException {
+		this.assertRoundTrip("python_originals/s_study.txt", new Study("Study ID", "s_study.txt"));
+	}
+
+	@Test
+	void testReadRow() throws IOException {
+		String file = "Source Name\tCharacteristics[Organism]\tTerm Source REF\tTerm Accession Number\tPerformer\tProtocol REF\tSample Name\n"
+				+ "Plant 1\tArabidopsis thaliana\tNCBITaxon\t\"NCBITaxon_3702\"\tSomeone\tGrowth\tSample 1\n"
+				+ "\n"
+				+ "Plant 2\tZea mays\tNCBITaxon\tNCBITaxon_4577\tSomeone\tGrowth\tSample 2\n"
+				+ "Plant 3\tZea mays\tNCBITaxon\n";
+		try (WideTableFileReader reader = new WideTableFileReader(
+				new ByteArrayInputStream(file.getBytes(Props.DEFAULT_CHARSET)))) {
+			assertEquals(3, reader.getHeaders().size());
+			assertArrayEquals(new String[] { "Source Name", "Characteristics[Organism]", "Performer" },
+					reader.getHeaders().get(0).keySet().toArray());
+
+			WideTableFileReader.Row row = reader.readRow();
+			assertEquals("Plant 1", row.get(0));
+			assertEquals("NCBITaxon_3702", row.get(3));
+			assertArrayEquals(new String[] { "Arabidopsis thaliana", "NCBITaxon", "NCBITaxon_3702" },
+					row.getGroup(0, "Characteristics[Organism]"));
+			assertEquals("Sample 1", row.get(2, "Sample Name"));
+			assertNull(row.get(2, "Characteristics[Organism]"));
+
+			// Empty lines are skipped, Protocols and Ontologies are shared between lines
+			Source source = (Source) reader.readLine();
+			assertEquals(4, reader.getLineNumber());
+			assertEquals("Zea mays", source.getCharacteristics().get(0).getValue().getTerm());
+			Process process = (Process) source.getNextStudyOrAssayTableObject();
+			assertEquals("Growth", process.getProtocol().getName());
+			assertEquals("Sample 2", ((Sample) process.getOutput()).getName());
+
+			// Complain about lines that do not fit the header
+			assertThrows(IllegalStateException.class, () -> reader.readRow());
+			assertNull(reader.readRow());
+		}
+	}
+
+	@Test
+	void testSharedObjects() throws IOException {
+		String file = "Source Name\tCharacteristics[Organism]\tTerm Source REF\tProtocol REF\tSample Name\n"
+				+ "Plant 1\tArabidopsis thaliana\tNCBITaxon\tGrowth\tSample 1\n"
+				+ "Plant 2\tZea mays\tNCBITaxon\tGrowth\tSample 2\n";
+		Ontology ncbiTaxon = new Ontology("NCBITaxon", null, null, null);
+		try (WideTableFileReader reader = new WideTableFileReader(
+				new ByteArrayInputStream(file.getBytes(Props.DEFAULT_CHARSET)), List.of(ncbiTaxon))) {
+			Source source1 = (Source) reader.readLine();
+			Source source2 = (Source) reader.readLine();
+			assertSame(ncbiTaxon, source1.getCharacteristics().get(0).getValue().getSourceREF());
+			assertSame(ncbiTaxon, source2.getCharacteristics().get(0).getValue().getSourceREF());
+			assertSame(((Process) source1.getNextStudyOrAssayTableObject()).getProtocol(),
+					((Process) source2.getNextStudyOrAssayTableObject()).getProtocol());
+		}
+	}
+
+}
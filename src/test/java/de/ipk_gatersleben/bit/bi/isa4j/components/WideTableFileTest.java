@@ -7,19 +7,45 @@
  */
 package de.ipk_gatersleben.bit.bi.isa4j.components;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
 import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+import de.ipk_gatersleben.bit.bi.isa4j.util.CompressionCodec;
+import de.ipk_gatersleben.bit.bi.isa4j.util.GzipCodec;
 
 public class WideTableFileTest {
 	
@@ -45,6 +71,217 @@ public class WideTableFileTest {
 		os.write(output.getBytes());
 	}
 	
+	@Test
+	void testDirectToChannel() throws IOException {
+		Source source = new Source("Source Name");
+		source.addCharacteristic(new Characteristic("Temperature", new OntologyAnnotation("20 °C")));
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		study.setOutputChannel(Channels.newChannel(os), 16);
+		assertThrows(IllegalStateException.class, () -> study.setOutputStream(new ByteArrayOutputStream()));
+		study.writeLine(source);
+		study.releaseStream();
+
+		assertEquals(
+			"Source Name" + Symbol.TAB + "Characteristics[Temperature]" + Symbol.ENTER
+		  + "Source Name" + Symbol.TAB + "20 °C" + Symbol.ENTER,
+		  os.toString(Props.DEFAULT_CHARSET)
+		);
+	}
+	
+	@Test
+	void testOpenCompressedFile(@TempDir Path directory) throws IOException {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		this.study.setOutputStream(expected);
+		for (int i = 0; i < 100; i++)
+			this.study.writeLine(this.exampleLine(i));
+		this.study.releaseStream();
+
+		// The file name has to say that the file is compressed
+		this.study.setFileName(directory.resolve("s_study.txt").toString());
+		assertThrows(IllegalStateException.class, () -> this.study.openFile(new GzipCodec(2, 1024, Deflater.DEFAULT_COMPRESSION)));
+		assertEquals(directory.resolve("s_study.txt").toString(), this.study.getFileName());
+		
+		// The file is closed again if compression cannot be started
+		List<OutputStream> opened = new ArrayList<OutputStream>();
+		CompressionCodec failing = new CompressionCodec() {
+			@Override
+			public OutputStream compress(OutputStream out) throws IOException {
+				opened.add(out);
+				throw new IOException("Cannot start compression");
+			}
+
+			@Override
+			public String getFileSuffix() {
+				return ".txt";
+			}
+
+			@Override
+			public String getName() {
+				return "failing";
+			}
+		};
+		assertThrows(IOException.class, () -> this.study.openFile(failing));
+		assertThrows(IOException.class, () -> opened.get(0).write(0));
+		
+		this.study.setFileName(directory.resolve("s_study.txt.gz").toString());
+		this.study.openFile(new GzipCodec(2, 1024, Deflater.DEFAULT_COMPRESSION));
+		for (int i = 0; i < 100; i++)
+			this.study.writeLine(this.exampleLine(i));
+		this.study.closeFile();
+
+		try (InputStream is = new GZIPInputStream(Files.newInputStream(directory.resolve("s_study.txt.gz")))) {
+			assertArrayEquals(expected.toByteArray(), is.readAllBytes());
+		}
+	}
+
+	@Test
+	void testOpenFileForAppend(@TempDir Path directory) throws IOException {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		this.study.setOutputStream(expected);
+		for (int i = 0; i < 100; i++)
+			this.study.writeLine(this.exampleLine(i));
+		this.study.releaseStream();
+
+		// A file that does not exist yet gets the headers
+		Path file = directory.resolve("s_study.txt");
+		this.study.setFileName(file.toString());
+		this.study.openFileForAppend();
+		for (int i = 0; i < 60; i++)
+			this.study.writeLine(this.exampleLine(i));
+		this.study.closeFile();
+		// The next lines are written below the existing ones
+		this.study.openFileForAppend(16);
+		for (int i = 60; i < 100; i++)
+			this.study.writeLine(this.exampleLine(i));
+		this.study.closeFile();
+		assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file));
+
+		// Complain about lines that do not fit the header, without writing anything
+		Source other = this.exampleLine(100);
+		other.addCharacteristic(new Characteristic("Height", new OntologyAnnotation("10")));
+		this.study.openFileForAppend();
+		assertThrows(IllegalStateException.class, () -> this.study.writeLine(other));
+		assertFalse(this.study.hasWrittenHeaders());
+		this.study.closeFile();
+		assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file));
+
+		// Complain about a file whose last line is incomplete
+		Files.write(file, ("Source Name" + Symbol.ENTER + "Source 1").getBytes(Props.DEFAULT_CHARSET));
+		assertThrows(IOException.class, () -> this.study.openFileForAppend());
+	}
+
+	@Test
+	void testRowIndex(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("s_study.txt");
+		this.study.setFileName(file.toString());
+		// Only files can be indexed
+		this.study.setOutputStream(new ByteArrayOutputStream());
+		assertThrows(IllegalStateException.class, () -> this.study.enableRowIndex());
+		this.study.releaseStream();
+
+		this.study.openFile();
+		this.study.enableRowIndex();
+		for (int i = 0; i < 50; i++) {
+			Source line = this.exampleLine(i);
+			// Characters of several bytes shift the offsets of the following lines
+			if (i % 10 == 0)
+				line.setName("Source " + i + " 🌱 °C");
+			this.study.writeLine(line);
+		}
+		assertThrows(IllegalStateException.class, () -> this.study.enableRowIndex());
+		this.study.closeFile();
+
+		RowIndex index = new RowIndex(file);
+		List<String> lines = Files.readAllLines(file, Props.DEFAULT_CHARSET);
+		assertEquals(50, index.size());
+		assertArrayEquals(lines.get(12).split(Symbol.TAB.toString()), index.getLine("Source 11"));
+		assertArrayEquals(lines.get(41).split(Symbol.TAB.toString()), index.getLine("Source 40 🌱 °C"));
+		assertArrayEquals(lines.get(50).split(Symbol.TAB.toString()), index.getLine("Source 49"));
+		assertNull(index.getLine("Source 50"));
+
+		// Appending lines extends the index
+		this.study.openFileForAppend();
+		this.study.enableRowIndex();
+		for (int i = 50; i < 100; i++)
+			this.study.writeLine(this.exampleLine(i));
+		this.study.writeLine(this.exampleLine(3));
+		this.study.closeFile();
+
+		index = new RowIndex(file);
+		lines = Files.readAllLines(file, Props.DEFAULT_CHARSET);
+		assertEquals(101, index.size());
+		long[] offsets = index.find("Source 3");
+		assertEquals(2, offsets.length);
+		assertArrayEquals(lines.get(4).split(Symbol.TAB.toString()), index.readLine(offsets[0]));
+		assertArrayEquals(lines.get(101).split(Symbol.TAB.toString()), index.readLine(offsets[1]));
+		assertArrayEquals(lines.get(76).split(Symbol.TAB.toString()), index.getLine("Source 75"));
+
+		// Index another column
+		this.study.openFile();
+		this.study.writeHeadersFromExample(this.exampleLine(0));
+		this.study.enableRowIndex(this.study.getColumnIndex(2, "Sample Name"));
+		for (int i = 0; i < 10; i++)
+			this.study.writeLine(this.exampleLine(i));
+		this.study.closeFile();
+		index = new RowIndex(file);
+		assertEquals(3, index.getColumn());
+		assertEquals("Source 7", index.getLine("Sample 7")[0]);
+		assertNull(index.getLine("Source 7"));
+
+		// An index is not used once the file has changed
+		this.study.openFileForAppend();
+		this.study.writeLine(this.exampleLine(10));
+		this.study.closeFile();
+		assertThrows(IOException.class, () -> new RowIndex(file));
+		this.study.openFileForAppend();
+		assertThrows(IOException.class, () -> this.study.enableRowIndex(3));
+		this.study.closeFile();
+	}
+
+	@Test
+	void testWriteColumns() throws IOException {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		this.study.setOutputStream(expected);
+		for (int i = 0; i < 100; i++)
+			this.study.writeLine(this.exampleLine(i));
+		this.study.releaseStream();
+
+		String[] sourceNames = new String[100];
+		long[] indexes = new long[100];
+		String[] sampleNames = new String[100];
+		for (int i = 0; i < 100; i++) {
+			sourceNames[i] = "Source " + i;
+			indexes[i] = i;
+			sampleNames[i] = "Sample " + i;
+		}
+
+		ByteArrayOutputStream columns = new ByteArrayOutputStream();
+		this.study.setOutputStream(columns);
+		// Complain if there is no header yet
+		assertThrows(IllegalStateException.class, () -> this.study.writeColumns(new ColumnBatch(0)));
+		this.study.writeHeadersFromExample(this.exampleLine(0));
+		assertEquals(1, this.study.getColumnIndex(0, "Characteristics[Index]"));
+		assertEquals(3, this.study.getColumnIndex(2, "Sample Name"));
+		assertEquals(-1, this.study.getColumnIndex(1, "Sample Name"));
+
+		ColumnBatch batch = new ColumnBatch(60)
+				.setColumn(0, sourceNames)
+				.setColumn(1, indexes)
+				.setColumn(2, new int[100], new String[] { "Watering" });
+		// Complain about columns that were not set
+		assertThrows(IllegalStateException.class, () -> this.study.writeColumns(batch));
+		batch.setColumn(3, sampleNames);
+		this.study.writeColumns(batch);
+		// The rest of the lines as objects
+		for (int i = 60; i < 100; i++)
+			this.study.writeLine(this.exampleLine(i));
+		this.study.releaseStream();
+
+		assertEquals(expected.toString(), columns.toString());
+		assertThrows(IllegalArgumentException.class, () -> new ColumnBatch(101).setColumn(0, sourceNames));
+	}
+
 	@Test
 	void testWriteHeadersFromExample() throws IOException {
 		Source source = new Source("Source Name");
@@ -74,6 +311,39 @@ public class WideTableFileTest {
 		  os.toString()
 		);
 	}
+
+	@Test
+	void testSharedHeaders() {
+		Source first = new Source("Source 1");
+		first.addCharacteristic(new Characteristic("Size", new OntologyAnnotation("m", "accession", new Ontology("Ontology", null, null, null))));
+		Source second = new Source("Source 2");
+		second.addCharacteristic(new Characteristic("Size", new OntologyAnnotation("cm", "other accession", new Ontology("Ontology", null, null, null))));
+		
+		// Same structure, different values
+		assertSame(first.getHeaders(), second.getHeaders());
+		
+		// Adding a column changes the structure
+		second.addCharacteristic(new Characteristic("Beauty", new OntologyAnnotation("Very Beautiful")));
+		assertNotSame(first.getHeaders(), second.getHeaders());
+		assertArrayEquals(new String[] { "Source Name", "Characteristics[Size]", "Characteristics[Beauty]" },
+				second.getHeaders().keySet().toArray());
+		
+		// An annotation without accession has fewer columns
+		Source third = new Source("Source 3");
+		third.addCharacteristic(new Characteristic("Size", new OntologyAnnotation("m")));
+		assertNotSame(first.getHeaders(), third.getHeaders());
+		assertArrayEquals(new String[] { "Characteristics[Size]", "Term Source REF", "Term Accession Number" },
+				first.getHeaders().get("Characteristics[Size]"));
+		assertArrayEquals(new String[] { "Characteristics[Size]" }, third.getHeaders().get("Characteristics[Size]"));
+		
+		// Public methods hand out copies, changing them leaves the shared headers alone
+		LinkedHashMap<String, String[]> copy = TableValidator.fromExample(first).getHeaders().get(0);
+		copy.get("Characteristics[Size]")[1] = "Unit";
+		copy.remove("Source Name");
+		assertArrayEquals(new String[] { "Source Name", "Characteristics[Size]" }, first.getHeaders().keySet().toArray());
+		assertArrayEquals(new String[] { "Characteristics[Size]", "Term Source REF", "Term Accession Number" },
+				second.getHeaders().get("Characteristics[Size]"));
+	}
 	
 	@Test
 	void testWriteLine() throws IOException {
@@ -104,4 +374,322 @@ public class WideTableFileTest {
     	this.study.releaseStream();
 	}
 
+	@Test
+	void testWriteLineAfterRename() throws IOException {
+		Source source = new Source("Source Name");
+		Characteristic characteristic = new Characteristic("Characteristic", new OntologyAnnotation("Value"));
+		source.addCharacteristic(characteristic);
+		Process process = new Process(new Protocol("Watering"));
+		process.setInput(source);
+		process.setOutput(new Sample("Sample Name"));
+		
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		this.study.setOutputStream(os);
+		this.study.writeHeadersFromExample(source);
+		this.study.writeLine(source);
+		
+		// Complain if a group that was written before has been renamed since and no longer fits the header
+		characteristic.setCategory("Renamed Characteristic");
+		assertThrows(NullPointerException.class, () -> this.study.writeLine(source));
+		
+		// The line is written again once the group fits the header
+		characteristic.setCategory("Characteristic");
+		this.study.writeLine(source);
+		this.study.releaseStream();
+		
+		String[] lines = os.toString().split(Symbol.ENTER.toString());
+		assertEquals(3, lines.length);
+		assertEquals(lines[1], lines[2]);
+	}
+
+	@Test
+	void testNumericValues() throws IOException {
+		Source source = new Source("Source Name");
+		Sample sample = new Sample("Sample Name");
+		Process process = new Process(new Protocol("Watering"));
+		process.setInput(source);
+		process.setOutput(sample);
+		process.addParameterValue(new ParameterValue(new ProtocolParameter("Volume"), 2.5, new OntologyAnnotation("litre")));
+		ParameterValue count = new ParameterValue(new ProtocolParameter("Count"), 3);
+		process.addParameterValue(count);
+		ParameterValue id = new ParameterValue(new ProtocolParameter("ID"), 0);
+		id.setValue(1234567890123L);
+		process.addParameterValue(id);
+		assertTrue(count.isNumeric());
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		this.study.setOutputStream(os);
+		this.study.writeLine(source);
+		// Reading the value does not change it
+		assertEquals("3.0", count.getValue().getTerm());
+		count.getValue().setTerm("four");
+		assertTrue(count.isNumeric());
+		// Setting a text value does
+		count.setValue("three");
+		assertFalse(count.isNumeric());
+		this.study.writeLine(source);
+		this.study.releaseStream();
+
+		assertEquals(
+			"Source Name" + Symbol.TAB + "Protocol REF" + Symbol.TAB + "Parameter Value[Volume]" + Symbol.TAB + "Unit"
+		  + Symbol.TAB + "Parameter Value[Count]" + Symbol.TAB + "Parameter Value[ID]" + Symbol.TAB + "Sample Name" + Symbol.ENTER
+		  + "Source Name" + Symbol.TAB + "Watering" + Symbol.TAB + "2.5" + Symbol.TAB + "litre"
+		  + Symbol.TAB + "3.0" + Symbol.TAB + "1234567890123" + Symbol.TAB + "Sample Name" + Symbol.ENTER
+		  + "Source Name" + Symbol.TAB + "Watering" + Symbol.TAB + "2.5" + Symbol.TAB + "litre"
+		  + Symbol.TAB + "three" + Symbol.TAB + "1234567890123" + Symbol.TAB + "Sample Name" + Symbol.ENTER,
+		  os.toString()
+		);
+	}
+
+	@Test
+	void testLineTemplate() throws IOException {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		this.study.setOutputStream(expected);
+		for (int i = 0; i < 100; i++)
+			this.study.writeLine(this.exampleLine(i));
+		this.study.releaseStream();
+
+		Source prototype = this.exampleLine(0);
+		ByteArrayOutputStream templated = new ByteArrayOutputStream();
+		this.study.setOutputStream(templated);
+		// Complain if there is no header yet
+		assertThrows(IllegalStateException.class, () -> this.study.createLineTemplate(prototype, 0));
+		this.study.writeHeadersFromExample(prototype);
+		// Complain about columns that are not ascending
+		assertThrows(IllegalArgumentException.class, () -> this.study.createLineTemplate(prototype, 3, 0));
+
+		LineTemplate template = this.study.createLineTemplate(prototype, 0, 1, 3);
+		assertEquals(3, template.getSlotCount());
+		// Slots start with the cells of the prototype
+		this.study.writeLine(template);
+		for (int i = 1; i < 100; i++) {
+			template.setValue(0, "Source " + i);
+			template.setValue(1, i);
+			template.setValue(2, "Sample " + i);
+			this.study.writeLine(template);
+		}
+		this.study.releaseStream();
+		assertEquals(expected.toString(), templated.toString());
+
+		// Complain about templates for other headers
+		this.study.setOutputStream(new ByteArrayOutputStream());
+		this.study.writeHeadersFromExample(prototype);
+		assertThrows(IllegalStateException.class, () -> this.study.writeLine(template));
+		this.study.releaseStream();
+	}
+
+	@Test
+	void testWriteLineFollowsHeaderOrder() throws IOException {
+		Source source1 = new Source("Source 1");
+		source1.addCharacteristic(new Characteristic("Beauty", new OntologyAnnotation("Very Beautiful")));
+		source1.addCharacteristic(new Characteristic("Size", new OntologyAnnotation("Big")));
+		Sample sample1 = new Sample("Sample 1");
+		Process process1 = new Process(new Protocol("Watering"));
+		process1.setInput(source1);
+		process1.setOutput(sample1);
+
+		// Same characteristics, but added the other way round
+		Source source2 = new Source("Source 2");
+		source2.addCharacteristic(new Characteristic("Size", new OntologyAnnotation("Small")));
+		source2.addCharacteristic(new Characteristic("Beauty", new OntologyAnnotation("Not Beautiful")));
+		Sample sample2 = new Sample("Sample 2");
+		Process process2 = new Process(new Protocol("Watering"));
+		process2.setInput(source2);
+		process2.setOutput(sample2);
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		this.study.setOutputStream(os);
+		this.study.writeLine(source1);
+		this.study.writeLine(source2);
+
+		// Fields without a header are left out
+		source2.comments().add(new Comment("Note", "Ignored"));
+		this.study.writeLine(source2);
+
+		// Fields missing for a header fail the line
+		Source source3 = new Source("Source 3");
+		source3.addCharacteristic(new Characteristic("Size", new OntologyAnnotation("Small")));
+		process2.setInput(source3);
+		assertThrows(NullPointerException.class, () -> this.study.writeLine(source3));
+		this.study.releaseStream();
+
+		assertEquals(
+			"Source Name" + Symbol.TAB + "Characteristics[Beauty]" + Symbol.TAB + "Characteristics[Size]" + Symbol.TAB + "Protocol REF" + Symbol.TAB + "Sample Name" + Symbol.ENTER
+		  + "Source 1" + Symbol.TAB + "Very Beautiful" + Symbol.TAB + "Big" + Symbol.TAB + "Watering" + Symbol.TAB + "Sample 1" + Symbol.ENTER
+		  + "Source 2" + Symbol.TAB + "Not Beautiful" + Symbol.TAB + "Small" + Symbol.TAB + "Watering" + Symbol.TAB + "Sample 2" + Symbol.ENTER
+		  + "Source 2" + Symbol.TAB + "Not Beautiful" + Symbol.TAB + "Small" + Symbol.TAB + "Watering" + Symbol.TAB + "Sample 2" + Symbol.ENTER,
+		  os.toString()
+		);
+	}
+
+	private Source exampleLine(int i) {
+		Source source = new Source("Source " + i);
+		source.addCharacteristic(new Characteristic("Index", new OntologyAnnotation(Integer.toString(i))));
+		Sample sample = new Sample("Sample " + i);
+		Process process = new Process(new Protocol("Watering"));
+		process.setInput(source);
+		process.setOutput(sample);
+		return source;
+	}
+
+	@Test
+	void testParallelLineWriter() throws IOException {
+		List<Source> lines = new ArrayList<Source>();
+		for (int i = 0; i < 1000; i++)
+			lines.add(this.exampleLine(i));
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		this.study.setOutputStream(expected);
+		for (Source line : lines)
+			this.study.writeLine(line);
+		this.study.releaseStream();
+
+		ByteArrayOutputStream ordered = new ByteArrayOutputStream();
+		this.study.setOutputStream(ordered);
+		try (ParallelLineWriter writer = this.study.openParallelLineWriter(4, true)) {
+			// Complain about writing lines the sequential way in between
+			assertThrows(IllegalStateException.class, () -> this.study.writeLine(lines.get(0)));
+			for (int i = 0; i < lines.size(); i += 7)
+				writer.submit(lines.subList(i, Math.min(i + 7, lines.size())));
+		}
+		this.study.releaseStream();
+		assertEquals(expected.toString(), ordered.toString());
+
+		ByteArrayOutputStream unordered = new ByteArrayOutputStream();
+		this.study.setOutputStream(unordered);
+		try (ParallelLineWriter writer = this.study.openParallelLineWriter(4, false)) {
+			IntStream.range(0, lines.size()).parallel().forEach(i -> {
+				try {
+					writer.submit(lines.get(i));
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+		}
+		this.study.releaseStream();
+		String[] expectedLines = expected.toString().split(Symbol.ENTER.toString());
+		String[] unorderedLines = unordered.toString().split(Symbol.ENTER.toString());
+		assertEquals(expectedLines[0], unorderedLines[0]);
+		Arrays.sort(expectedLines);
+		Arrays.sort(unorderedLines);
+		assertTrue(Arrays.equals(expectedLines, unorderedLines));
+	}
+
+	@Test
+	void testAsyncLineWriter() throws Exception {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		this.study.setOutputStream(expected);
+		for (int i = 0; i < 1000; i++)
+			this.study.writeLine(this.exampleLine(i));
+		this.study.releaseStream();
+
+		ByteArrayOutputStream async = new ByteArrayOutputStream();
+		this.study.setOutputStream(async);
+		this.study.openAsyncLineWriter(16, AsyncLineWriter.Backpressure.BLOCK);
+		// Complain about writing lines the other ways in between
+		assertThrows(IllegalStateException.class, () -> this.study.writeColumns(new ColumnBatch(0)));
+		assertThrows(IllegalStateException.class, () -> this.study.closeFile());
+		for (int i = 0; i < 1000; i++)
+			this.study.writeLine(this.exampleLine(i));
+		Future<Void> closed = this.study.closeFileAsync();
+		closed.get(1, TimeUnit.MINUTES);
+		assertEquals(expected.toString(), async.toString());
+
+		// Errors reach the producer
+		Source broken = this.exampleLine(1);
+		((Process) broken.getNextStudyOrAssayTableObject()).setOutput(null);
+		this.study.setOutputStream(new ByteArrayOutputStream());
+		this.study.writeLine(this.exampleLine(0));
+		this.study.openAsyncLineWriter(16, AsyncLineWriter.Backpressure.BLOCK);
+		this.study.writeLine(broken);
+		ExecutionException failure = assertThrows(ExecutionException.class,
+				() -> this.study.closeFileAsync().get(1, TimeUnit.MINUTES));
+		assertTrue(failure.getCause() instanceof NullPointerException);
+	}
+
+	@Test
+	void testAsyncLineWriterSeveralProducers() throws Exception {
+		// Several producers submit their first lines at the same time, the headers are written once
+		for (int round = 0; round < 20; round++) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			this.study.setOutputStream(os);
+			AsyncLineWriter writer = this.study.openAsyncLineWriter(64, AsyncLineWriter.Backpressure.BLOCK);
+			CountDownLatch start = new CountDownLatch(1);
+			List<Thread> producers = new ArrayList<Thread>();
+			List<Throwable> failures = new ArrayList<Throwable>();
+			for (int producer = 0; producer < 4; producer++) {
+				int first = producer * 100;
+				Thread thread = new Thread(() -> {
+					try {
+						start.await();
+						for (int i = first; i < first + 100; i++)
+							writer.submit(this.exampleLine(i));
+					} catch (Throwable t) {
+						synchronized (failures) {
+							failures.add(t);
+						}
+					}
+				});
+				thread.start();
+				producers.add(thread);
+			}
+			start.countDown();
+			for (Thread thread : producers)
+				thread.join();
+			writer.close();
+			this.study.releaseStream();
+
+			assertTrue(failures.isEmpty(), failures.toString());
+			String[] lines = os.toString().split(Symbol.ENTER.toString());
+			assertEquals(401, lines.length);
+			assertTrue(lines[0].startsWith("Source Name"));
+			assertEquals(1, Arrays.stream(lines).filter(lines[0]::equals).count());
+		}
+	}
+
+	@Test
+	void testAsyncLineWriterFailFast() throws Exception {
+		// A channel that cannot be written to until released
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicBoolean blocking = new AtomicBoolean(false);
+		OutputStream os = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				try {
+					if (blocking.get())
+						release.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+		};
+		this.study.setOutputChannel(Channels.newChannel(os), 16);
+		this.study.writeHeadersFromExample(this.exampleLine(0));
+		blocking.set(true);
+
+		AsyncLineWriter writer = this.study.openAsyncLineWriter(1, AsyncLineWriter.Backpressure.FAIL);
+		// The background thread is stuck with the first line, so the queue fills up
+		assertThrows(IllegalStateException.class, () -> {
+			for (int i = 0; i < 3; i++)
+				writer.submit(this.exampleLine(i));
+		});
+		release.countDown();
+		writer.close();
+		this.study.closeFile();
+	}
+
+	@Test
+	void testParallelLineWriterFailure() throws IOException {
+		Source broken = this.exampleLine(1);
+		((Process) broken.getNextStudyOrAssayTableObject()).setOutput(null);
+
+		this.study.setOutputStream(new ByteArrayOutputStream());
+		ParallelLineWriter writer = this.study.openParallelLineWriter(2, true);
+		writer.submit(this.exampleLine(0));
+		writer.submit(broken);
+		// The line lacks the Sample that is in the header
+		assertThrows(NullPointerException.class, () -> writer.close());
+		this.study.releaseStream();
+	}
+
 }
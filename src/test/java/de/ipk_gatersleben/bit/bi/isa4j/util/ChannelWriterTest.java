@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import org.junit.jupiter.api.Test;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+
+public class ChannelWriterTest {
+
+	@Test
+	void testEncoding() throws IOException {
+		// ASCII, two and three byte characters and a surrogate pair, longer than the buffer
+		String text = "Source Name\tTemperature [°C]\t€\tArabidopsis 🌱 thaliana\n".repeat(20);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ChannelWriter writer = new ChannelWriter(Channels.newChannel(os), 16);
+		writer.write(text);
+		assertEquals(text.getBytes(Props.DEFAULT_CHARSET).length, writer.position());
+		writer.close();
+		assertArrayEquals(text.getBytes(Props.DEFAULT_CHARSET), os.toByteArray());
+	}
+
+	@Test
+	void testSplitSurrogatePair() throws IOException {
+		String text = "a🌱b\uD83C";
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ChannelWriter writer = new ChannelWriter(Channels.newChannel(os), 16);
+		// The high surrogate comes with one write, the low surrogate with the next
+		writer.write(text.toCharArray(), 0, 2);
+		writer.append(text, 2, 4);
+		// A high surrogate at the very end is malformed
+		writer.write(text.charAt(4));
+		writer.close();
+		assertArrayEquals(text.getBytes(Props.DEFAULT_CHARSET), os.toByteArray());
+		assertThrows(IOException.class, () -> writer.write("After close"));
+	}
+
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Props;
+
+public class GzipCodecTest {
+
+	private static byte[] compress(CompressionCodec codec, byte[] data) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		OutputStream os = codec.compress(compressed);
+		// Single bytes, a part of the data and everything else
+		os.write(data[0]);
+		os.write(data, 1, 1000);
+		os.flush();
+		os.write(data, 1001, data.length - 1001);
+		os.close();
+		assertThrows(IOException.class, () -> os.write(0));
+		return compressed.toByteArray();
+	}
+
+	private static byte[] decompress(byte[] compressed) throws IOException {
+		try (GZIPInputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			return is.readAllBytes();
+		}
+	}
+
+	@Test
+	void testEmpty() throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new GzipCodec(4, 64, Deflater.DEFAULT_COMPRESSION).compress(compressed).close();
+		assertEquals(0, decompress(compressed.toByteArray()).length);
+	}
+
+	@Test
+	void testForName() {
+		CompressionCodec codec = CompressionCodec.forName("gzip");
+		assertTrue(codec instanceof GzipCodec);
+		assertEquals(".gz", codec.getFileSuffix());
+		assertThrows(IllegalArgumentException.class, () -> CompressionCodec.forName("unknown"));
+	}
+
+	@Test
+	void testRoundTrip() throws IOException {
+		byte[] data = "Source Name\tCharacteristics[Organism]\tTerm Source REF\nPlant 1\tArabidopsis thaliana\tNCBITaxon\n"
+				.repeat(500).getBytes(Props.DEFAULT_CHARSET);
+		// Many small blocks compressed in parallel and on the writing thread
+		assertArrayEquals(data, decompress(compress(new GzipCodec(4, 1024, 1), data)));
+		assertArrayEquals(data, decompress(compress(new GzipCodec(1, 1024, 9), data)));
+		assertArrayEquals(data, decompress(compress(new GzipCodec(), data)));
+
+		assertThrows(IllegalArgumentException.class, () -> new GzipCodec(0, 1024, 1));
+		assertThrows(IllegalArgumentException.class, () -> new GzipCodec(1, 1024, 10));
+	}
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2020 Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany.
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the MIT License (https://spdx.org/licenses/MIT.html)
+ *
+ * Contributors:
+ *      Leibniz Institute of Plant Genetics and Crop Plant Research (IPK), Gatersleben, Germany
+ */
+package de.ipk_gatersleben.bit.bi.isa4j.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import de.ipk_gatersleben.bit.bi.isa4j.constants.InvestigationAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.StudyAssayAttribute;
+import de.ipk_gatersleben.bit.bi.isa4j.constants.Symbol;
+
+public class StringUtilTest {
+
+	@Test
+	void testFormatNumber() {
+		double[] numbers = { 0.0, -0.0, 1.0, -42.0, 12.5, 0.1 + 0.2, 9_999_999.0, 1e7, -1e7, 1e-4, 1e300,
+				Double.NaN, Double.NEGATIVE_INFINITY, Long.MAX_VALUE };
+		for (double number : numbers)
+			assertEquals(String.valueOf(number), StringUtil.formatNumber(number));
+
+		StringBuilder sb = new StringBuilder("Value: ");
+		StringUtil.appendNumber(sb, 20);
+		assertEquals("Value: 20.0", sb.toString());
+	}
+
+	@Test
+	void testPutNameInAttribute() {
+		assertEquals("Characteristics[Organism]", StringUtil.putNameInAttribute(StudyAssayAttribute.CHARACTERISTICS, "Organism"));
+		assertEquals("Comment[Who?]", StringUtil.putNameInAttribute(InvestigationAttribute.COMMENT, "Who?"));
+		assertEquals("Source Name", StringUtil.putNameInAttribute(StudyAssayAttribute.SOURCE_NAME, "Organism"));
+		assertEquals("Parameter Value[x]", StringUtil.putNameInAttribute("Parameter Value[?]", "x"));
+
+		// Repeated names are formatted once
+		String name = StringUtil.putNameInAttribute(StudyAssayAttribute.FACTOR_VALUE, "Treatment");
+		assertSame(name, StringUtil.putNameInAttribute(StudyAssayAttribute.FACTOR_VALUE, "Treatment"));
+
+		try {
+			StringUtil.setNameCacheSize(0);
+			name = StringUtil.putNameInAttribute(StudyAssayAttribute.FACTOR_VALUE, "Treatment");
+			assertEquals("Factor Value[Treatment]", name);
+			assertNotSame(name, StringUtil.putNameInAttribute(StudyAssayAttribute.FACTOR_VALUE, "Treatment"));
+			assertThrows(IllegalArgumentException.class, () -> StringUtil.setNameCacheSize(-1));
+		} finally {
+			StringUtil.setNameCacheSize(StringUtil.DEFAULT_NAME_CACHE_SIZE);
+		}
+	}
+
+	@Test
+	void testSanitize() {
+		assertNull(StringUtil.sanitize(null));
+
+		// Nothing to replace: the same instance comes back
+		String clean = "Arabidopsis thaliana";
+		assertSame(clean, StringUtil.sanitize(clean));
+		assertSame(Symbol.EMPTY.toString(), StringUtil.sanitize(Symbol.EMPTY.toString()));
+
+		assertEquals("a b", StringUtil.sanitize("a\tb"));
+		assertEquals("a b", StringUtil.sanitize("a" + Symbol.ENTER + "b"));
+		// Every kind of line break is a single space
+		assertEquals("a b c d", StringUtil.sanitize("a\nb\r\nc\rd"));
+		assertEquals("  a  ", StringUtil.sanitize("\t\na\r\r"));
+	}
+
+}